@@ -0,0 +1,70 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generates file contents for the benchmarks from a fixed seed.
+ *
+ * <p/>
+ * Text contents are lines of words, binary contents are random bytes. Edits replace,
+ * insert and remove a few regions the way a typical change does.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class BenchmarkContents {
+
+    private static final String[] WORDS = {"svn", "delta", "window", "revision", "node", "property", "commit", "update",
+            "0", "1", "2", "3", "{", "}", "(", ")", ";", "return", "public", "private"};
+
+    private Random myRandom;
+
+    public BenchmarkContents() {
+        myRandom = new Random(0);
+    }
+
+    public byte[] create(int size, boolean binary) {
+        byte[] contents = new byte[size];
+        if (binary) {
+            myRandom.nextBytes(contents);
+            return contents;
+        }
+        int offset = 0;
+        while (offset < size) {
+            byte[] word = (WORDS[myRandom.nextInt(WORDS.length)] + (myRandom.nextInt(8) == 0 ? "\n" : " ")).getBytes();
+            int length = Math.min(word.length, size - offset);
+            System.arraycopy(word, 0, contents, offset, length);
+            offset += length;
+        }
+        return contents;
+    }
+
+    /**
+     * Returns <code>contents</code> with a few regions replaced, inserted or removed.
+     */
+    public byte[] edit(byte[] contents, boolean binary) {
+        byte[] edited = contents;
+        for (int i = 0; i < 3; i++) {
+            int offset = myRandom.nextInt(edited.length + 1);
+            int removed = Math.min(edited.length - offset, myRandom.nextInt(200));
+            byte[] inserted = create(myRandom.nextInt(200), binary);
+            byte[] result = new byte[edited.length - removed + inserted.length];
+            System.arraycopy(edited, 0, result, 0, offset);
+            System.arraycopy(inserted, 0, result, offset, inserted.length);
+            System.arraycopy(edited, offset + removed, result, offset + inserted.length, edited.length - offset - removed);
+            edited = result;
+        }
+        return edited;
+    }
+}
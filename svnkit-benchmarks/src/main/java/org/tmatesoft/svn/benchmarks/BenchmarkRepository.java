@@ -0,0 +1,118 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+
+/**
+ * Creates synthetic FSFS repositories in a temporary directory for the benchmarks.
+ *
+ * <p/>
+ * File contents come from {@link BenchmarkContents}, so every run measures the same data.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class BenchmarkRepository {
+
+    private File myRoot;
+    private SVNURL myURL;
+    private SVNRepository myRepository;
+    private BenchmarkContents myContents;
+
+    public BenchmarkRepository(String name) throws SVNException {
+        FSRepositoryFactory.setup();
+        myContents = new BenchmarkContents();
+        try {
+            myRoot = File.createTempFile("svnkit." + name + ".", ".benchmark");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        SVNFileUtil.deleteFile(myRoot);
+        myRoot.mkdirs();
+        myURL = SVNRepositoryFactory.createLocalRepository(new File(myRoot, "repository"), true, false);
+        myRepository = SVNRepositoryFactory.create(myURL);
+    }
+
+    public File getRoot() {
+        return myRoot;
+    }
+
+    public File getRepositoryRoot() {
+        return new File(myRoot, "repository");
+    }
+
+    public SVNURL getURL() {
+        return myURL;
+    }
+
+    public BenchmarkContents getContents() {
+        return myContents;
+    }
+
+    /**
+     * Adds directory <code>path</code> with <code>fileCount</code> files of <code>fileSize</code> bytes.
+     */
+    public long addDirectory(String path, int fileCount, int fileSize, boolean binary) throws SVNException {
+        ISVNEditor editor = myRepository.getCommitEditor("add " + path, null);
+        editor.openRoot(-1);
+        editor.addDir(path, null, -1);
+        for (int i = 0; i < fileCount; i++) {
+            String filePath = path + "/file" + i;
+            editor.addFile(filePath, null, -1);
+            sendContents(editor, filePath, myContents.create(fileSize, binary));
+        }
+        editor.closeDir();
+        editor.closeDir();
+        return editor.closeEdit().getNewRevision();
+    }
+
+    public long addFile(String path, byte[] contents) throws SVNException {
+        ISVNEditor editor = myRepository.getCommitEditor("add " + path, null);
+        editor.openRoot(-1);
+        editor.addFile(path, null, -1);
+        sendContents(editor, path, contents);
+        editor.closeDir();
+        return editor.closeEdit().getNewRevision();
+    }
+
+    public long modifyFile(String path, byte[] contents) throws SVNException {
+        ISVNEditor editor = myRepository.getCommitEditor("modify " + path, null);
+        editor.openRoot(-1);
+        editor.openFile(path, -1);
+        sendContents(editor, path, contents);
+        editor.closeDir();
+        return editor.closeEdit().getNewRevision();
+    }
+
+    public void dispose() {
+        myRepository.closeSession();
+        SVNFileUtil.deleteAll(myRoot, true);
+    }
+
+    private static void sendContents(ISVNEditor editor, String path, byte[] contents) throws SVNException {
+        editor.applyTextDelta(path, null);
+        String checksum = new SVNDeltaGenerator().sendDelta(path, new ByteArrayInputStream(contents), editor, true);
+        editor.closeFile(path, checksum);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNFastXDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * Measures delta generation: a single window with each xdelta implementation, and whole
+ * files with {@link SVNDeltaGenerator} using aligned and sliding source views.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeltaBenchmark {
+
+    private static final int WINDOW_SIZE = 100 * 1024;
+
+    @State(Scope.Thread)
+    public static class WindowState {
+
+        @Param({"xdelta", "fastXDelta"})
+        public String algorithm;
+
+        @Param({"false", "true"})
+        public boolean binary;
+
+        private SVNDeltaAlgorithm myAlgorithm;
+        private byte[] mySource;
+        private byte[] myTarget;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            BenchmarkContents contents = new BenchmarkContents();
+            myAlgorithm = "xdelta".equals(algorithm) ? new SVNXDeltaAlgorithm() : new SVNFastXDeltaAlgorithm();
+            mySource = contents.create(WINDOW_SIZE, binary);
+            myTarget = contents.edit(mySource, binary);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FileState {
+
+        @Param({"false", "true"})
+        public boolean binary;
+
+        @Param({"1048576", "16777216"})
+        public int fileSize;
+
+        @Param({"0", "4194304"})
+        public int sourceViewSize;
+
+        private byte[] mySource;
+        private byte[] myTarget;
+        private Consumer myConsumer;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            BenchmarkContents contents = new BenchmarkContents();
+            mySource = contents.create(fileSize, binary);
+            // an insertion at the beginning shifts all windows
+            byte[] inserted = contents.create(1000, binary);
+            byte[] target = new byte[inserted.length + mySource.length];
+            System.arraycopy(inserted, 0, target, 0, inserted.length);
+            System.arraycopy(mySource, 0, target, inserted.length, mySource.length);
+            myTarget = contents.edit(target, binary);
+            myConsumer = new Consumer();
+        }
+    }
+
+    @Benchmark
+    public int computeWindowDelta(WindowState state) {
+        SVNDeltaAlgorithm algorithm = state.myAlgorithm;
+        algorithm.computeDelta(state.mySource, state.mySource.length, state.myTarget, state.myTarget.length);
+        int length = algorithm.getInstructionsLength() + algorithm.getNewDataLength();
+        algorithm.reset();
+        return length;
+    }
+
+    @Benchmark
+    public long generateFileDelta(FileState state) throws SVNException {
+        state.myConsumer.myDeltaLength = 0;
+        new SVNDeltaGenerator(WINDOW_SIZE, state.sourceViewSize).sendDelta("file", new ByteArrayInputStream(state.mySource), 0,
+                new ByteArrayInputStream(state.myTarget), state.myConsumer, false);
+        return state.myConsumer.myDeltaLength;
+    }
+
+    private static class Consumer implements ISVNDeltaConsumer {
+
+        private long myDeltaLength;
+
+        public void applyTextDelta(String path, String baseChecksum) {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+            myDeltaLength += diffWindow.getInstructionsLength() + diffWindow.getNewDataLength();
+            return SVNFileUtil.DUMMY_OUT;
+        }
+
+        public void textDeltaEnd(String path) {
+        }
+    }
+}
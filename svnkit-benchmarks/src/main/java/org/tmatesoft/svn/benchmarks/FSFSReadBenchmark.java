@@ -0,0 +1,150 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+/**
+ * Measures FSFS reads: reconstruction of a file through its delta chain by {@link SVNDeltaCombiner}
+ * and <code>FSInputStream</code>, and parsing of directory contents by {@link FSFS#getDirContents(FSRevisionNode)}.
+ * Node revision, fulltext, directory contents and mapped file caches of the repository are cleared
+ * before every operation, so each one reads and parses the revision files.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FSFSReadBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class FileState {
+
+        @Param({"102400", "4194304"})
+        public int fileSize;
+
+        @Param({"1", "10", "30"})
+        public int chainLength;
+
+        @Param({"false", "true"})
+        public boolean binary;
+
+        private BenchmarkRepository myRepository;
+        private FSFS myFSFS;
+        private FSRevisionRoot myRoot;
+        private byte[] myBuffer;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SVNException {
+            myRepository = new BenchmarkRepository("fsfs-read");
+            BenchmarkContents contents = myRepository.getContents();
+            byte[] fileContents = contents.create(fileSize, binary);
+            long revision = myRepository.addFile("file", fileContents);
+            for (int i = 1; i < chainLength; i++) {
+                fileContents = contents.edit(fileContents, binary);
+                revision = myRepository.modifyFile("file", fileContents);
+            }
+            myFSFS = new FSFS(myRepository.getRepositoryRoot());
+            myFSFS.open();
+            myRoot = myFSFS.createRevisionRoot(revision);
+            myBuffer = new byte[8192];
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws SVNException {
+            myFSFS.close();
+            myRepository.dispose();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DirectoryState {
+
+        @Param({"100", "1000", "10000"})
+        public int fileCount;
+
+        private BenchmarkRepository myRepository;
+        private FSFS myFSFS;
+        private FSRevisionNode myDirectory;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SVNException {
+            myRepository = new BenchmarkRepository("fsfs-dir");
+            long revision = myRepository.addDirectory("directory", fileCount, 16, false);
+            myFSFS = new FSFS(myRepository.getRepositoryRoot());
+            myFSFS.open();
+            myDirectory = myFSFS.createRevisionRoot(revision).getRevisionNode("/directory");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws SVNException {
+            myFSFS.close();
+            myRepository.dispose();
+        }
+    }
+
+    @Benchmark
+    public long readFile(FileState state) throws SVNException, IOException {
+        clearCaches(state.myFSFS);
+        InputStream contents = state.myRoot.getFileStreamForPath(new SVNDeltaCombiner(), "/file");
+        long length = 0;
+        try {
+            for (int read = contents.read(state.myBuffer); read >= 0; read = contents.read(state.myBuffer)) {
+                length += read;
+            }
+        } finally {
+            SVNFileUtil.closeFile(contents);
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int getDirContents(DirectoryState state) throws SVNException {
+        clearCaches(state.myFSFS);
+        Map entries = state.myFSFS.getDirContents(state.myDirectory);
+        return entries.size();
+    }
+
+    private static void clearCaches(FSFS fsfs) {
+        fsfs.getRevisionNodesCache().clear();
+        fsfs.getRevisionNodesByPathCache().clear();
+        fsfs.getFulltextCache().clear();
+        fsfs.getDirContentsCache().clear();
+        fsfs.getMappedFilesCache().clear();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.wc2.ISvnObjectReceiver;
+import org.tmatesoft.svn.core.wc2.SvnCheckout;
+import org.tmatesoft.svn.core.wc2.SvnGetStatus;
+import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
+import org.tmatesoft.svn.core.wc2.SvnStatus;
+import org.tmatesoft.svn.core.wc2.SvnTarget;
+
+/**
+ * Measures local status of a working copy in which every tenth file is modified,
+ * that is the walk over wc.db and the working files.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WorkingCopyStatusBenchmark {
+
+    @Param({"100", "1000"})
+    public int fileCount;
+
+    private BenchmarkRepository myRepository;
+    private SvnOperationFactory myOperationFactory;
+    private File myWorkingCopy;
+    private StatusCounter myCounter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SVNException {
+        myRepository = new BenchmarkRepository("status");
+        myRepository.addDirectory("directory", fileCount, 100, false);
+
+        myOperationFactory = new SvnOperationFactory();
+        myWorkingCopy = new File(myRepository.getRoot(), "wc");
+        SvnCheckout checkout = myOperationFactory.createCheckout();
+        checkout.setSource(SvnTarget.fromURL(myRepository.getURL()));
+        checkout.setSingleTarget(SvnTarget.fromFile(myWorkingCopy));
+        checkout.run();
+
+        BenchmarkContents contents = myRepository.getContents();
+        for (int i = 0; i < fileCount; i += 10) {
+            File file = new File(myWorkingCopy, "directory/file" + i);
+            SVNFileUtil.writeToFile(file, contents.create(100, false));
+        }
+        myCounter = new StatusCounter();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        myOperationFactory.dispose();
+        myRepository.dispose();
+    }
+
+    @Benchmark
+    public int getStatus() throws SVNException {
+        myCounter.myCount = 0;
+        SvnGetStatus status = myOperationFactory.createGetStatus();
+        status.setSingleTarget(SvnTarget.fromFile(myWorkingCopy));
+        status.setDepth(SVNDepth.INFINITY);
+        status.setReportAll(true);
+        status.setReceiver(myCounter);
+        status.run();
+        return myCounter.myCount;
+    }
+
+    private static class StatusCounter implements ISvnObjectReceiver<SvnStatus> {
+
+        private int myCount;
+
+        public void receive(SvnTarget target, SvnStatus status) {
+            myCount++;
+        }
+    }
+}
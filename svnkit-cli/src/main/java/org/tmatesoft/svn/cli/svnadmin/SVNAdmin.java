@@ -60,6 +60,8 @@ public class SVNAdmin extends AbstractSVNLauncher {
         AbstractSVNCommand.registerCommand(new SVNAdminSetUUIDCommand());
         AbstractSVNCommand.registerCommand(new SVNAdminHotCopyCommand());
         AbstractSVNCommand.registerCommand(new SVNAdminPackCommand());
+        AbstractSVNCommand.registerCommand(new SVNAdminBuildChangedPathsIndexCommand());
+        AbstractSVNCommand.registerCommand(new SVNAdminBuildRevisionTimesIndexCommand());
     }
 
     protected void registerOptions() {
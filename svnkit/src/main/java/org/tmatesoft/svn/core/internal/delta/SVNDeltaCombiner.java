@@ -11,11 +11,9 @@
  */
 package org.tmatesoft.svn.core.internal.delta;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
-import java.util.zip.InflaterInputStream;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -43,6 +41,7 @@ public class SVNDeltaCombiner {
     private ByteBuffer myTarget;
     private ByteBuffer myRealTarget;
     private ByteBuffer myReadWindowBuffer;
+    private ByteBuffer myDecompressedBuffer;
     
     private SVNRangeTree myRangeTree;
     private SVNOffsetsIndex myOffsetsIndex;
@@ -60,10 +59,12 @@ public class SVNDeltaCombiner {
 
     public void reset() {
         myWindow = null;
-        myWindowData = null;
-        myReadWindowBuffer = null;
+        // buffers only used while a window is read or combined are kept for the next one,
+        // target buffers are not, callers may still read the last returned one.
+        myWindowData = clearBuffer(myWindowData);
+        myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
         myNextWindowData = clearBuffer(myNextWindowData);
-        myNextWindowInstructions = null;
+        myNextWindowInstructions = clearBuffer(myNextWindowInstructions);
         myTarget = null;
         myRealTarget = null;
         
@@ -106,10 +107,10 @@ public class SVNDeltaCombiner {
         }
         myReadWindowBuffer.position(0);
         myReadWindowBuffer.limit(myReadWindowBuffer.capacity());
-        if (version == 1) {
+        if (version == 1 || version == 2) {
             // decompress instructions and new data, put back to the buffer.
             try {
-                int[] lenghts = decompress(instructionsLength, dataLength);
+                int[] lenghts = decompress(instructionsLength, dataLength, version);
                 instructionsLength = lenghts[0];
                 dataLength = lenghts[1];
             } catch (IOException e) {
@@ -122,56 +123,48 @@ public class SVNDeltaCombiner {
         return window;
     }
 
-    private int[] decompress(int instructionsLength, int dataLength) throws IOException {
-        int originalPosition = myReadWindowBuffer.position();
-        int realInstructionsLength = readOffset(myReadWindowBuffer);
-        byte[] instructionsData = new byte[realInstructionsLength];
-        byte[] data = null;
+    private int[] decompress(int instructionsLength, int dataLength, int version) throws IOException {
+        myDecompressedBuffer = clearBuffer(myDecompressedBuffer);
+        int realInstructionsLength = decompress(instructionsLength, version);
         int realDataLength = 0;
-        int compressedLength = instructionsLength - (myReadWindowBuffer.position() - originalPosition);
-        if (realInstructionsLength == compressedLength) {
-            System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), instructionsData, 0, realInstructionsLength);
-            myReadWindowBuffer.position(myReadWindowBuffer.position() + realInstructionsLength);
-        } else {
-            byte[] compressedData = new byte[compressedLength];
-            System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), compressedData, 0, compressedLength);
-            myReadWindowBuffer.position(myReadWindowBuffer.position() + compressedLength);
-            InflaterInputStream is = new InflaterInputStream(new ByteArrayInputStream(compressedData));
-            int read = 0;
-            while(read < realInstructionsLength) {
-                read += is.read(instructionsData, read, realInstructionsLength - read);
-            }
-        }
         if (dataLength > 0) {
-            originalPosition = myReadWindowBuffer.position();
-            realDataLength = readOffset(myReadWindowBuffer);
-            compressedLength = dataLength - (myReadWindowBuffer.position() - originalPosition);
-            data = new byte[realDataLength];
-            if (compressedLength == realDataLength) {
-                System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), data, 0, realDataLength);
-                myReadWindowBuffer.position(myReadWindowBuffer.position() + realDataLength);
-            } else {
-                byte[] compressedData = new byte[compressedLength];
-                System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), compressedData, 0, compressedLength);
-                myReadWindowBuffer.position(myReadWindowBuffer.position() + compressedLength);
-                InflaterInputStream is = new InflaterInputStream(new ByteArrayInputStream(compressedData));
-                int read = 0;
-                while(read < realDataLength) {
-                    read += is.read(data, read, realDataLength - read);
-                }
-            }
-        }
-        myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
-        myReadWindowBuffer = ensureBufferSize(myReadWindowBuffer, realInstructionsLength + realDataLength);
-        myReadWindowBuffer.put(instructionsData);
-        if (data != null) {
-            myReadWindowBuffer.put(data);
+            realDataLength = decompress(dataLength, version);
         }
+        // decompressed window becomes the read buffer, the read one is reused for the next window.
+        ByteBuffer decompressed = myDecompressedBuffer;
+        myDecompressedBuffer = myReadWindowBuffer;
+        myReadWindowBuffer = decompressed;
         myReadWindowBuffer.position(0);
         myReadWindowBuffer.limit(myReadWindowBuffer.capacity());
         return new int[] {realInstructionsLength, realDataLength};
     }
 
+    private int decompress(int length, int version) throws IOException {
+        int originalPosition = myReadWindowBuffer.position();
+        int realLength = readOffset(myReadWindowBuffer);
+        if (realLength < 0) {
+            throw new IOException("Unexpected end of compressed svndiff data");
+        }
+        int compressedLength = length - (myReadWindowBuffer.position() - originalPosition);
+        myDecompressedBuffer = ensureBufferSize(myDecompressedBuffer, realLength);
+        byte[] compressedData = myReadWindowBuffer.array();
+        int compressedOffset = myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position();
+        byte[] data = myDecompressedBuffer.array();
+        int dataOffset = myDecompressedBuffer.arrayOffset() + myDecompressedBuffer.position();
+        if (compressedLength == realLength) {
+            System.arraycopy(compressedData, compressedOffset, data, dataOffset, realLength);
+        } else if (version == 2) {
+            if (SVNLZ4.decompress(compressedData, compressedOffset, compressedLength, data, dataOffset, realLength) != realLength) {
+                throw new IOException("Decompressed svndiff data has unexpected length");
+            }
+        } else if (SVNDeltaInflater.inflate(compressedData, compressedOffset, compressedLength, data, dataOffset, realLength) != realLength) {
+            throw new IOException("Unexpected end of compressed svndiff data");
+        }
+        myReadWindowBuffer.position(originalPosition + length);
+        myDecompressedBuffer.position(myDecompressedBuffer.position() + realLength);
+        return realLength;
+    }
+
     public void skipWindow(FSFile file) throws SVNException {
         myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
         myReadWindowBuffer = ensureBufferSize(myReadWindowBuffer, 4096);
@@ -0,0 +1,59 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+
+/**
+ * Inflates zlib compressed svndiff1 sections with an {@link Inflater} kept per thread,
+ * so reading a window does not create (and finalize) a native inflater.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNDeltaInflater {
+
+    private static final ThreadLocal<Inflater> ourInflater = new ThreadLocal<Inflater>() {
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    /**
+     * Inflates <code>srcLength</code> bytes of <code>src</code> into at most <code>dstLength</code> bytes of <code>dst</code>.
+     *
+     * @return number of bytes inflated, less than <code>dstLength</code> if compressed data ends earlier
+     */
+    public static int inflate(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) throws IOException {
+        Inflater inflater = ourInflater.get();
+        inflater.reset();
+        inflater.setInput(src, srcOffset, srcLength);
+        int inflated = 0;
+        try {
+            while (inflated < dstLength) {
+                int count = inflater.inflate(dst, dstOffset + inflated, dstLength - inflated);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            inflater.reset();
+        }
+        return inflated;
+    }
+}
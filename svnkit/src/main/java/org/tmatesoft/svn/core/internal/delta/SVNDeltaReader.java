@@ -11,13 +11,10 @@
  */
 package org.tmatesoft.svn.core.internal.delta;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.zip.InflaterInputStream;
+import java.util.Arrays;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -38,6 +35,7 @@ import org.tmatesoft.svn.util.SVNLogType;
 public class SVNDeltaReader {
     
     private ByteBuffer myBuffer;
+    private ByteBuffer myDecompressedBuffer;
     
     private int myHeaderBytes;
     private long myLastSourceOffset;
@@ -74,7 +72,7 @@ public class SVNDeltaReader {
                 return;
             }
             if (myBuffer.get(0) != 'S' || myBuffer.get(1) != 'V' || myBuffer.get(2) != 'N' ||
-                    (myBuffer.get(3) != '\0' && myBuffer.get(3) != '\1')) {
+                    (myBuffer.get(3) != '\0' && myBuffer.get(3) != '\1' && myBuffer.get(3) != '\2')) {
                 SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW, "Svndiff has invalid header");
                 SVNErrorManager.error(err, SVNLogType.DEFAULT);
             }
@@ -120,20 +118,23 @@ public class SVNDeltaReader {
             myLastSourceLength = sourceLength;
             SVNDiffWindow window = null;
             int allDataLength = newDataLength + instructionsLength;
-            if (myVersion == 1) {
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (myVersion == 1 || myVersion == 2) {
+                if (myDecompressedBuffer == null) {
+                    myDecompressedBuffer = ByteBuffer.allocate(4096);
+                }
+                myDecompressedBuffer.clear();
                 int bufferPosition = myBuffer.position();
                 try {
-                    instructionsLength = deflate(instructionsLength, out);
-                    newDataLength = deflate(newDataLength, out);
+                    instructionsLength = deflate(instructionsLength);
+                    newDataLength = deflate(newDataLength);
                 } catch (IOException e) {
                     SVNDebugLog.getDefaultLog().logSevere(SVNLogType.DEFAULT, e);
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW, "Decompression of svndiff data failed: {0}", e.getMessage());
+                    SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
                 }
-                byte[] bytes = out.toByteArray();
-                ByteBuffer decompressed = ByteBuffer.wrap(bytes);
-                decompressed.position(0);
+                myDecompressedBuffer.position(0);
                 window = new SVNDiffWindow(sourceOffset, sourceLength, targetLength, instructionsLength, newDataLength);
-                window.setData(decompressed);
+                window.setData(myDecompressedBuffer);
                 myBuffer.position(bufferPosition);
             } else {
                 window = new SVNDiffWindow(sourceOffset, sourceLength, targetLength, instructionsLength, newDataLength);
@@ -153,32 +154,44 @@ public class SVNDeltaReader {
         }
     }
     
-    private int deflate(int compressedLength, OutputStream out) throws IOException {
+    private int deflate(int compressedLength) throws IOException {
         int originalPosition = myBuffer.position();
         int uncompressedLength = readOffset();
+        if (uncompressedLength < 0) {
+            throw new IOException("Unexpected end of compressed svndiff data");
+        }
+        ensureDecompressedBufferSize(uncompressedLength);
+        byte[] compressed = myBuffer.array();
+        int offset = myBuffer.arrayOffset() + myBuffer.position();
+        byte[] uncompressedData = myDecompressedBuffer.array();
+        int uncompressedOffset = myDecompressedBuffer.arrayOffset() + myDecompressedBuffer.position();
         // substract offset length from the total length.
-        if (uncompressedLength == (compressedLength - (myBuffer.position() - originalPosition))) {
-            int offset = myBuffer.arrayOffset() + myBuffer.position();
-            out.write(myBuffer.array(), offset, uncompressedLength);
-        } else {
-            byte[] uncompressedData = new byte[uncompressedLength];
-            byte[] compressed = myBuffer.array();
-            int offset = myBuffer.arrayOffset() + myBuffer.position();
-            InputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed, offset, compressedLength));
-            int read = 0;
-            while(read < uncompressedLength) {
-                int r = in.read(uncompressedData, read, uncompressedLength - read);
-                if (r < 0) {
-                    break;
-                }
-                read += r;
+        int compressedDataLength = compressedLength - (myBuffer.position() - originalPosition);
+        if (uncompressedLength == compressedDataLength) {
+            System.arraycopy(compressed, offset, uncompressedData, uncompressedOffset, uncompressedLength);
+        } else if (myVersion == 2) {
+            int read = SVNLZ4.decompress(compressed, offset, compressedDataLength, uncompressedData, uncompressedOffset, uncompressedLength);
+            if (read != uncompressedLength) {
+                throw new IOException("Decompressed svndiff data has unexpected length");
             }
-            out.write(uncompressedData);
+        } else {
+            int read = SVNDeltaInflater.inflate(compressed, offset, compressedDataLength, uncompressedData, uncompressedOffset, uncompressedLength);
+            // data missing at the end of the stream is left zeroed, as before
+            Arrays.fill(uncompressedData, uncompressedOffset + read, uncompressedOffset + uncompressedLength, (byte) 0);
         }
+        myDecompressedBuffer.position(myDecompressedBuffer.position() + uncompressedLength);
         myBuffer.position(originalPosition + compressedLength);
         return uncompressedLength;
     }
 
+    private void ensureDecompressedBufferSize(int length) {
+        if (myDecompressedBuffer.remaining() < length) {
+            ByteBuffer newBuffer = ByteBuffer.allocate((myDecompressedBuffer.position() + length)*3/2);
+            newBuffer.put(myDecompressedBuffer.array(), 0, myDecompressedBuffer.position());
+            myDecompressedBuffer = newBuffer;
+        }
+    }
+
     private void appendToBuffer(byte[] data, int offset, int length) {
         int limit = myBuffer.limit(); // amount of pending data?
         if (myBuffer.capacity() < limit + length) {
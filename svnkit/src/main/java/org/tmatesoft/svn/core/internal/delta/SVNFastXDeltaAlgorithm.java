@@ -0,0 +1,196 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta;
+
+import java.util.Arrays;
+
+
+/**
+ * X-Delta algorithm that produces exactly the same instructions as {@link SVNXDeltaAlgorithm}
+ * without allocating objects per block or per byte.
+ *
+ * <p/>
+ * Blocks of the source are kept in an open addressed table of <code>int</code> checksums
+ * and positions, the rolling checksum and the pending insertion are plain fields. The table
+ * is reused by subsequent calls, so an instance should not be shared between threads.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNFastXDeltaAlgorithm extends SVNDeltaAlgorithm {
+
+    private static final int MATCH_BLOCK_SIZE = 64;
+    private static final int ADLER32_MASK = 0x0000FFFF;
+    private static final int EMPTY = -1;
+
+    private int[] myChecksums;
+    private int[] myPositions;
+    private int myTableMask;
+
+    private int myS1;
+    private int myS2;
+    private int myChecksumLength;
+
+    private int myMatchPosition;
+    private int myMatchLength;
+    private int myMatchAdvance;
+    private int myInsertionPosition;
+    private int myInsertionLength;
+
+    public void computeDelta(byte[] a, int aLength, byte[] b, int bLength) {
+        if (bLength < MATCH_BLOCK_SIZE || aLength == 0) {
+            // nothing to match against, the whole target is new data
+            copyFromNewData(b, 0, bLength);
+            return;
+        }
+        createMatchesTable(a, aLength);
+        resetChecksum();
+        for (int i = 0; i < MATCH_BLOCK_SIZE; i++) {
+            addToChecksum(b[i]);
+        }
+
+        int lo = 0;
+        myInsertionLength = 0;
+        while (lo < bLength) {
+            int advance = 1;
+            if (findMatch(a, aLength, b, bLength, lo)) {
+                if (myInsertionLength > 0) {
+                    copyFromNewData(b, myInsertionPosition, myInsertionLength);
+                    myInsertionLength = 0;
+                }
+                copyFromSource(myMatchPosition, myMatchLength);
+                advance = myMatchAdvance;
+            } else if (myInsertionLength > 0) {
+                myInsertionLength++;
+            } else {
+                myInsertionPosition = lo;
+                myInsertionLength = 1;
+            }
+            for (int next = lo; next < lo + advance; next++) {
+                removeFromChecksum(b[next]);
+                if (next + MATCH_BLOCK_SIZE < bLength) {
+                    addToChecksum(b[next + MATCH_BLOCK_SIZE]);
+                }
+            }
+            lo += advance;
+        }
+        if (myInsertionLength > 0) {
+            copyFromNewData(b, myInsertionPosition, myInsertionLength);
+            myInsertionLength = 0;
+        }
+    }
+
+    private boolean findMatch(byte[] a, int aLength, byte[] b, int bLength, int bPos) {
+        int position = lookup(getChecksum());
+        if (position == EMPTY) {
+            return false;
+        }
+        int length = Math.min(MATCH_BLOCK_SIZE, aLength - position);
+        if (bPos + length > bLength) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (a[position + i] != b[bPos + i]) {
+                return false;
+            }
+        }
+        int advance = length;
+        // extend forward
+        while (position + length < aLength && bPos + advance < bLength && a[position + length] == b[bPos + advance]) {
+            length++;
+            advance++;
+        }
+        // extend backward
+        while (position > 0 && bPos > 0 && a[position - 1] == b[bPos - 1] && myInsertionLength != 0) {
+            myInsertionLength--;
+            bPos--;
+            position--;
+            length++;
+        }
+        myMatchPosition = position;
+        myMatchLength = length;
+        myMatchAdvance = advance;
+        return true;
+    }
+
+    private void createMatchesTable(byte[] data, int dataLength) {
+        int blocks = (dataLength + MATCH_BLOCK_SIZE - 1) / MATCH_BLOCK_SIZE;
+        int capacity = 16;
+        while (capacity < blocks * 2) {
+            capacity <<= 1;
+        }
+        if (myPositions == null || myPositions.length < capacity) {
+            myPositions = new int[capacity];
+            myChecksums = new int[capacity];
+        }
+        myTableMask = capacity - 1;
+        Arrays.fill(myPositions, 0, capacity, EMPTY);
+
+        for (int i = 0; i < dataLength; i += MATCH_BLOCK_SIZE) {
+            int length = i + MATCH_BLOCK_SIZE >= dataLength ? dataLength - i : MATCH_BLOCK_SIZE;
+            resetChecksum();
+            for (int j = i; j < i + length; j++) {
+                addToChecksum(data[j]);
+            }
+            int checksum = getChecksum();
+            int slot = getSlot(checksum);
+            while (myPositions[slot] != EMPTY && myChecksums[slot] != checksum) {
+                slot = (slot + 1) & myTableMask;
+            }
+            // the first block with a checksum wins
+            if (myPositions[slot] == EMPTY) {
+                myPositions[slot] = i;
+                myChecksums[slot] = checksum;
+            }
+        }
+    }
+
+    private int lookup(int checksum) {
+        int slot = getSlot(checksum);
+        while (myPositions[slot] != EMPTY) {
+            if (myChecksums[slot] == checksum) {
+                return myPositions[slot];
+            }
+            slot = (slot + 1) & myTableMask;
+        }
+        return EMPTY;
+    }
+
+    private int getSlot(int checksum) {
+        int hash = checksum * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & myTableMask;
+    }
+
+    private void resetChecksum() {
+        myS1 = 1;
+        myS2 = 0;
+        myChecksumLength = 0;
+    }
+
+    private void addToChecksum(byte b) {
+        int z = b & 0x000000FF;
+        myS1 = (myS1 + z) & ADLER32_MASK;
+        myS2 = (myS2 + myS1) & ADLER32_MASK;
+        myChecksumLength++;
+    }
+
+    private void removeFromChecksum(byte b) {
+        int z = b & 0x000000FF;
+        myS1 = (myS1 - z) & ADLER32_MASK;
+        myS2 = (myS2 - (myChecksumLength * z + 1)) & ADLER32_MASK;
+        myChecksumLength--;
+    }
+
+    private int getChecksum() {
+        return (myS2 << 16) | myS1;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * LZ4 block format codec used by svndiff2 to compress instructions and new data of
+ * delta windows. Blocks are compatible with <code>LZ4_compress_default()</code> and
+ * <code>LZ4_decompress_safe()</code> of the reference implementation.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNLZ4 {
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int HASH_LOG = 12;
+    private static final int SKIP_TRIGGER = 6;
+
+    private SVNLZ4() {
+    }
+
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses <code>length</code> bytes of <code>src</code> into <code>dst</code>, which
+     * should have at least {@link #maxCompressedLength(int)} bytes available.
+     *
+     * @return number of bytes written to <code>dst</code>
+     */
+    public static int compress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+        int srcEnd = srcOffset + length;
+        int matchLimit = srcEnd - LAST_LITERALS;
+        int mfLimit = srcEnd - MF_LIMIT;
+        int anchor = srcOffset;
+        int dp = dstOffset;
+
+        if (length > MF_LIMIT) {
+            int[] hashTable = new int[1 << HASH_LOG];
+            Arrays.fill(hashTable, -1);
+            int sp = srcOffset;
+            while (sp < mfLimit) {
+                int sequence = readInt(src, sp);
+                int hash = hash(sequence);
+                int ref = hashTable[hash];
+                hashTable[hash] = sp;
+                if (ref < 0 || sp - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                    // move faster through data that does not compress
+                    sp += 1 + ((sp - anchor) >>> SKIP_TRIGGER);
+                    continue;
+                }
+                while (sp > anchor && ref > srcOffset && src[sp - 1] == src[ref - 1]) {
+                    sp--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (sp + matchLength < matchLimit && src[sp + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+                dp = writeSequence(src, anchor, sp - anchor, dst, dp, sp - ref, matchLength);
+                sp += matchLength;
+                anchor = sp;
+            }
+        }
+        return writeSequence(src, anchor, srcEnd - anchor, dst, dp, 0, 0) - dstOffset;
+    }
+
+    /**
+     * Decompresses <code>length</code> bytes of <code>src</code> into <code>dst</code>.
+     *
+     * @return number of bytes written to <code>dst</code>
+     * @throws IOException if <code>src</code> is not a valid LZ4 block or does not fit
+     *                     into <code>dstLength</code> bytes
+     */
+    public static int decompress(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset, int dstLength) throws IOException {
+        int sp = srcOffset;
+        int srcEnd = srcOffset + length;
+        int dp = dstOffset;
+        int dstEnd = dstOffset + dstLength;
+        while (sp < srcEnd) {
+            int token = src[sp++] & 0xFF;
+            int literalsLength = token >>> 4;
+            if (literalsLength == 15) {
+                int b;
+                do {
+                    if (sp >= srcEnd) {
+                        throw new IOException("Malformed LZ4 block: unexpected end of literals length");
+                    }
+                    b = src[sp++] & 0xFF;
+                    literalsLength += b;
+                } while (b == 255);
+            }
+            if (literalsLength > srcEnd - sp || literalsLength > dstEnd - dp) {
+                throw new IOException("Malformed LZ4 block: literals out of bounds");
+            }
+            System.arraycopy(src, sp, dst, dp, literalsLength);
+            sp += literalsLength;
+            dp += literalsLength;
+            if (sp == srcEnd) {
+                break;
+            }
+
+            if (srcEnd - sp < 2) {
+                throw new IOException("Malformed LZ4 block: unexpected end of match offset");
+            }
+            int distance = (src[sp] & 0xFF) | ((src[sp + 1] & 0xFF) << 8);
+            sp += 2;
+            if (distance == 0 || distance > dp - dstOffset) {
+                throw new IOException("Malformed LZ4 block: match offset out of bounds");
+            }
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    if (sp >= srcEnd) {
+                        throw new IOException("Malformed LZ4 block: unexpected end of match length");
+                    }
+                    b = src[sp++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > dstEnd - dp) {
+                throw new IOException("Malformed LZ4 block: match out of bounds");
+            }
+            int ref = dp - distance;
+            if (distance >= matchLength) {
+                System.arraycopy(dst, ref, dst, dp, matchLength);
+                dp += matchLength;
+            } else {
+                // overlapping copy repeats the last bytes
+                for (int i = 0; i < matchLength; i++) {
+                    dst[dp++] = dst[ref++];
+                }
+            }
+        }
+        return dp - dstOffset;
+    }
+
+    private static int writeSequence(byte[] src, int literalsOffset, int literalsLength, byte[] dst, int dp, int distance, int matchLength) {
+        int tokenOffset = dp++;
+        int token = 0;
+        if (literalsLength >= 15) {
+            token = 15 << 4;
+            dp = writeLength(dst, dp, literalsLength - 15);
+        } else {
+            token = literalsLength << 4;
+        }
+        System.arraycopy(src, literalsOffset, dst, dp, literalsLength);
+        dp += literalsLength;
+        if (matchLength > 0) {
+            dst[dp++] = (byte) (distance & 0xFF);
+            dst[dp++] = (byte) ((distance >>> 8) & 0xFF);
+            int length = matchLength - MIN_MATCH;
+            if (length >= 15) {
+                token |= 15;
+                dp = writeLength(dst, dp, length - 15);
+            } else {
+                token |= length;
+            }
+        }
+        dst[tokenOffset] = (byte) token;
+        return dp;
+    }
+
+    private static int writeLength(byte[] dst, int dp, int length) {
+        while (length >= 255) {
+            dst[dp++] = (byte) 255;
+            length -= 255;
+        }
+        dst[dp++] = (byte) length;
+        return dp;
+    }
+
+    private static int readInt(byte[] src, int offset) {
+        return (src[offset] & 0xFF) | ((src[offset + 1] & 0xFF) << 8) | ((src[offset + 2] & 0xFF) << 16) | ((src[offset + 3] & 0xFF) << 24);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
@@ -23,13 +23,17 @@ public class SVNVDeltaAlgorithm extends SVNDeltaAlgorithm {
     private static final int VD_KEY_SIZE = 4;
     
     private SlotsTable mySlotsTable; 
+    private byte[] myData;
     
     public void computeDelta(byte[] a, int aLength, byte[] b, int bLength) {
         int dataLength;
         byte[] data;
         if (aLength > 0 && bLength > 0) {
-            // both are non-empty (reuse some local array).
-            data = new byte[(aLength + bLength)];
+            // both are non-empty, concatenate them in a buffer kept for the next windows.
+            if (myData == null || myData.length < aLength + bLength) {
+                myData = new byte[aLength + bLength];
+            }
+            data = myData;
             System.arraycopy(a, 0, data, 0, aLength);
             System.arraycopy(b, 0, data, aLength, bLength);
             dataLength = aLength + bLength;
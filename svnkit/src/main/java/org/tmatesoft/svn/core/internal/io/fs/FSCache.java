@@ -0,0 +1,126 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe LRU cache shared by all readers of a single {@link FSFS} instance.
+ * Only data that never changes once written (i.e. data of committed revisions)
+ * should be put into it.
+ *
+ * <p/>
+ * By default every entry weighs 1, so the limit is the number of entries; subclasses
+ * may override {@link #getWeight(Object, Object)} to bound the cache by memory instead.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSCache<K, V> {
+
+    private final LinkedHashMap<K, V> myEntries;
+    private final Map<K, Long> myWeights;
+    private final long myWeightLimit;
+    private long myWeight;
+
+    private long myHitCount;
+    private long myMissCount;
+    private long myEvictionCount;
+
+    public FSCache(long weightLimit) {
+        myWeightLimit = weightLimit;
+        myEntries = new LinkedHashMap<K, V>(16, 0.75f, true);
+        myWeights = new HashMap<K, Long>();
+    }
+
+    public synchronized V get(K key) {
+        V value = myEntries.get(key);
+        if (value != null) {
+            myHitCount++;
+        } else {
+            myMissCount++;
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        if (myWeightLimit <= 0 || key == null || value == null) {
+            return;
+        }
+        long weight = getWeight(key, value);
+        if (weight > myWeightLimit) {
+            return;
+        }
+        remove(key);
+        myEntries.put(key, value);
+        myWeights.put(key, new Long(weight));
+        myWeight += weight;
+
+        for (Iterator<K> keys = myEntries.keySet().iterator(); myWeight > myWeightLimit && keys.hasNext();) {
+            K eldestKey = keys.next();
+            keys.remove();
+            Long eldestWeight = myWeights.remove(eldestKey);
+            myWeight -= eldestWeight.longValue();
+            myEvictionCount++;
+        }
+    }
+
+    public synchronized void remove(K key) {
+        if (myEntries.remove(key) != null) {
+            Long weight = myWeights.remove(key);
+            myWeight -= weight.longValue();
+        }
+    }
+
+    public synchronized void clear() {
+        myEntries.clear();
+        myWeights.clear();
+        myWeight = 0;
+    }
+
+    public synchronized int size() {
+        return myEntries.size();
+    }
+
+    public synchronized long getWeight() {
+        return myWeight;
+    }
+
+    public long getWeightLimit() {
+        return myWeightLimit;
+    }
+
+    public synchronized long getHitCount() {
+        return myHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return myMissCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return myEvictionCount;
+    }
+
+    public synchronized void resetStatistics() {
+        myHitCount = 0;
+        myMissCount = 0;
+        myEvictionCount = 0;
+    }
+
+    protected long getWeight(K key, V value) {
+        return 1;
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
+import org.tmatesoft.sqljet.core.schema.SqlJetConflictAction;
+import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
+import org.tmatesoft.sqljet.core.table.ISqlJetRunnableWithLock;
+import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.internal.util.SVNHashSet;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Optional sidecar index of a repository (<code>db/changed-paths.db</code>) which maps
+ * repository paths to the revisions that changed them, so that log and deleted revision
+ * requests do not have to walk node histories revision by revision.
+ *
+ * <p/>
+ * For every revision the index keeps a row for each changed path and each of its parent
+ * directories (those get new node revisions in the same commit), and separately all
+ * additions, deletions and replacements together with their copy sources. The index
+ * is brought up to date after every commit and may lag behind the repository, callers
+ * should check {@link #getYoungestRevision()} before relying on it.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSChangedPathsIndex {
+
+    public static final String CHANGED_PATHS_INDEX_DB = "changed-paths.db";
+
+    private static final int DB_FORMAT = 1;
+
+    private static final String PATH_REVISIONS_TABLE = "path_revisions";
+    private static final String PATH_REVISIONS_INDEX = "i_path_revisions";
+    private static final String NODE_CHANGES_TABLE = "node_changes";
+    private static final String NODE_CHANGES_INDEX = "i_node_changes";
+    private static final String INFO_TABLE = "info";
+    private static final String YOUNGEST_REVISION = "youngest";
+
+    private static final String[] DB_SQL = {
+        "create table path_revisions (path text not null, " +
+        "                             revision integer not null); ",
+        "create index i_path_revisions on path_revisions (path, revision); ",
+        "create table node_changes (path text not null, " +
+        "                           revision integer not null, " +
+        "                           action text not null, " +
+        "                           copyfrom_path text, " +
+        "                           copyfrom_revision integer); ",
+        "create index i_node_changes on node_changes (path, revision); ",
+        "create table info (name text not null primary key, " +
+        "                   value integer not null); ",
+    };
+
+    private SqlJetDb myDB;
+    private ISqlJetTable myPathRevisionsTable;
+    private ISqlJetTable myNodeChangesTable;
+    private ISqlJetTable myInfoTable;
+
+    private FSChangedPathsIndex(SqlJetDb db) throws SqlJetException {
+        myDB = db;
+        myPathRevisionsTable = db.getTable(PATH_REVISIONS_TABLE);
+        myNodeChangesTable = db.getTable(NODE_CHANGES_TABLE);
+        myInfoTable = db.getTable(INFO_TABLE);
+    }
+
+    /**
+     * Opens the index of <code>fsfs</code>.
+     *
+     * @return the index or <code>null</code> when the repository has no (readable) index
+     */
+    public static FSChangedPathsIndex open(FSFS fsfs) {
+        File file = fsfs.getChangedPathsIndexFile();
+        if (!file.isFile()) {
+            return null;
+        }
+        SqlJetDb db = null;
+        try {
+            db = SqlJetDb.open(file, true);
+            db.setSafetyLevel(SqlJetSafetyLevel.OFF);
+            checkFormat(db);
+            return new FSChangedPathsIndex(db);
+        } catch (SqlJetException e) {
+            SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+            closeDB(db);
+        }
+        return null;
+    }
+
+    /**
+     * Creates an empty index for <code>fsfs</code> unless there is one already.
+     */
+    public static FSChangedPathsIndex create(FSFS fsfs) throws SVNException {
+        SqlJetDb db = null;
+        try {
+            db = SqlJetDb.open(fsfs.getChangedPathsIndexFile(), true);
+            db.setSafetyLevel(SqlJetSafetyLevel.OFF);
+            checkFormat(db);
+            return new FSChangedPathsIndex(db);
+        } catch (SqlJetException e) {
+            closeDB(db);
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+        return null;
+    }
+
+    private static void checkFormat(final SqlJetDb db) throws SqlJetException {
+        db.runWithLock(new ISqlJetRunnableWithLock() {
+            public Object runWithLock(SqlJetDb db) throws SqlJetException {
+                int version = db.getOptions().getUserVersion();
+                if (version < DB_FORMAT) {
+                    db.getOptions().setAutovacuum(true);
+                    db.runWriteTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            db.getOptions().setUserVersion(DB_FORMAT);
+                            for (int i = 0; i < DB_SQL.length; i++) {
+                                if (DB_SQL[i].startsWith("create index")) {
+                                    db.createIndex(DB_SQL[i]);
+                                } else {
+                                    db.createTable(DB_SQL[i]);
+                                }
+                            }
+                            return null;
+                        }
+                    });
+                } else if (version > DB_FORMAT) {
+                    throw new SqlJetException("Schema format " + version + " not recognized");
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @return the youngest revision recorded in the index or {@link SVNRepository#INVALID_REVISION}
+     *         if no revisions were indexed yet
+     */
+    public long getYoungestRevision() throws SVNException {
+        Long youngest = (Long) runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return new Long(readYoungestRevision());
+            }
+        });
+        return youngest.longValue();
+    }
+
+    /**
+     * Indexes all revisions of <code>fsfs</code> which are younger than the youngest
+     * indexed one. Each revision is recorded in its own transaction.
+     */
+    public void update(final FSFS fsfs, ISVNCanceller canceller) throws SVNException {
+        long youngest = fsfs.getYoungestRevision();
+        for (long revision = getYoungestRevision() + 1; revision <= youngest; revision++) {
+            if (canceller != null) {
+                canceller.checkCancelled();
+            }
+            final long indexedRevision = revision;
+            final Map changedPaths = fsfs.createRevisionRoot(revision).getChangedPaths();
+            runWriteTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    // another process might have indexed this revision meanwhile
+                    if (readYoungestRevision() < indexedRevision) {
+                        indexRevision(indexedRevision, changedPaths);
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Adds to <code>revisions</code> all revisions between <code>start</code> and <code>end</code>
+     * that are reported by the history of the node at <code>path@end</code>, following copies
+     * unless <code>strictNode</code> is set.
+     */
+    public void collectHistoryRevisions(final String path, final long start, final long end, final boolean strictNode,
+            final Collection revisions) throws SVNException {
+        runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                String currentPath = path;
+                long currentRevision = end;
+                while (currentRevision >= start) {
+                    if ("/".equals(currentPath)) {
+                        for (long revision = start; revision <= currentRevision; revision++) {
+                            revisions.add(new Long(revision));
+                        }
+                        break;
+                    }
+                    NodeChange birth = findBirth(currentPath, currentRevision);
+                    long firstRevision = birth == null ? start : Math.max(start, birth.myRevision);
+                    collectPathRevisions(currentPath, firstRevision, currentRevision, revisions);
+                    if (birth == null || birth.myRevision < start) {
+                        break;
+                    }
+                    revisions.add(new Long(birth.myRevision));
+                    if (strictNode || birth.myCopyFromPath == null) {
+                        break;
+                    }
+                    String relativePath = SVNPathUtil.getPathAsChild(birth.myPath, currentPath);
+                    currentPath = relativePath == null ? birth.myCopyFromPath : SVNPathUtil.append(birth.myCopyFromPath, relativePath);
+                    currentRevision = birth.myCopyFromRevision;
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @return the first revision in <code>(start, end]</code> which deletes or replaces
+     *         <code>path</code> or one of its parents, or {@link SVNRepository#INVALID_REVISION}
+     */
+    public long getDeletedRevision(final String path, final long start, final long end) throws SVNException {
+        Long deletedRevision = (Long) runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                long deletedRevision = SVNRepository.INVALID_REVISION;
+                for (String currentPath = path; !"/".equals(currentPath) && !"".equals(currentPath); currentPath = SVNPathUtil.removeTail(currentPath)) {
+                    ISqlJetCursor cursor = myNodeChangesTable.scope(NODE_CHANGES_INDEX,
+                            new Object[] {currentPath, new Long(start + 1)}, new Object[] {currentPath, new Long(end)});
+                    try {
+                        for (; !cursor.eof(); cursor.next()) {
+                            NodeChange change = new NodeChange(cursor);
+                            if (change.isDeletion()) {
+                                if (deletedRevision < 0 || change.myRevision < deletedRevision) {
+                                    deletedRevision = change.myRevision;
+                                }
+                                break;
+                            }
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                return new Long(deletedRevision);
+            }
+        });
+        return deletedRevision.longValue();
+    }
+
+    public void close() throws SVNException {
+        if (myDB != null) {
+            try {
+                myDB.close();
+            } catch (SqlJetException e) {
+                SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+            } finally {
+                myPathRevisionsTable = null;
+                myNodeChangesTable = null;
+                myInfoTable = null;
+                myDB = null;
+            }
+        }
+    }
+
+    private long readYoungestRevision() throws SqlJetException {
+        ISqlJetCursor cursor = myInfoTable.lookup(myInfoTable.getPrimaryKeyIndexName(), new Object[] {YOUNGEST_REVISION});
+        try {
+            return cursor.eof() ? SVNRepository.INVALID_REVISION : cursor.getInteger("value");
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void indexRevision(long revision, Map changedPaths) throws SqlJetException {
+        Long revisionObject = new Long(revision);
+        Set paths = new SVNHashSet();
+        for (Iterator changes = changedPaths.values().iterator(); changes.hasNext();) {
+            FSPathChange change = (FSPathChange) changes.next();
+            if (change.getChangeKind() == FSPathChangeKind.FS_PATH_CHANGE_RESET) {
+                continue;
+            }
+            String path = change.getPath();
+            if (change.getChangeKind() != FSPathChangeKind.FS_PATH_CHANGE_MODIFY) {
+                Long copyFromRevision = change.getCopyPath() != null ? new Long(change.getCopyRevision()) : null;
+                myNodeChangesTable.insert(new Object[] {path, revisionObject, String.valueOf(change.getType()),
+                        change.getCopyPath(), copyFromRevision});
+            }
+            for (String currentPath = path; paths.add(currentPath); currentPath = SVNPathUtil.removeTail(currentPath)) {
+                if ("/".equals(currentPath) || "".equals(currentPath)) {
+                    break;
+                }
+            }
+        }
+        for (Iterator iterator = paths.iterator(); iterator.hasNext();) {
+            String path = (String) iterator.next();
+            myPathRevisionsTable.insert(new Object[] {path, revisionObject});
+        }
+        myInfoTable.insertOr(SqlJetConflictAction.REPLACE, new Object[] {YOUNGEST_REVISION, revisionObject});
+    }
+
+    private void collectPathRevisions(String path, long start, long end, Collection revisions) throws SqlJetException {
+        ISqlJetCursor cursor = myPathRevisionsTable.scope(PATH_REVISIONS_INDEX,
+                new Object[] {path, new Long(start)}, new Object[] {path, new Long(end)});
+        try {
+            for (; !cursor.eof(); cursor.next()) {
+                revisions.add(new Long(cursor.getInteger("revision")));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Finds the youngest addition or replacement not younger than <code>revision</code> of
+     * <code>path</code> or one of its parents, a deeper path wins when both are changed
+     * in the same revision.
+     */
+    private NodeChange findBirth(String path, long revision) throws SqlJetException {
+        NodeChange birth = null;
+        for (String currentPath = path; !"/".equals(currentPath) && !"".equals(currentPath); currentPath = SVNPathUtil.removeTail(currentPath)) {
+            ISqlJetCursor cursor = myNodeChangesTable.scope(NODE_CHANGES_INDEX,
+                    new Object[] {currentPath, new Long(0)}, new Object[] {currentPath, new Long(revision)});
+            try {
+                cursor = cursor.reverse();
+                for (; !cursor.eof(); cursor.next()) {
+                    NodeChange change = new NodeChange(cursor);
+                    if (change.isAddition()) {
+                        if (birth == null || change.myRevision > birth.myRevision) {
+                            birth = change;
+                        }
+                        break;
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return birth;
+    }
+
+    private Object runReadTransaction(ISqlJetTransaction transaction) throws SVNException {
+        try {
+            return myDB.runReadTransaction(transaction);
+        } catch (SqlJetException e) {
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+        return null;
+    }
+
+    private Object runWriteTransaction(ISqlJetTransaction transaction) throws SVNException {
+        try {
+            return myDB.runWriteTransaction(transaction);
+        } catch (SqlJetException e) {
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+        return null;
+    }
+
+    private static void closeDB(SqlJetDb db) {
+        if (db != null) {
+            try {
+                db.close();
+            } catch (SqlJetException e) {
+                SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            }
+        }
+    }
+
+    private static SVNErrorMessage convertError(SqlJetException e) {
+        SVNErrorCode code = e.getErrorCode() == SqlJetErrorCode.READONLY ? SVNErrorCode.SQLITE_READONLY : SVNErrorCode.SQLITE_ERROR;
+        return SVNErrorMessage.create(code, e.getMessage());
+    }
+
+    private static class NodeChange {
+
+        private final String myPath;
+        private final long myRevision;
+        private final char myAction;
+        private final String myCopyFromPath;
+        private final long myCopyFromRevision;
+
+        public NodeChange(ISqlJetCursor cursor) throws SqlJetException {
+            myPath = cursor.getString("path");
+            myRevision = cursor.getInteger("revision");
+            myAction = cursor.getString("action").charAt(0);
+            myCopyFromPath = cursor.isNull("copyfrom_path") ? null : cursor.getString("copyfrom_path");
+            myCopyFromRevision = cursor.isNull("copyfrom_revision") ? SVNRepository.INVALID_REVISION : cursor.getInteger("copyfrom_revision");
+        }
+
+        public boolean isAddition() {
+            return myAction == SVNLogEntryPath.TYPE_ADDED || myAction == SVNLogEntryPath.TYPE_REPLACED;
+        }
+
+        public boolean isDeletion() {
+            return myAction == SVNLogEntryPath.TYPE_DELETED || myAction == SVNLogEntryPath.TYPE_REPLACED;
+        }
+    }
+}
@@ -35,6 +35,7 @@ import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
 import org.tmatesoft.svn.core.io.ISVNEditor;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
 
 /**
@@ -91,7 +92,7 @@ public class FSCommitEditor implements ISVNEditor {
         long youngestRev = myFSFS.getYoungestRevision();
 
         if (isTxnOwner) {
-            myTxn = FSTransactionRoot.beginTransactionForCommit(youngestRev, myRevProps, myFSFS);
+            myTxn = FSTransactionRoot.beginTransactionForCommit(youngestRev, myRevProps, myFSFS, true);
         } else {
             myFSFS.changeTransactionProperties(myTxn.getTxnId(), myRevProps);
         }
@@ -346,6 +347,7 @@ public class FSCommitEditor implements ISVNEditor {
     }
 
     public SVNCommitInfo closeEdit() throws SVNException {
+        boolean committed = false;
         try {
             if (myTxn == null) {
                 SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.REPOS_BAD_ARGS, "No valid transaction supplied to closeEdit()");
@@ -359,6 +361,7 @@ public class FSCommitEditor implements ISVNEditor {
             
             SVNErrorMessage[] errorMessage = new SVNErrorMessage[1];
             committedRev = myCommitter.commitTxn(true, true, errorMessage, null);
+            committed = true;
                 
             SVNProperties revProps = myFSFS.getRevisionProperties(committedRev);
             String dateProp = revProps.getStringValue(SVNRevisionProperty.DATE);
@@ -374,10 +377,27 @@ public class FSCommitEditor implements ISVNEditor {
             releaseLocks();
             return info;
         } finally {
+            if (!committed) {
+                abortInMemoryTransaction();
+            }
             myRepository.closeRepository();
         }
     }
 
+    private void abortInMemoryTransaction() {
+        // the files of an in-memory transaction are lost once its editor is gone
+        if (myTxn == null || !isTxnOwner || myFSFS.getTransactionStore(myTxn.getTxnId()) == null) {
+            return;
+        }
+        try {
+            FSCommitter.abortTransaction(myFSFS, myTxn.getTxnId());
+        } catch (SVNException e) {
+            SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+        }
+        myTxn = null;
+        myTxnRoot = null;
+    }
+
     private void releaseLocks() {
         releaseLocks(myPathsToLockTokens, false, true);
         final Map<String, String> autoUnlockPaths = myCommitter.getAutoUnlockPaths();
@@ -0,0 +1,289 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+
+/**
+ * Group commit of transactions of one {@link FSFS} instance.
+ *
+ * <p/>
+ * Committers queue their transactions and the first of them to find no other committer working
+ * becomes the leader: it takes the write lock once for up to the maximal batch size of queued
+ * transactions and writes their revisions in queue order, merging each transaction into the
+ * revision written before it. The revision files are synced (when commits are synced) and
+ * <code>db/current</code> is written once for the whole batch, so the batch becomes visible
+ * to readers and other processes at once. Transactions are purged only after that. A failure
+ * once a revision file is in place ends the batch, the transactions queued after it are left
+ * for the next batch. An unexpected failure fails every transaction of the batch whose revision
+ * did not become visible. Representations of the batch are added to <code>rep-cache.db</code> in
+ * one transaction. Revision numbers follow the queue order, hooks are run by the committers
+ * themselves as in the regular mode.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSCommitQueue {
+
+    private FSFS myFSFS;
+    private LinkedList<Request> myQueue;
+    private boolean myIsLeaderActive;
+
+    private long myBatchesCount;
+    private long myCommitsCount;
+    private int myMaxBatchSize;
+    private int myMaxQueueDepth;
+
+    public FSCommitQueue(FSFS fsfs) {
+        myFSFS = fsfs;
+        myQueue = new LinkedList<Request>();
+    }
+
+    /**
+     * Commits the transaction of <code>committer</code> which should already be merged with the youngest revision.
+     *
+     * @return the new revision
+     */
+    public long commit(FSCommitter committer, Collection<FSRepresentation> representations, StringBuffer conflictPath) throws SVNException {
+        Request request = new Request(committer, representations, conflictPath);
+        boolean isLeader = false;
+        synchronized (this) {
+            myQueue.add(request);
+            myMaxQueueDepth = Math.max(myMaxQueueDepth, myQueue.size());
+            boolean interrupted = false;
+            while (!request.myIsDone && myIsLeaderActive) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    if (myQueue.remove(request)) {
+                        Thread.currentThread().interrupt();
+                        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Commit cancelled while waiting in commit queue");
+                        SVNErrorManager.error(err, e, SVNLogType.FSFS);
+                    }
+                    // the transaction is being committed already, wait for the result
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (!request.myIsDone) {
+                myIsLeaderActive = true;
+                isLeader = true;
+            }
+        }
+        if (isLeader) {
+            try {
+                while (!request.myIsDone) {
+                    commitBatch();
+                }
+            } finally {
+                synchronized (this) {
+                    myIsLeaderActive = false;
+                    notifyAll();
+                }
+            }
+        }
+        if (request.myError != null) {
+            throw request.myError;
+        }
+        if (request.myRevision < 0) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Commit batch failed");
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        return request.myRevision;
+    }
+
+    public synchronized int getQueueDepth() {
+        return myQueue.size();
+    }
+
+    public synchronized int getMaxQueueDepth() {
+        return myMaxQueueDepth;
+    }
+
+    public synchronized long getBatchesCount() {
+        return myBatchesCount;
+    }
+
+    public synchronized long getCommitsCount() {
+        return myCommitsCount;
+    }
+
+    public synchronized int getMaxBatchSize() {
+        return myMaxBatchSize;
+    }
+
+    public synchronized double getAverageBatchSize() {
+        return myBatchesCount == 0 ? 0 : (double) myCommitsCount / myBatchesCount;
+    }
+
+    public synchronized void resetStatistics() {
+        myBatchesCount = 0;
+        myCommitsCount = 0;
+        myMaxBatchSize = 0;
+        myMaxQueueDepth = 0;
+    }
+
+    private void commitBatch() throws SVNException {
+        List<Request> batch = new ArrayList<Request>();
+        synchronized (this) {
+            int maxBatchSize = Math.max(1, FSFS.getDefaultGroupCommitMaxBatchSize());
+            while (!myQueue.isEmpty() && batch.size() < maxBatchSize) {
+                batch.add(myQueue.removeFirst());
+            }
+        }
+        List<Request> committed = new ArrayList<Request>();
+        List<Request> postponed = new ArrayList<Request>();
+        boolean isCurrentWritten = false;
+        Throwable failure = null;
+        FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(myFSFS);
+        try {
+            synchronized (writeLock) {
+                try {
+                    writeLock.lock();
+                    long youngestRevision = myFSFS.getYoungestRevision();
+                    Collection<File> filesToSync = FSFS.isDefaultSyncCommits() ? new ArrayList<File>() : null;
+                    for (Iterator<Request> requests = batch.iterator(); requests.hasNext();) {
+                        Request request = requests.next();
+                        try {
+                            if (request.myCommitter.getBaseRevision() != youngestRevision) {
+                                request.myCommitter.mergeWithRevision(youngestRevision, request.myConflictPath);
+                            }
+                            request.myRevision = request.myCommitter.commit(youngestRevision, request.myRepresentations, filesToSync);
+                            youngestRevision = request.myRevision;
+                            // lets the next transaction be merged with the revision not yet in 'current'
+                            myFSFS.setPendingYoungestRevision(youngestRevision);
+                            committed.add(request);
+                        } catch (SVNException e) {
+                            request.myError = e;
+                            if (request.myCommitter.isRevisionFileWritten()) {
+                                // the next request would be written as the same revision over this one
+                                while (requests.hasNext()) {
+                                    postponed.add(requests.next());
+                                    requests.remove();
+                                }
+                            }
+                        }
+                    }
+                    if (!committed.isEmpty()) {
+                        try {
+                            if (filesToSync != null) {
+                                for (Iterator<File> files = filesToSync.iterator(); files.hasNext();) {
+                                    FSFS.syncFile(files.next());
+                                }
+                            }
+                            myFSFS.writeCurrentFile(youngestRevision, filesToSync != null);
+                            myFSFS.setYoungestRevisionCache(youngestRevision);
+                            isCurrentWritten = true;
+                        } catch (SVNException e) {
+                            // transactions are kept, so that nothing is lost if the revisions did not become visible
+                            for (Iterator<Request> requests = committed.iterator(); requests.hasNext();) {
+                                requests.next().myError = e;
+                            }
+                            committed.clear();
+                        }
+                        for (Iterator<Request> requests = committed.iterator(); requests.hasNext();) {
+                            try {
+                                requests.next().myCommitter.purgeTxn();
+                            } catch (SVNException e) {
+                                // the revision is committed, a leftover transaction does no harm
+                                SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+                            }
+                        }
+                        myFSFS.updateRevisionTimesIndex();
+                    }
+                } finally {
+                    myFSFS.setPendingYoungestRevision(-1);
+                    writeLock.unlock();
+                    FSWriteLock.release(writeLock);
+                }
+            }
+            if (!committed.isEmpty() && myFSFS.getRepositoryCacheManager() != null) {
+                Collection<FSRepresentation> representations = new ArrayList<FSRepresentation>();
+                for (Iterator<Request> requests = committed.iterator(); requests.hasNext();) {
+                    Request request = requests.next();
+                    if (request.myRepresentations != null) {
+                        representations.addAll(request.myRepresentations);
+                    }
+                }
+                FSCommitter.insertRepresentations(myFSFS, representations);
+            }
+        } catch (SVNException e) {
+            for (Iterator<Request> requests = batch.iterator(); requests.hasNext();) {
+                Request request = requests.next();
+                if (request.myError == null && !committed.contains(request)) {
+                    request.myError = e;
+                }
+            }
+        } catch (RuntimeException e) {
+            // reported to every request below, the leader is one of them
+            failure = e;
+        } catch (Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            if (failure != null) {
+                if (!isCurrentWritten) {
+                    // revisions of the batch did not become visible
+                    committed.clear();
+                }
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Commit batch failed: {0}", failure);
+                for (Iterator<Request> requests = batch.iterator(); requests.hasNext();) {
+                    Request request = requests.next();
+                    if (request.myError == null && !committed.contains(request)) {
+                        request.myError = new SVNException(err, failure);
+                    }
+                }
+            }
+            synchronized (this) {
+                for (Iterator<Request> requests = batch.iterator(); requests.hasNext();) {
+                    requests.next().myIsDone = true;
+                }
+                myQueue.addAll(0, postponed);
+                myBatchesCount++;
+                myCommitsCount += committed.size();
+                myMaxBatchSize = Math.max(myMaxBatchSize, batch.size());
+                notifyAll();
+            }
+        }
+    }
+
+    private static class Request {
+
+        private FSCommitter myCommitter;
+        private Collection<FSRepresentation> myRepresentations;
+        private StringBuffer myConflictPath;
+        private long myRevision = -1;
+        private SVNException myError;
+        private boolean myIsDone;
+
+        public Request(FSCommitter committer, Collection<FSRepresentation> representations, StringBuffer conflictPath) {
+            myCommitter = committer;
+            myRepresentations = representations;
+            myConflictPath = conflictPath;
+        }
+    }
+}
@@ -61,6 +61,7 @@ public class FSCommitter {
     private Collection<String> myLockTokens;
     private Map<String, String> myAutoUnlockPaths;
     private String myAuthor;
+    private boolean myIsRevisionFileWritten;
     
     public static synchronized void setAutoUnlock(boolean autoUnlock) {
         ourAutoUnlock = autoUnlock;
@@ -276,7 +277,7 @@ public class FSCommitter {
         OutputStream changesFile = null;
         try {
             FSTransactionRoot txnRoot = getTxnRoot();
-            changesFile = SVNFileUtil.openFileForWriting(txnRoot.getTransactionChangesFile(), true);
+            changesFile = myFSFS.openTransactionFileForWriting(txnRoot.getTxnID(), "changes", true);
             FSPathChange pathChange = new FSPathChange(path, id, changeKind, textModified, propsModified, copyFromPath, copyFromRevision, kind);
             txnRoot.writeChangeEntry(changesFile, pathChange, true);
         } catch (IOException ioe) {
@@ -289,6 +290,10 @@ public class FSCommitter {
 
     public long commitTxn(boolean runPreCommitHook, boolean runPostCommitHook, SVNErrorMessage[] postCommitHookError, StringBuffer conflictPath) throws SVNException {
         if (myFSFS.isHooksEnabled() && runPreCommitHook) {
+            if (FSHooks.hasHook(myFSFS.getRepositoryRoot(), FSHooks.SVN_REPOS_HOOK_PRE_COMMIT)) {
+                // the hook reads the transaction from its directory
+                myFSFS.writeTransactionStoreFiles(myTxn.getTxnId());
+            }
             FSHooks.runPreCommitHook(myFSFS.getRepositoryRoot(), myTxn.getTxnId());
         }
 
@@ -296,49 +301,46 @@ public class FSCommitter {
 
         while (true) {
             long youngishRev = myFSFS.getYoungestRevision();
-            FSRevisionRoot youngishRoot = myFSFS.createRevisionRoot(youngishRev);
-
-            FSRevisionNode youngishRootNode = youngishRoot.getRevisionNode("/");
-
-            mergeChanges(myFSFS, getTxnRoot(), youngishRootNode, conflictPath);
-            myTxn.setBaseRevision(youngishRev);
+            mergeWithRevision(youngishRev, conflictPath);
 
-            FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(myFSFS);
             final Collection<FSRepresentation> representations = myFSFS.getRepositoryCacheManager() != null ?
                     new ArrayList<FSRepresentation>() : null;
-            synchronized (writeLock) {
-                try {
-                    writeLock.lock();
-                    newRevision = commit(representations);
-                } catch (SVNException svne) {
-                    if (svne.getErrorMessage().getErrorCode() == SVNErrorCode.FS_TXN_OUT_OF_DATE) {
-                        long youngestRev = myFSFS.getYoungestRevision();
-                        if (youngishRev == youngestRev) {
-                            throw svne;
+            final boolean groupCommit = myFSFS.isGroupCommitEnabled();
+            if (groupCommit) {
+                newRevision = myFSFS.getCommitQueue().commit(this, representations, conflictPath);
+            } else {
+                FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(myFSFS);
+                synchronized (writeLock) {
+                    try {
+                        writeLock.lock();
+                        newRevision = commit(myFSFS.getYoungestRevision(), representations, null);
+                        myFSFS.updateRevisionTimesIndex();
+                    } catch (SVNException svne) {
+                        if (svne.getErrorMessage().getErrorCode() == SVNErrorCode.FS_TXN_OUT_OF_DATE) {
+                            long youngestRev = myFSFS.getYoungestRevision();
+                            if (youngishRev == youngestRev) {
+                                throw svne;
+                            }
+                            continue;
                         }
-                        continue;
+                        throw svne;
+                    } finally {
+                        writeLock.unlock();
+                        FSWriteLock.release(writeLock);
                     }
-                    throw svne;
-                } finally {
-                    writeLock.unlock();
-                    FSWriteLock.release(writeLock);
                 }
             }
-            // write representations here.
-            if (representations != null && !representations.isEmpty()) {
-                if (myFSFS.getRepositoryCacheManager() != null) {
-                    try {
-                        myFSFS.getRepositoryCacheManager().runWriteTransaction(new IFSSqlJetTransaction() {
-                            public void run() throws SVNException {
-                                for (FSRepresentation fsRepresentation : representations) {
-                                    myFSFS.getRepositoryCacheManager().insert(fsRepresentation, false);
-                                }
-                            }
-                        });
-                    } catch (SVNException e) {
-                        // ignore
-                        SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
-                    }
+            // write representations here, the commit queue writes those of the whole batch.
+            if (!groupCommit) {
+                insertRepresentations(myFSFS, representations);
+            }
+            FSChangedPathsIndex changedPathsIndex = myFSFS.getChangedPathsIndex();
+            if (changedPathsIndex != null) {
+                try {
+                    changedPathsIndex.update(myFSFS, null);
+                } catch (SVNException e) {
+                    // index is optional and is brought up to date by the next commit
+                    SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
                 }
             }
             break;
@@ -479,9 +481,24 @@ public class FSCommitter {
         return id;
     }
 
-    private long commit(Collection<FSRepresentation> representations) throws SVNException {
-        long oldRev = myFSFS.getYoungestRevision();
+    long getBaseRevision() {
+        return myTxn.getBaseRevision();
+    }
 
+    void mergeWithRevision(long revision, StringBuffer conflictPath) throws SVNException {
+        FSRevisionRoot root = myFSFS.createRevisionRoot(revision);
+        FSRevisionNode rootNode = root.getRevisionNode("/");
+
+        mergeChanges(myFSFS, getTxnRoot(), rootNode, conflictPath);
+        myTxn.setBaseRevision(revision);
+    }
+
+    /**
+     * Writes the revision following <code>oldRev</code>, the caller should hold the write lock. When <code>filesToSync</code>
+     * is not <code>null</code> the written files are added to it, <code>db/current</code> and purging the transaction
+     * are left to the caller.
+     */
+    long commit(long oldRev, Collection<FSRepresentation> representations, Collection<File> filesToSync) throws SVNException {
         if (myTxn.getBaseRevision() != oldRev) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_TXN_OUT_OF_DATE, "Transaction out of date");
             SVNErrorManager.error(err, SVNLogType.FSFS);
@@ -504,6 +521,7 @@ public class FSCommitter {
         final OutputStream protoFileOS = null;
         final FSID newRootId = null;
         final FSTransactionRoot txnRoot = getTxnRoot();
+        File dstRevFile = null;
         FSWriteLock txnWriteLock = FSWriteLock.getWriteLockForTxn(myTxn.getTxnId(), myFSFS);
         synchronized (txnWriteLock) {
             try {
@@ -512,8 +530,9 @@ public class FSCommitter {
                 final File revisionPrototypeFile = txnRoot.getTransactionProtoRevFile();
                 final long offset = revisionPrototypeFile.length();
                 commit(startNodeId, startCopyId, newRevision, protoFileOS, newRootId, txnRoot, revisionPrototypeFile, offset, representations);
-                File dstRevFile = myFSFS.getNewRevisionFile(newRevision);
+                dstRevFile = myFSFS.getNewRevisionFile(newRevision);
                 SVNFileUtil.rename(revisionPrototypeFile, dstRevFile);
+                myIsRevisionFileWritten = true;
             } finally {
                txnWriteLock.unlock();
                FSWriteLock.release(txnWriteLock);
@@ -527,25 +546,52 @@ public class FSCommitter {
         }
 
         File txnPropsFile = myFSFS.getTransactionPropertiesFile(myTxn.getTxnId());
+        File dstRevPropsFile = null;
 
         if (myFSFS.getDBFormat() < FSFS.MIN_PACKED_REVPROP_FORMAT || newRevision >= myFSFS.getMinUnpackedRevProp()){
-            File dstRevPropsFile = myFSFS.getNewRevisionPropertiesFile(newRevision);
+            dstRevPropsFile = myFSFS.getNewRevisionPropertiesFile(newRevision);
             SVNFileUtil.rename(txnPropsFile, dstRevPropsFile);
         } else {
             // TODO pack property?
         }
 
-        try {
-            txnRoot.writeFinalCurrentFile(newRevision, startNodeId, startCopyId);
-        } catch (IOException ioe) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
-            SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
+        if (filesToSync != null) {
+            filesToSync.add(dstRevFile);
+            if (dstRevPropsFile != null) {
+                filesToSync.add(dstRevPropsFile);
+            }
+        } else {
+            boolean sync = FSFS.isDefaultSyncCommits();
+            if (sync) {
+                FSFS.syncFile(dstRevFile);
+                if (dstRevPropsFile != null) {
+                    FSFS.syncFile(dstRevPropsFile);
+                }
+            }
+            try {
+                txnRoot.writeFinalCurrentFile(newRevision, startNodeId, startCopyId, sync);
+            } catch (IOException ioe) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
+                SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
+            }
+            myFSFS.setYoungestRevisionCache(newRevision);
+            myFSFS.purgeTxn(myTxn.getTxnId());
         }
-        myFSFS.setYoungestRevisionCache(newRevision);
-        myFSFS.purgeTxn(myTxn.getTxnId());
         return newRevision;
     }
 
+    /**
+     * Tells whether {@link #commit(long, Collection, Collection)} has moved the revision file in place,
+     * after that a failure leaves the revision number taken until <code>db/current</code> is written.
+     */
+    boolean isRevisionFileWritten() {
+        return myIsRevisionFileWritten;
+    }
+
+    void purgeTxn() throws SVNException {
+        myFSFS.purgeTxn(myTxn.getTxnId());
+    }
+
     private void commit(String startNodeId, String startCopyId, long newRevision, OutputStream protoFileOS, FSID newRootId, FSTransactionRoot txnRoot, File revisionPrototypeFile, long offset,
             Collection<FSRepresentation> representations) throws SVNException {
         try {
@@ -772,7 +818,7 @@ public class FSCommitter {
                 public void handleUnlock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
                 }
             };
-            fsfs.walkDigestFiles(fsfs.getDigestFileFromRepositoryPath(path), handler, haveWriteLock);
+            fsfs.walkLocks(path, handler, haveWriteLock);
         } else {
             SVNLock lock = fsfs.getLockHelper(path, haveWriteLock);
             if (lock != null) {
@@ -807,6 +853,7 @@ public class FSCommitter {
     }
 
     public static void abortTransaction(FSFS fsfs, String txnId) throws SVNException {
+        fsfs.disposeTransactionStore(txnId);
         File txnDir = fsfs.getTransactionDir(txnId);
         SVNFileUtil.deleteAll(txnDir, true);
         if (txnDir.exists()) {
@@ -815,4 +862,15 @@ public class FSCommitter {
         }
     }
 
+    static void insertRepresentations(FSFS fsfs, Collection<FSRepresentation> representations) {
+        if (representations == null || representations.isEmpty() || fsfs.getRepositoryCacheManager() == null) {
+            return;
+        }
+        try {
+            fsfs.getRepositoryCacheManager().insert(representations, false);
+        } catch (SVNException e) {
+            // ignore
+            SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+        }
+    }
 }
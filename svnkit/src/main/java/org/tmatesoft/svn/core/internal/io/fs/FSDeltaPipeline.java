@@ -0,0 +1,306 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.util.SVNLogType;
+
+
+/**
+ * Computes svndiff windows of a representation and its digests on worker threads.
+ *
+ * <p/>
+ * Contents are cut into windows of {@link FSOutputStream#SVN_DELTA_WINDOW_SIZE} bytes. For every window
+ * the caller reads the matching view of the delta base, then the delta (and its compression)
+ * is computed by a worker while the caller keeps streaming. MD5 and SHA1 are updated by two more
+ * workers, each digest strictly in window order. Windows are written to the target stream
+ * in their order by the caller, at most a few windows per worker are kept in memory.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSDeltaPipeline {
+
+    private static ThreadPoolExecutor ourExecutor;
+
+    private OutputStream myTarget;
+    private InputStream mySource;
+    private boolean myIsCompress;
+    private long mySourceOffset;
+    private boolean myIsWindowWritten;
+    private int myMaxPendingWindows;
+
+    private byte[] myWindow;
+    private int myWindowLength;
+    private LinkedList<Future<byte[]>> myPendingWindows;
+    private DigestQueue myMD5Queue;
+    private DigestQueue mySHA1Queue;
+
+    public FSDeltaPipeline(OutputStream target, InputStream source, boolean compress, MessageDigest md5, MessageDigest sha1, int threads) {
+        myTarget = target;
+        mySource = source;
+        myIsCompress = compress;
+        myPendingWindows = new LinkedList<Future<byte[]>>();
+        myMaxPendingWindows = 2 * Math.max(1, threads);
+        myMD5Queue = new DigestQueue(md5, myMaxPendingWindows);
+        mySHA1Queue = new DigestQueue(sha1, myMaxPendingWindows);
+    }
+
+    public void write(byte[] b, int off, int len) throws SVNException {
+        while (len > 0) {
+            if (myWindow == null) {
+                myWindow = new byte[FSOutputStream.SVN_DELTA_WINDOW_SIZE];
+                myWindowLength = 0;
+            }
+            int toCopy = Math.min(len, myWindow.length - myWindowLength);
+            System.arraycopy(b, off, myWindow, myWindowLength, toCopy);
+            myWindowLength += toCopy;
+            off += toCopy;
+            len -= toCopy;
+            if (myWindowLength == myWindow.length) {
+                submitWindow();
+            }
+        }
+    }
+
+    /**
+     * Writes all remaining windows and waits for the digests to be complete.
+     */
+    public void finish() throws SVNException {
+        if (myWindow != null && myWindowLength > 0) {
+            submitWindow();
+        }
+        while (!myPendingWindows.isEmpty()) {
+            writePendingWindow();
+        }
+        if (!myIsWindowWritten) {
+            writeWindow(SVNDiffWindow.EMPTY, true);
+        }
+        myMD5Queue.await();
+        mySHA1Queue.await();
+    }
+
+    /**
+     * Cancels computations which results are not written yet.
+     */
+    public void abort() {
+        while (!myPendingWindows.isEmpty()) {
+            myPendingWindows.removeFirst().cancel(false);
+        }
+        myMD5Queue.cancel();
+        mySHA1Queue.cancel();
+    }
+
+    private void submitWindow() throws SVNException {
+        final byte[] target = myWindow;
+        final int targetLength = myWindowLength;
+        myWindow = null;
+        myWindowLength = 0;
+
+        final byte[] source = new byte[FSOutputStream.SVN_DELTA_WINDOW_SIZE];
+        int sourceLength = 0;
+        try {
+            sourceLength = SVNFileUtil.readIntoBuffer(mySource, source, 0, source.length);
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        }
+        final int sourceViewLength = Math.max(0, sourceLength);
+        final long sourceOffset = mySourceOffset;
+        final boolean writeHeader = !myIsWindowWritten && myPendingWindows.isEmpty();
+        mySourceOffset += sourceViewLength;
+
+        myMD5Queue.add(target, targetLength);
+        mySHA1Queue.add(target, targetLength);
+        if (myPendingWindows.size() >= myMaxPendingWindows) {
+            writePendingWindow();
+        }
+        myPendingWindows.add(getExecutor().submit(new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                final ByteArrayOutputStream window = new ByteArrayOutputStream(targetLength / 2);
+                new SVNDeltaGenerator(FSOutputStream.SVN_DELTA_WINDOW_SIZE).sendDelta(null, source, sourceViewLength, sourceOffset, target, targetLength, new ISVNDeltaConsumer() {
+                    public void applyTextDelta(String path, String baseChecksum) {
+                    }
+
+                    public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+                        try {
+                            diffWindow.writeTo(window, writeHeader, myIsCompress);
+                        } catch (IOException e) {
+                            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+                            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+                        }
+                        return SVNFileUtil.DUMMY_OUT;
+                    }
+
+                    public void textDeltaEnd(String path) {
+                    }
+                });
+                return window.toByteArray();
+            }
+        }));
+    }
+
+    private void writePendingWindow() throws SVNException {
+        Future<byte[]> future = myPendingWindows.removeFirst();
+        byte[] window = null;
+        try {
+            window = future.get();
+        } catch (InterruptedException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Delta computation interrupted");
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SVNException) {
+                throw (SVNException) e.getCause();
+            }
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Delta computation failed: {0}", e.getCause());
+            SVNErrorManager.error(err, e.getCause(), SVNLogType.FSFS);
+        }
+        try {
+            myTarget.write(window);
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        }
+        myIsWindowWritten = true;
+    }
+
+    private void writeWindow(SVNDiffWindow window, boolean writeHeader) throws SVNException {
+        try {
+            window.writeTo(myTarget, writeHeader, myIsCompress);
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        }
+        myIsWindowWritten = true;
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        int threads = Math.max(1, FSFS.getDefaultDeltaThreads());
+        if (ourExecutor == null) {
+            ourExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
+            ourExecutor.allowCoreThreadTimeOut(true);
+        } else if (ourExecutor.getMaximumPoolSize() != threads) {
+            if (threads > ourExecutor.getMaximumPoolSize()) {
+                ourExecutor.setMaximumPoolSize(threads);
+                ourExecutor.setCorePoolSize(threads);
+            } else {
+                ourExecutor.setCorePoolSize(threads);
+                ourExecutor.setMaximumPoolSize(threads);
+            }
+        }
+        return ourExecutor;
+    }
+
+    /**
+     * Feeds windows into a digest in their order, using at most one worker at a time.
+     */
+    private static class DigestQueue implements Runnable {
+
+        private MessageDigest myDigest;
+        private int myMaxSize;
+        private LinkedList<byte[]> myWindows;
+        private LinkedList<Integer> myLengths;
+        private boolean myIsScheduled;
+        private boolean myIsCancelled;
+
+        public DigestQueue(MessageDigest digest, int maxSize) {
+            myDigest = digest;
+            myMaxSize = maxSize;
+            myWindows = new LinkedList<byte[]>();
+            myLengths = new LinkedList<Integer>();
+        }
+
+        public synchronized void add(byte[] window, int length) throws SVNException {
+            while (myWindows.size() >= myMaxSize) {
+                waitForWorker();
+            }
+            myWindows.add(window);
+            myLengths.add(Integer.valueOf(length));
+            if (!myIsScheduled) {
+                myIsScheduled = true;
+                getExecutor().execute(this);
+            }
+        }
+
+        public synchronized void await() throws SVNException {
+            while (myIsScheduled) {
+                waitForWorker();
+            }
+        }
+
+        public synchronized void cancel() {
+            myIsCancelled = true;
+            myWindows.clear();
+            myLengths.clear();
+        }
+
+        public void run() {
+            while (true) {
+                byte[] window;
+                int length;
+                synchronized (this) {
+                    if (myWindows.isEmpty() || myIsCancelled) {
+                        myIsScheduled = false;
+                        notifyAll();
+                        return;
+                    }
+                    window = myWindows.removeFirst();
+                    length = myLengths.removeFirst().intValue();
+                    notifyAll();
+                }
+                myDigest.update(window, 0, length);
+            }
+        }
+
+        private void waitForWorker() throws SVNException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Digest computation interrupted");
+                SVNErrorManager.error(err, e, SVNLogType.FSFS);
+            }
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger myThreadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "svnkit-fs-delta-thread-" + myThreadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLock;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNWCProperties;
+import org.tmatesoft.svn.core.io.ISVNLockHandler;
+import org.tmatesoft.svn.util.SVNLogType;
+
+
+/**
+ * Lock store compatible with native Subversion: every lock and every directory containing
+ * locks is represented by a hash file in <code>db/locks</code> named by the MD5 digest of its path.
+ * Directory files list digests of their children, so walking the locks of a directory reads
+ * one file per lock and per intermediate directory.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSDigestLockStore implements IFSLockStore {
+
+    private FSFS myFSFS;
+
+    public FSDigestLockStore(FSFS fsfs) {
+        myFSFS = fsfs;
+    }
+
+    public SVNLock getLock(String repositoryPath) throws SVNException {
+        return fetchLockFromDigestFile(null, repositoryPath, null);
+    }
+
+    public void setLock(SVNLock lock, boolean isDAVComment) throws SVNException {
+        if (lock == null) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "FATAL error: attempted to set a null lock");
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        String lastChild = "";
+        String path = lock.getPath();
+        Collection children = new ArrayList();
+        while (true) {
+            String digestFileName = myFSFS.getDigestFromRepositoryPath(path);
+            SVNLock fetchedLock = fetchLockFromDigestFile(null, path, children);
+
+            if (lock != null) {
+                fetchedLock = lock;
+                lock = null;
+                lastChild = digestFileName;
+            } else {
+                if (!children.isEmpty() && children.contains(lastChild)) {
+                    break;
+                }
+                children.add(lastChild);
+            }
+
+            writeDigestLockFile(fetchedLock, children, path, isDAVComment);
+
+            if ("/".equals(path)) {
+                break;
+            }
+            path = SVNPathUtil.removeTail(path);
+
+            if ("".equals(path)) {
+                path = "/";
+            }
+            children.clear();
+        }
+    }
+
+    public void deleteLock(SVNLock lock) throws SVNException {
+        String reposPath = lock.getPath();
+        String childToKill = null;
+        Collection<String> children = new ArrayList<String>();
+        while (true) {
+            fetchLockFromDigestFile(null, reposPath, children);
+            if (childToKill != null) {
+                children.remove(childToKill);
+            }
+
+            if (children.size() == 0) {
+                childToKill = myFSFS.getDigestFromRepositoryPath(reposPath);
+                File digestFile = myFSFS.getDigestFileFromRepositoryPath(reposPath);
+                SVNFileUtil.deleteFile(digestFile);
+            } else {
+                writeDigestLockFile(null, children, reposPath, false);
+                childToKill = null;
+            }
+
+            if ("/".equals(reposPath)) {
+                break;
+            }
+
+            reposPath = SVNPathUtil.removeTail(reposPath);
+
+            if ("".equals(reposPath)) {
+                reposPath = "/";
+            }
+            children.clear();
+        }
+    }
+
+    public void walkLocks(String repositoryPath, ISVNLockHandler handler) throws SVNException {
+        walkDigestFiles(myFSFS.getDigestFileFromRepositoryPath(repositoryPath), handler);
+    }
+
+    public void close() throws SVNException {
+    }
+
+    private void walkDigestFiles(File digestFile, ISVNLockHandler handler) throws SVNException {
+        Collection children = new LinkedList();
+        SVNLock lock = fetchLockFromDigestFile(digestFile, null, children);
+
+        if (lock != null) {
+            handler.handleLock(lock.getPath(), lock, null);
+        }
+
+        for (Iterator entries = children.iterator(); entries.hasNext();) {
+            String digestName = (String) entries.next();
+            File parent = new File(myFSFS.getDBLocksDir(), digestName.substring(0, FSFS.DIGEST_SUBDIR_LEN));
+            File childDigestFile = new File(parent, digestName);
+            walkDigestFiles(childDigestFile, handler);
+        }
+    }
+
+    private SVNLock fetchLockFromDigestFile(File digestFile, String repositoryPath, Collection children) throws SVNException {
+        File digestLockFile = digestFile == null ? myFSFS.getDigestFileFromRepositoryPath(repositoryPath) : digestFile;
+        SVNProperties lockProps = null;
+
+        if (digestLockFile.exists()) {
+            FSFile reader = new FSFile(digestLockFile);
+            try {
+                lockProps = reader.readProperties(false, true);
+            } catch (SVNException svne) {
+                SVNErrorMessage err = svne.getErrorMessage().wrap("Can't parse lock/entries hashfile ''{0}''", digestLockFile);
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            } finally {
+                reader.close();
+            }
+        } else {
+            lockProps = new SVNProperties();
+        }
+
+        SVNLock lock = null;
+        String lockPath = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.PATH_LOCK_KEY));
+        if (lockPath != null) {
+            String lockToken = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.TOKEN_LOCK_KEY));
+            if (lockToken == null) {
+                SVNErrorManager.error(FSErrors.errorCorruptLockFile(lockPath, myFSFS), SVNLogType.FSFS);
+            }
+            String lockOwner = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.OWNER_LOCK_KEY));
+            if (lockOwner == null) {
+                SVNErrorManager.error(FSErrors.errorCorruptLockFile(lockPath, myFSFS), SVNLogType.FSFS);
+            }
+            String davComment = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.IS_DAV_COMMENT_LOCK_KEY));
+            if (davComment == null) {
+                SVNErrorManager.error(FSErrors.errorCorruptLockFile(lockPath, myFSFS), SVNLogType.FSFS);
+            }
+            String creationTime = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.CREATION_DATE_LOCK_KEY));
+            if (creationTime == null) {
+                SVNErrorManager.error(FSErrors.errorCorruptLockFile(lockPath, myFSFS), SVNLogType.FSFS);
+            }
+            Date creationDate = SVNDate.parseDateString(creationTime);
+            String expirationTime = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.EXPIRATION_DATE_LOCK_KEY));
+            Date expirationDate = null;
+            if (expirationTime != null) {
+                expirationDate = SVNDate.parseDateString(expirationTime);
+            }
+            String comment = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.COMMENT_LOCK_KEY));
+            lock = new FSLock(lockPath, lockToken, lockOwner, comment, creationDate, expirationDate, "1".equals(davComment));
+        }
+
+        String childEntries = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.CHILDREN_LOCK_KEY));
+        if (children != null && childEntries != null) {
+            String[] digests = childEntries.split("\n");
+            for (int i = 0; i < digests.length; i++) {
+                children.add(digests[i]);
+            }
+        }
+        return lock;
+    }
+
+    private void writeDigestLockFile(SVNLock lock, Collection children, String repositoryPath, boolean isDAVComment) throws SVNException {
+        if (!ensureDirExists(myFSFS.getDBLocksDir())) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN,
+                    "Can''t create a directory at ''{0}''", myFSFS.getDBLocksDir());
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+
+        File digestLockFile = myFSFS.getDigestFileFromRepositoryPath(repositoryPath);
+        String digest = myFSFS.getDigestFromRepositoryPath(repositoryPath);
+        File lockDigestSubdir = new File(myFSFS.getDBLocksDir(), digest.substring(0, FSFS.DIGEST_SUBDIR_LEN));
+
+        if (!ensureDirExists(lockDigestSubdir)) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Can't create a directory at ''{0}''", lockDigestSubdir);
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+
+        SVNProperties props = new SVNProperties();
+
+        if (lock != null) {
+            props.put(FSFS.PATH_LOCK_KEY, lock.getPath());
+            props.put(FSFS.OWNER_LOCK_KEY, lock.getOwner());
+            props.put(FSFS.TOKEN_LOCK_KEY, lock.getID());
+            String isDAVCommentValue = isDAVComment ? "1" : "0";
+            props.put(FSFS.IS_DAV_COMMENT_LOCK_KEY, isDAVCommentValue);
+            if (lock.getComment() != null) {
+                props.put(FSFS.COMMENT_LOCK_KEY, lock.getComment());
+            }
+            if (lock.getCreationDate() != null) {
+                props.put(FSFS.CREATION_DATE_LOCK_KEY, SVNDate.formatDate(lock.getCreationDate()));
+            }
+            if (lock.getExpirationDate() != null) {
+                props.put(FSFS.EXPIRATION_DATE_LOCK_KEY, SVNDate.formatDate(lock.getExpirationDate()));
+            }
+        }
+        if (children != null && children.size() > 0) {
+            Object[] digests = children.toArray();
+            StringBuffer value = new StringBuffer();
+            for (int i = 0; i < digests.length; i++) {
+                value.append(digests[i]);
+                value.append('\n');
+            }
+            props.put(FSFS.CHILDREN_LOCK_KEY, value.toString());
+        }
+        try {
+            SVNWCProperties.setProperties(props, digestLockFile, SVNFileUtil.createUniqueFile(digestLockFile.getParentFile(), digestLockFile.getName(), ".tmp", false), SVNWCProperties.SVN_HASH_TERMINATOR);
+        } catch (SVNException svne) {
+            SVNErrorMessage err = svne.getErrorMessage().wrap("Cannot write lock/entries hashfile ''{0}''", digestLockFile);
+            SVNErrorManager.error(err, svne, SVNLogType.FSFS);
+        }
+    }
+
+    private static boolean ensureDirExists(File dir) {
+        if (!dir.exists()) {
+            return dir.mkdirs();
+        }
+        return true;
+    }
+}
@@ -15,15 +15,19 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
+import org.tmatesoft.svn.core.ISVNCanceller;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
@@ -54,9 +58,14 @@ import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
 import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
 
 /**
+ * Once opened, an instance may be shared by concurrent sessions reading the repository,
+ * see {@link FSFSRegistry}. Writers are serialized by {@link FSWriteLock} as before. Shared
+ * caches only hold data of committed revisions, node-revisions are handed out as copies.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
@@ -72,6 +81,7 @@ public class FSFS {
     public static final String FS_TYPE_FILE = "fs-type";
     public static final String TXN_CURRENT_FILE = "txn-current";
     public static final String MIN_UNPACKED_REV_FILE = "min-unpacked-rev";
+    public static final String REVPROP_GENERATION_FILE = "revprop-generation";
     public static final String TXN_CURRENT_LOCK_FILE = "txn-current-lock";
     public static final String REVISION_PROPERTIES_DIR = "revprops";
     public static final String WRITE_LOCK_FILE = "write-lock";
@@ -88,9 +98,17 @@ public class FSFS {
     public static final String PACK_KIND_MANIFEST = "manifest";
     public static final String ENABLE_REP_SHARING_OPTION = "enable-rep-sharing";
     public static final String REP_SHARING_SECTION = "rep-sharing";
+    public static final String LOCKS_SECTION = "locks";
+    public static final String LOCK_STORE_OPTION = "lock-store";
+    public static final String LOCK_STORE_DIGEST = "digest";
+    public static final String LOCK_STORE_SQLITE = "sqlite";
     public static final String PACKED_REVPROPS_SECTION = "packed-revprops";
     public static final String COMPRESS_PACKED_REVPROPS_OPTION = "compress-packed-revprops";
     public static final String REVPROP_PACK_SIZE_OPTION = "revprop-pack-size";
+    public static final String DELTIFICATION_SECTION = "deltification";
+    public static final String MAX_DELTIFICATION_WALK_OPTION = "max-deltification-walk";
+    public static final String MAX_LINEAR_DELTIFICATION_OPTION = "max-linear-deltification";
+    public static final String FULLTEXT_INTERVAL_OPTION = "fulltext-interval";
 
     public static final String PATH_CONFIG = "fsfs.conf";
     public static final String TXN_PATH_EXT = ".txn";
@@ -129,9 +147,33 @@ public class FSFS {
     public static final int MIN_KIND_IN_CHANGED_FORMAT = 4;
     public static final int MIN_PACKED_REVPROP_SQLITE_DEV_FORMAT = 5;
     public static final int MIN_PACKED_REVPROP_FORMAT = 6;
+    public static final int MIN_LOG_ADDRESSING_FORMAT = 7;
+    public static final int MAX_READABLE_DB_FORMAT = 7;
+    public static final long ITEM_INDEX_CHANGES = 1;
+    public static final long ITEM_INDEX_ROOT_NODE = 2;
 
     //TODO: we should be able to change this via some option
     private static long DEFAULT_MAX_FILES_PER_DIRECTORY = 1000;
+    private static int DEFAULT_REVISION_NODES_CACHE_SIZE = Integer.parseInt(System.getProperty("svnkit.fs.revisionNodesCacheSize", "10000"));
+    private static long DEFAULT_DIR_CONTENTS_CACHE_SIZE = Long.parseLong(System.getProperty("svnkit.fs.dirContentsCacheSize", String.valueOf(16 * 1024 * 1024)));
+    private static long DEFAULT_PACK_MANIFESTS_CACHE_SIZE = Long.parseLong(System.getProperty("svnkit.fs.packManifestsCacheSize", String.valueOf(16 * 1024 * 1024)));
+    private static long DEFAULT_ITEM_INDEXES_CACHE_SIZE = Long.parseLong(System.getProperty("svnkit.fs.itemIndexesCacheSize", String.valueOf(16 * 1024 * 1024)));
+    private static long DEFAULT_MAPPED_FILE_THRESHOLD = Long.parseLong(System.getProperty("svnkit.fs.mappedFileThreshold", "0"));
+    private static int DEFAULT_MAPPED_FILES_CACHE_SIZE = Integer.parseInt(System.getProperty("svnkit.fs.mappedFilesCacheSize", "64"));
+    private static int DEFAULT_MAX_IDLE_FILE_HANDLES = Integer.parseInt(System.getProperty("svnkit.fs.maxIdleFileHandles", "0"));
+    private static long DEFAULT_FILE_HANDLE_IDLE_TIMEOUT = Long.parseLong(System.getProperty("svnkit.fs.fileHandleIdleTimeout", "10000"));
+    private static int DEFAULT_REVISION_PROPERTIES_CACHE_SIZE = Integer.parseInt(System.getProperty("svnkit.fs.revisionPropertiesCacheSize", "10000"));
+    private static long DEFAULT_FULLTEXT_CACHE_SIZE = Long.parseLong(System.getProperty("svnkit.fs.fulltextCacheSize", "0"));
+    private static boolean DEFAULT_FULLTEXT_CACHE_OFF_HEAP = Boolean.valueOf(System.getProperty("svnkit.fs.fulltextCacheOffHeap", "false")).booleanValue();
+    private static boolean DEFAULT_GROUP_COMMIT = Boolean.valueOf(System.getProperty("svnkit.fs.groupCommit", "false")).booleanValue();
+    private static int DEFAULT_GROUP_COMMIT_MAX_BATCH_SIZE = Integer.parseInt(System.getProperty("svnkit.fs.groupCommitMaxBatchSize", "32"));
+    private static boolean DEFAULT_SYNC_COMMITS = Boolean.valueOf(System.getProperty("svnkit.fs.syncCommits", "false")).booleanValue();
+    private static boolean DEFAULT_IN_MEMORY_TRANSACTIONS = Boolean.valueOf(System.getProperty("svnkit.fs.inMemoryTransactions", "false")).booleanValue();
+    private static long DEFAULT_TRANSACTION_SPILL_THRESHOLD = Long.parseLong(System.getProperty("svnkit.fs.transactionSpillThreshold", String.valueOf(16 * 1024 * 1024)));
+    private static long DEFAULT_TRANSACTION_STORE_TIMEOUT = Long.parseLong(System.getProperty("svnkit.fs.transactionStoreTimeout", String.valueOf(60 * 60 * 1000)));
+    private static int DEFAULT_DELTA_THREADS = Integer.parseInt(System.getProperty("svnkit.fs.deltaThreads", "0"));
+    private static boolean DEFAULT_REP_CACHE_FILTER = Boolean.valueOf(System.getProperty("svnkit.fs.repCacheFilter", "false")).booleanValue();
+    private static int DEFAULT_PACK_THREADS = Integer.parseInt(System.getProperty("svnkit.fs.packThreads", "1"));
     private static final String DB_TYPE = "fsfs";
 
     public static final String REVISION_PROPERTIES_DB = "revprops.db";
@@ -164,19 +206,76 @@ public class FSFS {
     private File myMinUnpackedRevFile;
     private File myRepositoryCacheFile;
     private long myMaxFilesPerDirectory;
-    private long myYoungestRevisionCache;
-    private long myMinUnpackedRevision;
+    private boolean myIsLogicalAddressing;
+    private volatile long myYoungestRevisionCache;
+    private volatile long myPendingYoungestRevision = -1;
+    private volatile long myMinUnpackedRevision;
     private SVNConfigFile myConfig;
     private IFSRepresentationCacheManager myReposCacheManager;
-    private long myMinUnpackedRevProp;
+    private FSChangedPathsIndex myChangedPathsIndex;
+    private boolean myIsChangedPathsIndexOpened;
+    private volatile FSRevisionTimesIndex myRevisionTimesIndex;
+    private FSSqlJetLockStore mySqlJetLockStore;
+    private FSCommitQueue myCommitQueue;
+    private Map<String, FSTransactionStore> myTransactionStores = new SVNHashMap();
+    private volatile long myMinUnpackedRevProp;
     
     private boolean myIsHooksEnabled;
     private boolean myCompressPackedRevprops;
     private long myRevpropPackSize;
+    private long myMaxDeltificationWalk = -1;
+    private long myMaxLinearDeltification;
+    private long myFulltextInterval;
+
+    private FSCache<FSID, FSRevisionNode> myRevisionNodesCache;
+    private FSCache<String, FSRevisionNode> myRevisionNodesByPathCache;
+    private FSCache<String, Map> myDirContentsCache;
+    private FSCache<String, ByteBuffer> myFulltextCache;
+    private FSCache<Long, long[]> myPackManifestsCache;
+    private FSCache<File, FSL2PIndex> myItemIndexesCache;
+    private FSCache<File, ByteBuffer> myMappedFilesCache;
+    private long myMappedFileThreshold;
+    private FSFileHandlePool myFileHandlePool;
+    private FSCache<Long, SVNProperties> myRevisionPropertiesCache;
+    private File myRevPropGenerationFile;
+    private long myRevPropGeneration = -1;
+    private long myRevPropGenerationTimestamp;
+    private long myRevPropGenerationLength;
+    private long myRevPropGenerationReadTime;
+    private boolean myIsFulltextCacheOffHeap;
 
     public FSFS(File repositoryRoot) {
         myRepositoryRoot = repositoryRoot;
         myMaxFilesPerDirectory = 0;
+        myRevisionNodesCache = new FSCache<FSID, FSRevisionNode>(DEFAULT_REVISION_NODES_CACHE_SIZE);
+        myRevisionNodesByPathCache = new FSCache<String, FSRevisionNode>(DEFAULT_REVISION_NODES_CACHE_SIZE);
+        myDirContentsCache = new FSCache<String, Map>(DEFAULT_DIR_CONTENTS_CACHE_SIZE) {
+            protected long getWeight(String key, Map entries) {
+                return getDirContentsWeight(entries);
+            }
+        };
+        myFulltextCache = new FSCache<String, ByteBuffer>(DEFAULT_FULLTEXT_CACHE_SIZE) {
+            protected long getWeight(String key, ByteBuffer fulltext) {
+                return 64 + 2 * key.length() + fulltext.capacity();
+            }
+        };
+        myIsFulltextCacheOffHeap = DEFAULT_FULLTEXT_CACHE_OFF_HEAP;
+        myMappedFilesCache = new FSCache<File, ByteBuffer>(DEFAULT_MAPPED_FILES_CACHE_SIZE);
+        myMappedFileThreshold = DEFAULT_MAPPED_FILE_THRESHOLD;
+        myRevisionPropertiesCache = new FSCache<Long, SVNProperties>(DEFAULT_REVISION_PROPERTIES_CACHE_SIZE);
+        if (DEFAULT_MAX_IDLE_FILE_HANDLES > 0) {
+            myFileHandlePool = new FSFileHandlePool(DEFAULT_MAX_IDLE_FILE_HANDLES, DEFAULT_FILE_HANDLE_IDLE_TIMEOUT);
+        }
+        myPackManifestsCache = new FSCache<Long, long[]>(DEFAULT_PACK_MANIFESTS_CACHE_SIZE) {
+            protected long getWeight(Long shard, long[] manifest) {
+                return 64 + 8 * manifest.length;
+            }
+        };
+        myItemIndexesCache = new FSCache<File, FSL2PIndex>(DEFAULT_ITEM_INDEXES_CACHE_SIZE) {
+            protected long getWeight(File file, FSL2PIndex index) {
+                return index.getWeight();
+            }
+        };
         setHooksEnabled(true);
     }
     
@@ -196,6 +295,10 @@ public class FSFS {
         return myMaxFilesPerDirectory;
     }
 
+    public boolean isLogicalAddressing() {
+        return myIsLogicalAddressing;
+    }
+
     public int getReposFormat() {
         return myReposFormat;
     }
@@ -205,11 +308,20 @@ public class FSFS {
         openDB();
     }
 
-    public void close() throws SVNException {
+    public synchronized void close() throws SVNException {
         if (myReposCacheManager != null) {
             myReposCacheManager.close();
             myReposCacheManager = null;
         }
+        if (myChangedPathsIndex != null) {
+            myChangedPathsIndex.close();
+            myChangedPathsIndex = null;
+        }
+        myIsChangedPathsIndexOpened = false;
+        closeSqlJetLockStore();
+        if (myFileHandlePool != null) {
+            myFileHandlePool.closeIdleHandles();
+        }
     }
 
     public void openForRecovery() throws SVNException {
@@ -277,6 +389,9 @@ public class FSFS {
         if (config != null) {
             String optionValue = config.getPropertyValue(REP_SHARING_SECTION, ENABLE_REP_SHARING_OPTION);
             isRepSharingAllowed = DefaultSVNOptions.getBooleanValue(optionValue, true);
+            myMaxDeltificationWalk = getLongOption(config, DELTIFICATION_SECTION, MAX_DELTIFICATION_WALK_OPTION, -1);
+            myMaxLinearDeltification = getLongOption(config, DELTIFICATION_SECTION, MAX_LINEAR_DELTIFICATION_OPTION, 0);
+            myFulltextInterval = getLongOption(config, DELTIFICATION_SECTION, FULLTEXT_INTERVAL_OPTION, 0);
         }
 
         if (myDBFormat >= MIN_REP_SHARING_FORMAT && isRepSharingAllowed) {
@@ -470,6 +585,32 @@ public class FSFS {
         return myRepositoryCacheFile;
     }
 
+    public File getChangedPathsIndexFile() {
+        return new File(getDBRoot(), FSChangedPathsIndex.CHANGED_PATHS_INDEX_DB);
+    }
+
+    /**
+     * @return the changed paths index of this repository or <code>null</code> if there is none
+     */
+    public synchronized FSChangedPathsIndex getChangedPathsIndex() {
+        if (!myIsChangedPathsIndexOpened) {
+            myChangedPathsIndex = FSChangedPathsIndex.open(this);
+            myIsChangedPathsIndexOpened = true;
+        }
+        return myChangedPathsIndex;
+    }
+
+    /**
+     * Returns the changed paths index if it covers all revisions up to <code>revision</code>.
+     */
+    public FSChangedPathsIndex getChangedPathsIndex(long revision) throws SVNException {
+        FSChangedPathsIndex index = getChangedPathsIndex();
+        if (index != null && index.getYoungestRevision() >= revision) {
+            return index;
+        }
+        return null;
+    }
+
     public File getDBLogsLockFile() throws SVNException {
         File lockFile = new File(getDBRoot(), LOCKS_DIR + "/" + DB_LOGS_LOCK_FILE);
         if (!lockFile.exists()) {
@@ -485,6 +626,7 @@ public class FSFS {
 
     public long getDatedRevision(Date date) throws SVNException {
         long latest = getYoungestRevision();
+        FSRevisionTimesIndex timesIndex = getRevisionTimesIndex(latest);
         long top = latest;
         long bottom = 0;
         long middle;
@@ -492,12 +634,12 @@ public class FSFS {
 
         while (bottom <= top) {
             middle = (top + bottom) / 2;
-            currentTime = getRevisionTime(middle);
+            currentTime = getRevisionTime(timesIndex, middle);
             if (currentTime.compareTo(date) > 0) {
                 if ((middle - 1) < 0) {
                     return 0;
                 }
-                Date prevTime = getRevisionTime(middle - 1);
+                Date prevTime = getRevisionTime(timesIndex, middle - 1);
                 if (prevTime.compareTo(date) < 0) {
                     return middle - 1;
                 }
@@ -506,7 +648,7 @@ public class FSFS {
                 if ((middle + 1) > latest) {
                     return latest;
                 }
-                Date nextTime = getRevisionTime(middle + 1);
+                Date nextTime = getRevisionTime(timesIndex, middle + 1);
                 if (nextTime.compareTo(date) > 0) {
                     return middle;
                 }
@@ -519,36 +661,103 @@ public class FSFS {
 
     }
 
+    public File getLocksDBFile() {
+        return new File(getDBRoot(), FSSqlJetLockStore.LOCKS_DB);
+    }
+
+    public File getRevisionTimesIndexFile() {
+        return new File(getDBRoot(), FSRevisionTimesIndex.REVISION_TIMES_INDEX_FILE);
+    }
+
+    /**
+     * Returns the revision times index if the repository has one that covers all revisions
+     * up to <code>revision</code>. The index is kept in memory until the file changes.
+     */
+    protected FSRevisionTimesIndex getRevisionTimesIndex(long revision) throws SVNException {
+        File indexFile = getRevisionTimesIndexFile();
+        if (!indexFile.isFile()) {
+            myRevisionTimesIndex = null;
+            return null;
+        }
+        // read before the index, so that a change made while loading is noticed next time
+        long generation = getRevPropGeneration();
+        FSRevisionTimesIndex index = myRevisionTimesIndex;
+        if (index == null || !index.isUpToDate(indexFile, generation)) {
+            index = FSRevisionTimesIndex.load(indexFile, generation);
+            myRevisionTimesIndex = index;
+        }
+        return index.getRevisionCount() > revision ? index : null;
+    }
+
+    /**
+     * Creates or rewrites the revision times index, from now on it is maintained by commits
+     * and revision property changes.
+     */
+    public void buildRevisionTimesIndex(ISVNCanceller canceller) throws SVNException {
+        FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(this);
+        synchronized (writeLock) {
+            try {
+                writeLock.lock();
+                FSRevisionTimesIndex.build(this, getRevisionTimesIndexFile(), canceller);
+                if (myDBFormat >= MIN_PACKED_REVPROP_FORMAT) {
+                    // tells other instances to reload the rewritten index
+                    bumpRevPropGeneration();
+                }
+            } finally {
+                writeLock.unlock();
+                FSWriteLock.release(writeLock);
+            }
+        }
+    }
+
+    /**
+     * Adds new revisions to the revision times index if the repository has one, 
+     * the caller should hold the write lock.
+     */
+    public void updateRevisionTimesIndex() {
+        File indexFile = getRevisionTimesIndexFile();
+        if (indexFile.isFile()) {
+            try {
+                FSRevisionTimesIndex.append(this, indexFile);
+            } catch (SVNException e) {
+                // the index is optional and is brought up to date by the next commit
+                SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+            }
+        }
+    }
+
     public long getYoungestRevision() throws SVNException {
         FSFile file = new FSFile(getCurrentFile());
+        long youngestRevision = 0;
         try {
             String line = file.readLine(180);
             int spaceIndex = line.indexOf(' ');
             if (spaceIndex > 0) {
-                myYoungestRevisionCache = Long.parseLong(line.substring(0, spaceIndex));
+                youngestRevision = Long.parseLong(line.substring(0, spaceIndex));
             } else {
-                myYoungestRevisionCache = Long.parseLong(line);
+                youngestRevision = Long.parseLong(line);
             }
-            return myYoungestRevisionCache;
         } catch (NumberFormatException nfe) {
-            myYoungestRevisionCache = 0;
+            youngestRevision = 0;
         } finally {
             file.close();
         }
-        return myYoungestRevisionCache;
+        myYoungestRevisionCache = youngestRevision;
+        return youngestRevision;
     }
 
     public long getMinUnpackedRev() throws SVNException {
         FSFile file = new FSFile(getMinUnpackedRevFile());
+        long minUnpackedRevision = 0;
         try {
-            myMinUnpackedRevision = file.readLong();
-            return myMinUnpackedRevision;
+            minUnpackedRevision = file.readLong();
         } catch (NumberFormatException nfe) {
-            myMinUnpackedRevision = 0;
+            minUnpackedRevision = 0;
         } finally {
             file.close();
         }
-        return myMinUnpackedRevision;
+        myMinUnpackedRevision = minUnpackedRevision;
+        return minUnpackedRevision;
 
     }
     public void upgrade() throws SVNException {
@@ -556,7 +765,7 @@ public class FSFS {
         synchronized (writeLock) {
             try {
                 writeLock.lock();
-                if (myDBFormat == DB_FORMAT) {
+                if (myDBFormat >= DB_FORMAT) {
                     return;
                 }
                 if (myDBFormat < MIN_CURRENT_TXN_FORMAT) {
@@ -627,18 +836,129 @@ public class FSFS {
     }
 
     public SVNProperties getRevisionProperties(long revision) throws SVNException {
-        try{
-            if (!SVNRevision.isValidRevisionNumber(revision)) {
-                revision = getYoungestRevision();
+        if (!SVNRevision.isValidRevisionNumber(revision)) {
+            revision = getYoungestRevision();
+        }
+        Long cacheKey = new Long(revision);
+        long generation = getCachedRevPropGeneration();
+        boolean useCache = generation >= 0;
+        if (useCache) {
+            SVNProperties cachedProperties = myRevisionPropertiesCache.get(cacheKey);
+            if (cachedProperties != null) {
+                return new SVNProperties(cachedProperties);
             }
-            return readRevisionProperties(revision);
+        }
+        SVNProperties properties;
+        try{
+            properties = readRevisionProperties(revision);
         } catch(SVNException e ) {
             if(e.getErrorMessage().getErrorCode()==SVNErrorCode.FS_NO_SUCH_REVISION && myDBFormat >= MIN_PACKED_REVPROP_FORMAT ) {
                 updateMinUnpackedRevProp();
-                return readRevisionProperties(revision);
+                properties = readRevisionProperties(revision);
+            } else {
+                throw e;
             }
-            throw e;
         }
+        if (useCache) {
+            cacheRevisionProperties(cacheKey, properties, generation);
+        }
+        return properties;
+    }
+
+    public FSCache<Long, SVNProperties> getRevisionPropertiesCache() {
+        return myRevisionPropertiesCache;
+    }
+
+    /**
+     * Revision properties may be changed by other processes, so the cache is only valid while
+     * the revprop generation stays the same. Writers bump the generation once the change is done,
+     * an odd generation left by native Subversion 1.8 means a change is in progress.
+     *
+     * @return generation the cached properties belong to, or -1 if the cache may not be used
+     */
+    private synchronized long getCachedRevPropGeneration() throws SVNException {
+        if (myRevisionPropertiesCache.getWeightLimit() <= 0) {
+            return -1;
+        }
+        long generation = getRevPropGeneration();
+        return generation >= 0 && generation % 2 == 0 ? generation : -1;
+    }
+
+    /**
+     * Returns the revprop generation of a format 6 or newer repository, or -1 for older formats.
+     * The generation file is only re-read when it has changed, the revision properties cache is
+     * dropped whenever the generation changes.
+     */
+    private synchronized long getRevPropGeneration() throws SVNException {
+        if (myDBFormat < MIN_PACKED_REVPROP_FORMAT) {
+            return -1;
+        }
+        File generationFile = getRevPropGenerationFile();
+        long timestamp = generationFile.lastModified();
+        long length = generationFile.length();
+        // a file read within the timestamp granularity might have been changed again without changing its timestamp
+        if (myRevPropGeneration < 0 || timestamp != myRevPropGenerationTimestamp || length != myRevPropGenerationLength ||
+                myRevPropGenerationReadTime - timestamp < 2000) {
+            long readTime = System.currentTimeMillis();
+            long generation = readRevPropGeneration();
+            if (generation != myRevPropGeneration) {
+                myRevisionPropertiesCache.clear();
+            }
+            myRevPropGeneration = generation;
+            myRevPropGenerationTimestamp = timestamp;
+            myRevPropGenerationLength = length;
+            myRevPropGenerationReadTime = readTime;
+        }
+        return myRevPropGeneration;
+    }
+
+    private synchronized void cacheRevisionProperties(Long revision, SVNProperties properties, long generation) {
+        // properties read before a change of this process was done must not be cached
+        if (generation == myRevPropGeneration) {
+            myRevisionPropertiesCache.put(revision, new SVNProperties(properties));
+        }
+    }
+
+    private long readRevPropGeneration() throws SVNException {
+        File generationFile = getRevPropGenerationFile();
+        if (!generationFile.isFile()) {
+            return 0;
+        }
+        FSFile file = new FSFile(generationFile);
+        try {
+            return file.readLong();
+        } catch (NumberFormatException nfe) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Malformed revprop generation file ''{0}''", generationFile);
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        } finally {
+            file.close();
+        }
+        return -1;
+    }
+
+    /**
+     * Called under the write lock once revision properties or the revision times index are changed.
+     */
+    private void bumpRevPropGeneration() throws SVNException {
+        long generation = readRevPropGeneration() + 1;
+        if (generation % 2 == 1) {
+            // always even, native Subversion 1.8 readers take odd generations for a change in progress
+            generation++;
+        }
+        File tmpFile = SVNFileUtil.createUniqueFile(getDBRoot(), REVPROP_GENERATION_FILE, ".tmp", false);
+        SVNFileUtil.writeToFile(tmpFile, String.valueOf(generation) + '\n', "US-ASCII");
+        SVNFileUtil.rename(tmpFile, getRevPropGenerationFile());
+        synchronized (this) {
+            // the next reader re-reads the generation and drops the cache
+            myRevPropGeneration = -1;
+        }
+    }
+
+    protected File getRevPropGenerationFile() {
+        if (myRevPropGenerationFile == null) {
+            myRevPropGenerationFile = new File(getDBRoot(), REVPROP_GENERATION_FILE);
+        }
+        return myRevPropGenerationFile;
     }
 
     private SVNProperties readRevisionProperties(long revision) throws SVNException {
@@ -802,11 +1122,17 @@ public class FSFS {
     }
 
     public FSRevisionNode getRevisionNode(FSID id) throws SVNException  {
+        if (!id.isTxn()) {
+            FSRevisionNode cachedNode = myRevisionNodesCache.get(id);
+            if (cachedNode != null) {
+                // callers (e.g. FSTransactionRoot.cloneChild) are allowed to modify the node they get
+                return FSRevisionNode.dumpRevisionNode(cachedNode);
+            }
+        }
         FSFile revisionFile = null;
 
         if (id.isTxn()) {
-            File file = new File(getTransactionDir(id.getTxnID()), PATH_PREFIX_NODE + id.getNodeID() + "." + id.getCopyID());
-            revisionFile = new FSFile(file);
+            revisionFile = openTransactionFile(id.getTxnID(), PATH_PREFIX_NODE + id.getNodeID() + "." + id.getCopyID());
         } else {
             revisionFile = openAndSeekRevision(id.getRevision(), id.getOffset());
         }
@@ -822,9 +1148,34 @@ public class FSFS {
         if (node.isFreshTxnRoot()) {
             node.setFreshRootPredecessorId(node.getPredecessorId());
         }
+        if (!id.isTxn()) {
+            myRevisionNodesCache.put(id, FSRevisionNode.dumpRevisionNode(node));
+        }
         return node;
     }
 
+    public FSRevisionNode fetchRevisionNodeFromCache(long revision, String path) {
+        FSRevisionNode cachedNode = myRevisionNodesByPathCache.get(revision + path);
+        // nodes are lazily filled with their entries, so a cached one must not be shared between sessions
+        return cachedNode != null ? FSRevisionNode.dumpRevisionNode(cachedNode) : null;
+    }
+
+    public void putRevisionNodeToCache(long revision, String path, FSRevisionNode node) {
+        myRevisionNodesByPathCache.put(revision + path, node != null ? FSRevisionNode.dumpRevisionNode(node) : null);
+    }
+
+    public void removeRevisionNodeFromCache(long revision, String path) {
+        myRevisionNodesByPathCache.remove(revision + path);
+    }
+
+    public FSCache<FSID, FSRevisionNode> getRevisionNodesCache() {
+        return myRevisionNodesCache;
+    }
+
+    public FSCache<String, FSRevisionNode> getRevisionNodesByPathCache() {
+        return myRevisionNodesByPathCache;
+    }
+
     public Map getDirContents(FSRevisionNode revNode) throws SVNException {
         FSRepresentation txtRep = revNode.getTextRepresentation();
         if (txtRep != null && txtRep.isTxn()) {
@@ -842,11 +1193,46 @@ public class FSFS {
             }
             return entries;
         } else if (txtRep != null) {
-            return parsePlainRepresentation(parseProperties(txtRep), false);
+            String cacheKey = txtRep.getRevision() + "/" + txtRep.getOffset();
+            Map entries = myDirContentsCache.get(cacheKey);
+            if (entries == null) {
+                entries = Collections.unmodifiableMap(parsePlainRepresentation(parseProperties(txtRep), false));
+                myDirContentsCache.put(cacheKey, entries);
+            }
+            return entries;
         }
         return new SVNHashMap();// returns an empty map, must not be null!!
     }
 
+    public FSCache<String, Map> getDirContentsCache() {
+        return myDirContentsCache;
+    }
+
+    public FSCache<String, ByteBuffer> getFulltextCache() {
+        return myFulltextCache;
+    }
+
+    public FSCache<Long, long[]> getPackManifestsCache() {
+        return myPackManifestsCache;
+    }
+
+    public FSCache<File, FSL2PIndex> getItemIndexesCache() {
+        return myItemIndexesCache;
+    }
+
+    public boolean isFulltextCacheOffHeap() {
+        return myIsFulltextCacheOffHeap;
+    }
+
+    protected boolean isFulltextCacheable(FSRepresentation representation) {
+        if (representation.isTxn() || myFulltextCache.getWeightLimit() <= 0) {
+            return false;
+        }
+        // a single fulltext should not be able to flush a noticeable part of the cache
+        long expandedSize = representation.getExpandedSize();
+        return expandedSize >= 0 && expandedSize <= Math.min(Integer.MAX_VALUE, myFulltextCache.getWeightLimit() / 16);
+    }
+
     private byte[] parseRawDeltaProperties(FSRepresentation txtRep, StringBuilder outputChecksum) throws SVNException {
         FSFile revisionFile = null;
         revisionFile = openAndSeekRepresentation(txtRep);
@@ -1134,10 +1520,128 @@ public class FSFS {
         return new File(getTransactionsParentDir(), txnID + TXN_PATH_EXT);
     }
 
+    /**
+     * Makes the transaction keep its node revisions, children lists and changes in memory,
+     * see {@link FSTransactionStore}. Should be called right after the transaction directory is created.
+     */
+    public FSTransactionStore createTransactionStore(String txnID) {
+        purgeAbandonedTransactionStores();
+        FSTransactionStore store = new FSTransactionStore(getTransactionDir(txnID), DEFAULT_TRANSACTION_SPILL_THRESHOLD);
+        synchronized (myTransactionStores) {
+            myTransactionStores.put(txnID, store);
+        }
+        return store;
+    }
+
+    /**
+     * Purges transactions whose stores were not accessed for the transaction store timeout, their
+     * editors are gone without aborting them, and disposes stores of transactions removed by others.
+     * Such a transaction can not be continued, since its files exist only in the store.
+     */
+    private void purgeAbandonedTransactionStores() {
+        long now = System.currentTimeMillis();
+        Map<String, FSTransactionStore> abandoned = new SVNHashMap();
+        synchronized (myTransactionStores) {
+            for (Iterator<Map.Entry<String, FSTransactionStore>> entries = myTransactionStores.entrySet().iterator(); entries.hasNext();) {
+                Map.Entry<String, FSTransactionStore> entry = entries.next();
+                if (now - entry.getValue().getLastAccessTime() >= DEFAULT_TRANSACTION_STORE_TIMEOUT ||
+                        !getTransactionDir(entry.getKey()).isDirectory()) {
+                    abandoned.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        for (Iterator<String> txnIDs = abandoned.keySet().iterator(); txnIDs.hasNext();) {
+            String txnID = txnIDs.next();
+            try {
+                if (getTransactionDir(txnID).isDirectory()) {
+                    purgeTxn(txnID);
+                } else {
+                    disposeTransactionStore(txnID);
+                }
+            } catch (SVNException e) {
+                SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+            }
+        }
+    }
+
+    public FSTransactionStore getTransactionStore(String txnID) {
+        synchronized (myTransactionStores) {
+            return myTransactionStores.get(txnID);
+        }
+    }
+
+    public void disposeTransactionStore(String txnID) throws SVNException {
+        FSTransactionStore store;
+        synchronized (myTransactionStores) {
+            store = myTransactionStores.remove(txnID);
+        }
+        if (store != null) {
+            store.dispose();
+        }
+    }
+
+    /**
+     * Writes files of an in-memory transaction to its directory, so that the transaction
+     * could be read by other processes such as hook scripts.
+     */
+    public void writeTransactionStoreFiles(String txnID) throws SVNException {
+        FSTransactionStore store = getTransactionStore(txnID);
+        if (store != null) {
+            store.writeFiles(getTransactionDir(txnID));
+        }
+    }
+
+    public FSFile openTransactionFile(String txnID, String name) throws SVNException {
+        FSTransactionStore store = getTransactionStore(txnID);
+        byte[] data = store != null ? store.read(name) : null;
+        // a missing file is reported by FSFile when it is read
+        return data != null ? new FSFile(data) : new FSFile(new File(getTransactionDir(txnID), name));
+    }
+
+    public OutputStream openTransactionFileForWriting(String txnID, String name, boolean append) throws SVNException {
+        FSTransactionStore store = getTransactionStore(txnID);
+        if (store != null) {
+            return store.openForWriting(name, append);
+        }
+        return SVNFileUtil.openFileForWriting(new File(getTransactionDir(txnID), name), append);
+    }
+
+    public void deleteTransactionFile(String txnID, String name) throws SVNException {
+        FSTransactionStore store = getTransactionStore(txnID);
+        if (store != null) {
+            store.delete(name);
+        } else {
+            SVNFileUtil.deleteFile(new File(getTransactionDir(txnID), name));
+        }
+    }
+
     public void setYoungestRevisionCache(long revision) {
         myYoungestRevisionCache = revision;
     }
 
+    /**
+     * Makes revisions up to <code>revision</code> readable while a group commit writes them
+     * and before they are recorded in <code>db/current</code>, -1 resets it.
+     */
+    void setPendingYoungestRevision(long revision) {
+        myPendingYoungestRevision = revision;
+    }
+
+    public synchronized FSCommitQueue getCommitQueue() {
+        if (myCommitQueue == null) {
+            myCommitQueue = new FSCommitQueue(this);
+        }
+        return myCommitQueue;
+    }
+
+    /**
+     * Group commit relies on <code>db/current</code> holding nothing but the youngest revision
+     * and is not used for repositories with logical addressing.
+     */
+    public boolean isGroupCommitEnabled() {
+        return DEFAULT_GROUP_COMMIT && getDBFormat() >= MIN_NO_GLOBAL_IDS_FORMAT && !myIsLogicalAddressing;
+    }
+
     public void setUUID(String uuid) throws SVNException {
         File uniqueFile = SVNFileUtil.createUniqueFile(getDBRoot(), UUID_FILE, ".tmp", false);
         uuid += '\n';
@@ -1187,7 +1691,7 @@ public class FSFS {
     public void writeNextIDs(String txnID, String nodeID, String copyID) throws SVNException {
         OutputStream nextIdsFile = null;
         try {
-            nextIdsFile = SVNFileUtil.openFileForWriting(getNextIDsFile(txnID));
+            nextIdsFile = openTransactionFileForWriting(txnID, "next-ids", false);
             String ids = nodeID + " " + copyID + "\n";
             nextIdsFile.write(ids.getBytes("UTF-8"));
         } catch (IOException ioe) {
@@ -1217,6 +1721,7 @@ public class FSFS {
 
             FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(this);
             synchronized (writeLock) {
+                boolean bumpGeneration = myDBFormat >= MIN_PACKED_REVPROP_FORMAT;
                 try {
                     writeLock.lock();
 
@@ -1261,9 +1766,25 @@ public class FSFS {
                             }
                         }
                     }
+                    if (SVNRevisionProperty.DATE.equals(propertyName) && getRevisionTimesIndexFile().isFile()) {
+                        myRevisionPropertiesCache.remove(new Long(revision));
+                        try {
+                            FSRevisionTimesIndex.update(this, getRevisionTimesIndexFile(), revision);
+                        } catch (SVNException e) {
+                            SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+                        }
+                    }
                 } finally {
-                    writeLock.unlock();
-                    FSWriteLock.release(writeLock);
+                    try {
+                        if (bumpGeneration) {
+                            // also after a failure, the change might have been partly written
+                            bumpRevPropGeneration();
+                        }
+                        myRevisionPropertiesCache.remove(new Long(revision));
+                    } finally {
+                        writeLock.unlock();
+                        FSWriteLock.release(writeLock);
+                    }
                 }
             }
     }
@@ -1272,6 +1793,29 @@ public class FSFS {
         return myRevpropPackSize;
     }
 
+    /**
+     * @return the maximal number of predecessors skipped to reach a delta base, 
+     *         a fulltext is stored when it is exceeded; -1 for no limit
+     */
+    public long getMaxDeltificationWalk() {
+        return myMaxDeltificationWalk;
+    }
+
+    /**
+     * @return the walk distance below which contents are delta'd against the immediate predecessor
+     *         instead of the skip-delta base
+     */
+    public long getMaxLinearDeltification() {
+        return myMaxLinearDeltification;
+    }
+
+    /**
+     * @return every how many predecessors a fulltext is stored; 0 if never
+     */
+    public long getFulltextInterval() {
+        return myFulltextInterval;
+    }
+
     public SVNProperties getTransactionProperties(String txnID) throws SVNException {
         FSFile txnPropsFile = new FSFile(getTransactionPropertiesFile(txnID));
         try {
@@ -1307,6 +1851,7 @@ public class FSFS {
     }
 
     public void purgeTxn(String txnID) throws SVNException {
+        disposeTransactionStore(txnID);
         SVNFileUtil.deleteAll(getTransactionDir(txnID), true);
         if (getDBFormat() >= FSFS.MIN_PROTOREVS_DIR_FORMAT) {
             SVNFileUtil.deleteFile(getTransactionProtoRevFile(txnID));
@@ -1336,7 +1881,7 @@ public class FSFS {
         }
         OutputStream revNodeFile = null;
         try {
-            revNodeFile = SVNFileUtil.openFileForWriting(getTransactionRevNodeFile(id));
+            revNodeFile = openTransactionFileForWriting(id.getTxnID(), PATH_PREFIX_NODE + id.getNodeID() + "." + id.getCopyID(), false);
             writeTxnNodeRevision(revNodeFile, revNode);
         } catch (IOException ioe) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
@@ -1414,7 +1959,7 @@ public class FSFS {
     public SVNLock getLock(String repositoryPath, boolean haveWriteLock, boolean throwError) throws SVNException {
         repositoryPath = SVNPathUtil.canonicalizeAbsolutePath(repositoryPath);
 
-        SVNLock lock = fetchLockFromDigestFile(null, repositoryPath, null);
+        SVNLock lock = getLockStore(haveWriteLock).getLock(repositoryPath);
 
         if (lock == null) {
             if (!throwError) {
@@ -1438,60 +1983,28 @@ public class FSFS {
     }
 
     public void deleteLock(SVNLock lock) throws SVNException {
-        String reposPath = lock.getPath();
-        String childToKill = null;
-        Collection<String> children = new ArrayList<String>();
-        while (true) {
-            fetchLockFromDigestFile(null, reposPath, children);
-            if (childToKill != null) {
-                children.remove(childToKill);
-            }
-
-            if (children.size() == 0) {
-                childToKill = getDigestFromRepositoryPath(reposPath);
-                File digestFile = getDigestFileFromRepositoryPath(reposPath);
-                SVNFileUtil.deleteFile(digestFile);
-            } else {
-                writeDigestLockFile(null, children, reposPath, false);
-                childToKill = null;
-            }
-
-            if ("/".equals(reposPath)) {
-                break;
-            }
-
-            reposPath = SVNPathUtil.removeTail(reposPath);
-
-            if ("".equals(reposPath)) {
-                reposPath = "/";
-            }
-            children.clear();
-        }
+        getLockStore(true).deleteLock(lock);
     }
 
-    public void walkDigestFiles(File digestFile, ISVNLockHandler getLocksHandler, boolean haveWriteLock) throws SVNException {
-        Collection children = new LinkedList();
-        SVNLock lock = fetchLockFromDigestFile(digestFile, null, children);
-
-        if (lock != null) {
-            Date current = new Date(System.currentTimeMillis());
-            if (lock.getExpirationDate() == null || current.compareTo(lock.getExpirationDate()) < 0) {
-                getLocksHandler.handleLock(lock.getPath(), lock, null);
-            } else if (haveWriteLock) {
-                deleteLock(lock);
+    /**
+     * Reports all unexpired locks on <code>repositoryPath</code> and below it to <code>handler</code>,
+     * expired locks are removed when the caller holds the write lock.
+     */
+    public void walkLocks(String repositoryPath, final ISVNLockHandler handler, final boolean haveWriteLock) throws SVNException {
+        repositoryPath = SVNPathUtil.canonicalizeAbsolutePath(repositoryPath);
+        getLockStore(haveWriteLock).walkLocks(repositoryPath, new ISVNLockHandler() {
+            public void handleLock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
+                Date current = new Date(System.currentTimeMillis());
+                if (lock.getExpirationDate() == null || current.compareTo(lock.getExpirationDate()) < 0) {
+                    handler.handleLock(path, lock, error);
+                } else if (haveWriteLock) {
+                    deleteLock(lock);
+                }
             }
-        }
 
-        if (children.isEmpty()) {
-            return;
-        }
-
-        for (Iterator entries = children.iterator(); entries.hasNext();) {
-            String digestName = (String) entries.next();
-            File parent = new File(getDBLocksDir(), digestName.substring(0, FSFS.DIGEST_SUBDIR_LEN));
-            File childDigestFile = new File(parent, digestName);
-            walkDigestFiles(childDigestFile, getLocksHandler, haveWriteLock);
-        }
+            public void handleUnlock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
+            }
+        });
     }
 
     public SVNLock getLockHelper(String repositoryPath, boolean haveWriteLock) throws SVNException {
@@ -1507,63 +2020,6 @@ public class FSFS {
         return lock;
     }
 
-    public SVNLock fetchLockFromDigestFile(File digestFile, String repositoryPath, Collection children) throws SVNException {
-        File digestLockFile = digestFile == null ? getDigestFileFromRepositoryPath(repositoryPath) : digestFile;
-        SVNProperties lockProps = null;
-
-        if (digestLockFile.exists()) {
-            FSFile reader = new FSFile(digestLockFile);
-            try {
-                lockProps = reader.readProperties(false, true);
-            } catch (SVNException svne) {
-                SVNErrorMessage err = svne.getErrorMessage().wrap("Can't parse lock/entries hashfile ''{0}''", digestLockFile);
-                SVNErrorManager.error(err, SVNLogType.FSFS);
-            } finally {
-                reader.close();
-            }
-        } else {
-            lockProps = new SVNProperties();
-        }
-
-        SVNLock lock = null;
-        String lockPath = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.PATH_LOCK_KEY));
-        if (lockPath != null) {
-            String lockToken = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.TOKEN_LOCK_KEY));
-            if (lockToken == null) {
-                SVNErrorManager.error(FSErrors.errorCorruptLockFile(lockPath, this), SVNLogType.FSFS);
-            }
-            String lockOwner = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.OWNER_LOCK_KEY));
-            if (lockOwner == null) {
-                SVNErrorManager.error(FSErrors.errorCorruptLockFile(lockPath, this), SVNLogType.FSFS);
-            }
-            String davComment = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.IS_DAV_COMMENT_LOCK_KEY));
-            if (davComment == null) {
-                SVNErrorManager.error(FSErrors.errorCorruptLockFile(lockPath, this), SVNLogType.FSFS);
-            }
-            String creationTime = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.CREATION_DATE_LOCK_KEY));
-            if (creationTime == null) {
-                SVNErrorManager.error(FSErrors.errorCorruptLockFile(lockPath, this), SVNLogType.FSFS);
-            }
-            Date creationDate = SVNDate.parseDateString(creationTime);
-            String expirationTime = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.EXPIRATION_DATE_LOCK_KEY));
-            Date expirationDate = null;
-            if (expirationTime != null) {
-                expirationDate = SVNDate.parseDateString(expirationTime);
-            }
-            String comment = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.COMMENT_LOCK_KEY));
-            lock = new FSLock(lockPath, lockToken, lockOwner, comment, creationDate, expirationDate, "1".equals(davComment));
-        }
-
-        String childEntries = SVNPropertyValue.getPropertyAsString(lockProps.getSVNPropertyValue(FSFS.CHILDREN_LOCK_KEY));
-        if (children != null && childEntries != null) {
-            String[] digests = childEntries.split("\n");
-            for (int i = 0; i < digests.length; i++) {
-                children.add(digests[i]);
-            }
-        }
-        return lock;
-    }
-
     public File getDigestFileFromRepositoryPath(String repositoryPath) throws SVNException {
         String digest = getDigestFromRepositoryPath(repositoryPath);
         File parent = new File(getDBLocksDir(), digest.substring(0, FSFS.DIGEST_SUBDIR_LEN));
@@ -1709,6 +2165,11 @@ public class FSFS {
         }
         FSID startNodeId = startNode.getId();
 
+        FSChangedPathsIndex changedPathsIndex = getChangedPathsIndex(endRev);
+        if (changedPathsIndex != null) {
+            return changedPathsIndex.getDeletedRevision(SVNPathUtil.canonicalizeAbsolutePath(path), startRev, endRev);
+        }
+
         FSRevisionRoot endRoot = createRevisionRoot(endRev);
         FSRevisionNode endNode = null;
         try {
@@ -1835,6 +2296,7 @@ public class FSFS {
     }
 
     public void readOptions(FSFile formatFile, int formatNumber) throws SVNException {
+        myIsLogicalAddressing = false;
         while (true) {
             String line = null;
             try {
@@ -1863,6 +2325,17 @@ public class FSFS {
                 }
             }
 
+            if (formatNumber >= MIN_LOG_ADDRESSING_FORMAT && line.startsWith("addressing ")) {
+                String optionValue = line.substring(11);
+                if (optionValue.equals("physical")) {
+                    myIsLogicalAddressing = false;
+                    continue;
+                } else if (optionValue.equals("logical")) {
+                    myIsLogicalAddressing = true;
+                    continue;
+                }
+            }
+
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.BAD_VERSION_FILE_FORMAT,
                     "''{0}'' contains invalid filesystem format option ''{1}''",
                     new Object[] {formatFile.getFile(), line});
@@ -1919,6 +2392,198 @@ public class FSFS {
         DEFAULT_MAX_FILES_PER_DIRECTORY = maxFilesPerDirectory;
     }
 
+    public static long getDefaultDirContentsCacheSize() {
+        return DEFAULT_DIR_CONTENTS_CACHE_SIZE;
+    }
+
+    public static void setDefaultDirContentsCacheSize(long cacheSize) {
+        DEFAULT_DIR_CONTENTS_CACHE_SIZE = cacheSize;
+    }
+
+    public static long getDefaultPackManifestsCacheSize() {
+        return DEFAULT_PACK_MANIFESTS_CACHE_SIZE;
+    }
+
+    public static void setDefaultPackManifestsCacheSize(long cacheSize) {
+        DEFAULT_PACK_MANIFESTS_CACHE_SIZE = cacheSize;
+    }
+
+    public static long getDefaultItemIndexesCacheSize() {
+        return DEFAULT_ITEM_INDEXES_CACHE_SIZE;
+    }
+
+    public static void setDefaultItemIndexesCacheSize(long cacheSize) {
+        DEFAULT_ITEM_INDEXES_CACHE_SIZE = cacheSize;
+    }
+
+    public static long getDefaultMappedFileThreshold() {
+        return DEFAULT_MAPPED_FILE_THRESHOLD;
+    }
+
+    /**
+     * Sets the minimal size of revision and pack files that are read through memory mapping,
+     * 0 disables mapping. On Windows mapped files can not be deleted until they are unmapped
+     * by the garbage collector, which may get in the way of packing a repository that is being read.
+     */
+    public static void setDefaultMappedFileThreshold(long threshold) {
+        DEFAULT_MAPPED_FILE_THRESHOLD = threshold;
+    }
+
+    public static int getDefaultMappedFilesCacheSize() {
+        return DEFAULT_MAPPED_FILES_CACHE_SIZE;
+    }
+
+    public static void setDefaultMappedFilesCacheSize(int cacheSize) {
+        DEFAULT_MAPPED_FILES_CACHE_SIZE = cacheSize;
+    }
+
+    public static int getDefaultMaxIdleFileHandles() {
+        return DEFAULT_MAX_IDLE_FILE_HANDLES;
+    }
+
+    /**
+     * Sets the number of idle revision and pack file handles kept open per repository, 0 (the default) disables pooling.
+     * On Windows an open handle prevents deletion of the file, so while handles of other instances are pooled
+     * the revision shards they read can not be removed by pack or hot copy.
+     */
+    public static void setDefaultMaxIdleFileHandles(int maxIdleHandles) {
+        DEFAULT_MAX_IDLE_FILE_HANDLES = maxIdleHandles;
+    }
+
+    public static long getDefaultFileHandleIdleTimeout() {
+        return DEFAULT_FILE_HANDLE_IDLE_TIMEOUT;
+    }
+
+    public static void setDefaultFileHandleIdleTimeout(long timeout) {
+        DEFAULT_FILE_HANDLE_IDLE_TIMEOUT = timeout;
+    }
+
+    public static long getDefaultFulltextCacheSize() {
+        return DEFAULT_FULLTEXT_CACHE_SIZE;
+    }
+
+    public static void setDefaultFulltextCacheSize(long cacheSize) {
+        DEFAULT_FULLTEXT_CACHE_SIZE = cacheSize;
+    }
+
+    public static boolean isDefaultFulltextCacheOffHeap() {
+        return DEFAULT_FULLTEXT_CACHE_OFF_HEAP;
+    }
+
+    public static void setDefaultFulltextCacheOffHeap(boolean offHeap) {
+        DEFAULT_FULLTEXT_CACHE_OFF_HEAP = offHeap;
+    }
+
+    public static boolean isDefaultGroupCommit() {
+        return DEFAULT_GROUP_COMMIT;
+    }
+
+    /**
+     * Enables group commit, see {@link FSCommitQueue}. Only commits of sessions sharing
+     * an instance (see {@link FSFSRegistry}) are grouped.
+     */
+    public static void setDefaultGroupCommit(boolean groupCommit) {
+        DEFAULT_GROUP_COMMIT = groupCommit;
+    }
+
+    public static int getDefaultGroupCommitMaxBatchSize() {
+        return DEFAULT_GROUP_COMMIT_MAX_BATCH_SIZE;
+    }
+
+    public static void setDefaultGroupCommitMaxBatchSize(int batchSize) {
+        DEFAULT_GROUP_COMMIT_MAX_BATCH_SIZE = batchSize;
+    }
+
+    public static boolean isDefaultSyncCommits() {
+        return DEFAULT_SYNC_COMMITS;
+    }
+
+    /**
+     * Makes commits flush revision files and <code>db/current</code> to disk before the new revision
+     * is reported, with group commit the flush is done once per batch.
+     */
+    public static void setDefaultSyncCommits(boolean syncCommits) {
+        DEFAULT_SYNC_COMMITS = syncCommits;
+    }
+
+    public static boolean isDefaultInMemoryTransactions() {
+        return DEFAULT_IN_MEMORY_TRANSACTIONS;
+    }
+
+    /**
+     * Makes transactions of commit editors and dump loading keep their node revisions and changes
+     * in memory instead of many small files, see {@link FSTransactionStore}.
+     */
+    public static void setDefaultInMemoryTransactions(boolean inMemory) {
+        DEFAULT_IN_MEMORY_TRANSACTIONS = inMemory;
+    }
+
+    public static long getDefaultTransactionSpillThreshold() {
+        return DEFAULT_TRANSACTION_SPILL_THRESHOLD;
+    }
+
+    public static void setDefaultTransactionSpillThreshold(long threshold) {
+        DEFAULT_TRANSACTION_SPILL_THRESHOLD = threshold;
+    }
+
+    public static long getDefaultTransactionStoreTimeout() {
+        return DEFAULT_TRANSACTION_STORE_TIMEOUT;
+    }
+
+    /**
+     * Sets the time in milliseconds after which an in-memory transaction that is neither read nor written
+     * is considered abandoned and purged when the next in-memory transaction of the same {@link FSFS} begins.
+     */
+    public static void setDefaultTransactionStoreTimeout(long timeout) {
+        DEFAULT_TRANSACTION_STORE_TIMEOUT = timeout;
+    }
+
+    public static int getDefaultDeltaThreads() {
+        return DEFAULT_DELTA_THREADS;
+    }
+
+    /**
+     * Sets the number of worker threads computing digests and delta windows of file contents
+     * larger than {@link FSOutputStream#WRITE_BUFFER_SIZE}, see {@link FSDeltaPipeline}. 0 computes them
+     * on the committing thread.
+     */
+    public static void setDefaultDeltaThreads(int threads) {
+        DEFAULT_DELTA_THREADS = threads;
+    }
+
+    public static boolean isDefaultRepCacheFilter() {
+        return DEFAULT_REP_CACHE_FILTER;
+    }
+
+    /**
+     * Makes <code>rep-cache.db</code> lookups go through a bloom filter of its keys, built when the
+     * repository is opened. Pays off for long living instances like those of dump loading or 
+     * {@link FSFSRegistry}, sharing may miss representations added by other processes meanwhile.
+     */
+    public static void setDefaultRepCacheFilter(boolean filter) {
+        DEFAULT_REP_CACHE_FILTER = filter;
+    }
+
+    public static int getDefaultPackThreads() {
+        return DEFAULT_PACK_THREADS;
+    }
+
+    /**
+     * Sets the number of shards {@link FSPacker} packs at the same time, 
+     * <code>min-unpacked-rev</code> still advances one shard after another.
+     */
+    public static void setDefaultPackThreads(int threads) {
+        DEFAULT_PACK_THREADS = threads;
+    }
+
+    public static int getDefaultRevisionNodesCacheSize() {
+        return DEFAULT_REVISION_NODES_CACHE_SIZE;
+    }
+
+    public static void setDefaultRevisionNodesCacheSize(int cacheSize) {
+        DEFAULT_REVISION_NODES_CACHE_SIZE = cacheSize;
+    }
+
     protected  boolean isPackedRevision(long revision) {
         return revision < myMinUnpackedRevision;
     }
@@ -1933,15 +2598,12 @@ public class FSFS {
         return new FSFile(revFile);
     }
 
-    protected FSFile getTransactionChangesFile(String txnID) {
-        File file = new File(getTransactionDir(txnID), "changes");
-        return new FSFile(file);
+    protected FSFile getTransactionChangesFile(String txnID) throws SVNException {
+        return openTransactionFile(txnID, "changes");
     }
 
-    protected FSFile getTransactionRevisionNodeChildrenFile(FSID txnID) {
-        File childrenFile = new File(getTransactionDir(txnID.getTxnID()), PATH_PREFIX_NODE + txnID.getNodeID() +
-                "." + txnID.getCopyID() + TXN_PATH_EXT_CHILDREN);
-        return new FSFile(childrenFile);
+    protected FSFile getTransactionRevisionNodeChildrenFile(FSID txnID) throws SVNException {
+        return openTransactionFile(txnID.getTxnID(), PATH_PREFIX_NODE + txnID.getNodeID() + "." + txnID.getCopyID() + TXN_PATH_EXT_CHILDREN);
     }
 
     protected FSFile getRevisionFSFile(long revision)  throws SVNException {
@@ -1960,7 +2622,50 @@ public class FSFS {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_NO_SUCH_REVISION, "No such revision {0}", String.valueOf(revision));
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        return new FSFile(file);
+        ByteBuffer mappedFile = getMappedFile(file);
+        if (mappedFile != null) {
+            return new FSFile(file, mappedFile);
+        }
+        return new FSFile(file, myFileHandlePool);
+    }
+
+    /**
+     * Revision and pack files never change once written, so large ones may be mapped
+     * into memory once and shared by all readers. Returns <code>null</code> when
+     * <code>file</code> should be read through a channel instead.
+     */
+    private ByteBuffer getMappedFile(File file) {
+        if (myMappedFileThreshold <= 0) {
+            return null;
+        }
+        ByteBuffer mappedFile = myMappedFilesCache.get(file);
+        if (mappedFile != null) {
+            return mappedFile;
+        }
+        long length = file.length();
+        if (length < myMappedFileThreshold || length > Integer.MAX_VALUE) {
+            return null;
+        }
+        FileInputStream fileInputStream = null;
+        try {
+            fileInputStream = SVNFileUtil.createFileInputStream(file);
+            mappedFile = fileInputStream.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } catch (IOException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            return null;
+        } finally {
+            SVNFileUtil.closeFile(fileInputStream);
+        }
+        myMappedFilesCache.put(file, mappedFile);
+        return mappedFile;
+    }
+
+    public FSFileHandlePool getFileHandlePool() {
+        return myFileHandlePool;
+    }
+
+    public FSCache<File, ByteBuffer> getMappedFilesCache() {
+        return myMappedFilesCache;
     }
 
     protected File getAbsoluteRevisionPath(long revision) throws SVNException {
@@ -1979,9 +2684,8 @@ public class FSFS {
         return getPackedRevPath(revision, PACK_KIND_PACK);
     }
 
-    protected FSFile getTransactionRevisionNodePropertiesFile(FSID id) {
-        File revNodePropsFile = new File(getTransactionDir(id.getTxnID()), PATH_PREFIX_NODE + id.getNodeID() + "." + id.getCopyID() + TXN_PATH_EXT_PROPS);
-        return new FSFile(revNodePropsFile);
+    protected FSFile getTransactionRevisionNodePropertiesFile(FSID id) throws SVNException {
+        return openTransactionFile(id.getTxnID(), PATH_PREFIX_NODE + id.getNodeID() + "." + id.getCopyID() + TXN_PATH_EXT_PROPS);
     }
 
     protected File getPackedRevPath(long revision, String kind) throws SVNException {
@@ -2047,6 +2751,19 @@ public class FSFS {
     }
 
     protected void writeCurrentFile(long revision, String nextNodeID, String nextCopyID) throws SVNException, IOException {
+        writeCurrentFile(revision, nextNodeID, nextCopyID, false);
+    }
+
+    protected void writeCurrentFile(long revision, boolean sync) throws SVNException {
+        try {
+            writeCurrentFile(revision, null, null, sync);
+        } catch (IOException ioe) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
+            SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
+        }
+    }
+
+    protected void writeCurrentFile(long revision, String nextNodeID, String nextCopyID, boolean sync) throws SVNException, IOException {
         String line = null;
         if (getDBFormat() >= FSFS.MIN_NO_GLOBAL_IDS_FORMAT) {
             line = revision + "\n";
@@ -2065,38 +2782,120 @@ public class FSFS {
         } finally {
             SVNFileUtil.closeFile(currentOS);
         }
+        if (sync) {
+            syncFile(tmpCurrentFile);
+        }
         SVNFileUtil.rename(tmpCurrentFile, currentFile);
     }
 
-    protected long getPackedOffset(long revision) throws SVNException {
-        //TODO: later on introduce invoking memcache here to fetch\store the requested data
-        //long shard = revision / myMaxFilesPerDirectory;
-        File manifestFile = getPackedRevPath(revision, PACK_KIND_MANIFEST);
-        BufferedReader reader = null;
-        LinkedList manifest = new LinkedList();
+    /**
+     * Forces the contents of <code>file</code> to the storage device.
+     */
+    public static void syncFile(File file) throws SVNException {
+        RandomAccessFile raFile = null;
         try {
-            reader = new BufferedReader(new InputStreamReader(SVNFileUtil.openFileForReading(manifestFile)));
-            String line = null;
-            while ((line = reader.readLine()) != null) {
-                Long offset = null;
-                try {
-                    offset = Long.valueOf(line);
-                } catch (NumberFormatException nfe) {
-                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT);
-                    SVNErrorManager.error(err, SVNLogType.FSFS);
-                }
-                manifest.add(offset);
-            }
+            raFile = new RandomAccessFile(file, "rw");
+            raFile.getChannel().force(true);
         } catch (IOException ioe) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getMessage());
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can''t flush file ''{0}'' to disk: {1}",
+                    new Object[] {file, ioe.getLocalizedMessage()});
             SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
         } finally {
-            SVNFileUtil.closeFile(reader);
+            SVNFileUtil.closeFile(raFile);
+        }
+    }
+
+    protected long getPackedOffset(long revision) throws SVNException {
+        Long shard = new Long(revision / myMaxFilesPerDirectory);
+        long[] manifest = myPackManifestsCache.get(shard);
+        if (manifest == null) {
+            manifest = readPackManifest(getPackedRevPath(revision, PACK_KIND_MANIFEST));
+            myPackManifestsCache.put(shard, manifest);
+        }
+        int index = (int) (revision % myMaxFilesPerDirectory);
+        if (index >= manifest.length) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Manifest of shard {0} has no offset for revision {1}",
+                    new Object[] { shard, String.valueOf(revision) });
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        return manifest[index];
+    }
+
+    /**
+     * With logical addressing node revisions and representations refer to items by their
+     * index within the revision; translates such an index into an offset in the revision
+     * (or pack) file using the log-to-phys index stored in that file.
+     */
+    protected long getItemOffset(long revision, long itemIndex) throws SVNException {
+        File file = getAbsoluteRevisionPath(revision);
+        FSL2PIndex index = myItemIndexesCache.get(file);
+        if (index == null) {
+            FSFile revisionFile = getPackOrRevisionFSFile(revision);
+            try {
+                index = FSL2PIndex.fromFile(revisionFile);
+            } finally {
+                revisionFile.close();
+            }
+            myItemIndexesCache.put(file, index);
         }
+        return index.getOffset(revision, itemIndex);
+    }
 
-        Long revOffsetLong = (Long) manifest.get((int) (revision % myMaxFilesPerDirectory));
-        SVNErrorManager.assertionFailure(revOffsetLong != null, "offset for revision " + String.valueOf(revision) + " is null", SVNLogType.FSFS);
-        return revOffsetLong.longValue();
+    public void invalidatePackManifest(long shard) {
+        myPackManifestsCache.remove(new Long(shard));
+        // revision files of the shard are gone, drop their mappings and handles
+        myMappedFilesCache.clear();
+        if (myFileHandlePool != null) {
+            myFileHandlePool.closeIdleHandles();
+        }
+    }
+
+    private long[] readPackManifest(File manifestFile) throws SVNException {
+        byte[] contents = SVNFileUtil.readFully(manifestFile);
+        long[] manifest = new long[(int) myMaxFilesPerDirectory];
+        int count = 0;
+        long offset = 0;
+        boolean hasDigits = false;
+        for (int i = 0; i <= contents.length; i++) {
+            byte b = i < contents.length ? contents[i] : (byte) '\n';
+            if (b == '\n') {
+                if (!hasDigits) {
+                    continue;
+                }
+                if (count == manifest.length) {
+                    long[] grown = new long[manifest.length * 2 + 1];
+                    System.arraycopy(manifest, 0, grown, 0, count);
+                    manifest = grown;
+                }
+                manifest[count++] = offset;
+                offset = 0;
+                hasDigits = false;
+            } else if (b >= '0' && b <= '9') {
+                offset = offset * 10 + (b - '0');
+                hasDigits = true;
+            } else {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Malformed manifest file ''{0}''", manifestFile);
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+        }
+        if (count < manifest.length) {
+            long[] trimmed = new long[count];
+            System.arraycopy(manifest, 0, trimmed, 0, count);
+            manifest = trimmed;
+        }
+        return manifest;
+    }
+
+    private static long getLongOption(SVNConfigFile config, String section, String option, long defaultValue) {
+        String value = config.getPropertyValue(section, option);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 
     private SVNConfigFile loadConfig() {
@@ -2115,7 +2914,7 @@ public class FSFS {
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
 
-        if (revision <= myYoungestRevisionCache) {
+        if (revision <= myYoungestRevisionCache || revision <= myPendingYoungestRevision) {
             return;
         }
 
@@ -2237,96 +3036,104 @@ public class FSFS {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "FATAL error: attempted to set a null lock");
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        String lastChild = "";
-        String path = lock.getPath();
-        Collection children = new ArrayList();
-        while (true) {
-            String digestFileName = getDigestFromRepositoryPath(path);
-            SVNLock fetchedLock = fetchLockFromDigestFile(null, path, children);
-
-            if (lock != null) {
-                fetchedLock = lock;
-                lock = null;
-                lastChild = digestFileName;
-            } else {
-                if (!children.isEmpty() && children.contains(lastChild)) {
-                    break;
-                }
-                children.add(lastChild);
-            }
-
-            writeDigestLockFile(fetchedLock, children, path, isDAVComment);
-
-            if ("/".equals(path)) {
-                break;
+        getLockStore(true).setLock(lock, isDAVComment);
+    }
+
+    /**
+     * Returns the lock store holding the locks of this repository. When the store configured in
+     * <code>fsfs.conf</code> differs from the one on disk, locks are moved to the configured store
+     * as soon as the write lock is held; until then the existing store is used.
+     */
+    private IFSLockStore getLockStore(boolean haveWriteLock) throws SVNException {
+        File locksDBFile = getLocksDBFile();
+        boolean isSqlJetStoreOnDisk = locksDBFile.isFile();
+        if (!isSqlJetStoreOnDisk) {
+            // another instance might have moved the locks back to the digest store
+            closeSqlJetLockStore();
+        }
+        if (!haveWriteLock) {
+            return isSqlJetStoreOnDisk ? getSqlJetLockStore() : new FSDigestLockStore(this);
+        }
+        // the configuration is read under the write lock, so that all instances agree on the store
+        boolean isSqlJetStoreConfigured = isSqlJetLockStoreConfigured();
+        if (isSqlJetStoreOnDisk == isSqlJetStoreConfigured) {
+            return isSqlJetStoreOnDisk ? getSqlJetLockStore() : new FSDigestLockStore(this);
+        }
+        IFSLockStore digestStore = new FSDigestLockStore(this);
+        if (isSqlJetStoreConfigured) {
+            File tmpFile = SVNFileUtil.createUniqueFile(getDBRoot(), FSSqlJetLockStore.LOCKS_DB, ".tmp", false);
+            FSSqlJetLockStore tmpStore = FSSqlJetLockStore.open(tmpFile);
+            Collection<SVNLock> locks;
+            try {
+                locks = copyLocks(digestStore, tmpStore);
+            } finally {
+                tmpStore.close();
             }
-            path = SVNPathUtil.removeTail(path);
-
-            if ("".equals(path)) {
-                path = "/";
+            SVNFileUtil.rename(tmpFile, locksDBFile);
+            for (Iterator<SVNLock> iterator = locks.iterator(); iterator.hasNext();) {
+                digestStore.deleteLock(iterator.next());
             }
-            children.clear();
+            return getSqlJetLockStore();
         }
+        try {
+            copyLocks(getSqlJetLockStore(), digestStore);
+        } finally {
+            closeSqlJetLockStore();
+        }
+        SVNFileUtil.deleteFile(locksDBFile);
+        return digestStore;
     }
 
-    private boolean ensureDirExists(File dir, boolean create) {
-        if (!dir.exists() && create) {
-            return dir.mkdirs();
-        } else if (!dir.exists()) {
+    private boolean isSqlJetLockStoreConfigured() {
+        File confFile = getConfigFile();
+        if (myDBFormat < MIN_REP_SHARING_FORMAT || !confFile.isFile()) {
             return false;
         }
-        return true;
+        SVNConfigFile config = new SVNConfigFile(confFile);
+        return LOCK_STORE_SQLITE.equalsIgnoreCase(config.getPropertyValue(LOCKS_SECTION, LOCK_STORE_OPTION));
     }
 
-    private void writeDigestLockFile(SVNLock lock, Collection children, String repositoryPath, boolean isDAVComment) throws SVNException {
-        if (!ensureDirExists(getDBLocksDir(), true)) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN,
-                    "Can''t create a directory at ''{0}''", getDBLocksDir());
-            SVNErrorManager.error(err, SVNLogType.FSFS);
+    private synchronized FSSqlJetLockStore getSqlJetLockStore() throws SVNException {
+        if (mySqlJetLockStore == null) {
+            mySqlJetLockStore = FSSqlJetLockStore.open(getLocksDBFile());
         }
+        return mySqlJetLockStore;
+    }
 
-        File digestLockFile = getDigestFileFromRepositoryPath(repositoryPath);
-        String digest = getDigestFromRepositoryPath(repositoryPath);
-        File lockDigestSubdir = new File(getDBLocksDir(), digest.substring(0, FSFS.DIGEST_SUBDIR_LEN));
-
-        if (!ensureDirExists(lockDigestSubdir, true)) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Can't create a directory at ''{0}''", lockDigestSubdir);
-            SVNErrorManager.error(err, SVNLogType.FSFS);
+    private synchronized void closeSqlJetLockStore() throws SVNException {
+        if (mySqlJetLockStore != null) {
+            try {
+                mySqlJetLockStore.close();
+            } finally {
+                mySqlJetLockStore = null;
+            }
         }
+    }
 
-        SVNProperties props = new SVNProperties();
-
-        if (lock != null) {
-            props.put(FSFS.PATH_LOCK_KEY, lock.getPath());
-            props.put(FSFS.OWNER_LOCK_KEY, lock.getOwner());
-            props.put(FSFS.TOKEN_LOCK_KEY, lock.getID());
-            String isDAVCommentValue = isDAVComment ? "1" : "0";
-            props.put(FSFS.IS_DAV_COMMENT_LOCK_KEY, isDAVCommentValue);
-            if (lock.getComment() != null) {
-                props.put(FSFS.COMMENT_LOCK_KEY, lock.getComment());
-            }
-            if (lock.getCreationDate() != null) {
-                props.put(FSFS.CREATION_DATE_LOCK_KEY, SVNDate.formatDate(lock.getCreationDate()));
+    private static Collection<SVNLock> copyLocks(IFSLockStore source, final IFSLockStore target) throws SVNException {
+        final Collection<SVNLock> locks = new ArrayList<SVNLock>();
+        source.walkLocks("/", new ISVNLockHandler() {
+            public void handleLock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
+                locks.add(lock);
             }
-            if (lock.getExpirationDate() != null) {
-                props.put(FSFS.EXPIRATION_DATE_LOCK_KEY, SVNDate.formatDate(lock.getExpirationDate()));
-            }
-        }
-        if (children != null && children.size() > 0) {
-            Object[] digests = children.toArray();
-            StringBuffer value = new StringBuffer();
-            for (int i = 0; i < digests.length; i++) {
-                value.append(digests[i]);
-                value.append('\n');
+
+            public void handleUnlock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
             }
-            props.put(FSFS.CHILDREN_LOCK_KEY, value.toString());
+        });
+        for (Iterator<SVNLock> iterator = locks.iterator(); iterator.hasNext();) {
+            SVNLock lock = iterator.next();
+            target.setLock(lock, lock instanceof FSLock && ((FSLock) lock).isDAVComment());
         }
-        try {
-            SVNWCProperties.setProperties(props, digestLockFile, SVNFileUtil.createUniqueFile(digestLockFile.getParentFile(), digestLockFile.getName(), ".tmp", false), SVNWCProperties.SVN_HASH_TERMINATOR);
-        } catch (SVNException svne) {
-            SVNErrorMessage err = svne.getErrorMessage().wrap("Cannot write lock/entries hashfile ''{0}''", digestLockFile);
-            SVNErrorManager.error(err, svne, SVNLogType.FSFS);
+        return locks;
+    }
+
+    private boolean ensureDirExists(File dir, boolean create) {
+        if (!dir.exists() && create) {
+            return dir.mkdirs();
+        } else if (!dir.exists()) {
+            return false;
         }
+        return true;
     }
 
     private FSFile openAndSeekTransaction(FSRepresentation rep) {
@@ -2338,7 +3145,9 @@ public class FSFS {
     private FSFile openAndSeekRevision(long revision, long offset) throws SVNException {
         ensureRevisionsExists(revision);
         FSFile file = getPackOrRevisionFSFile(revision);
-        if (isPackedRevision(revision)) {
+        if (myIsLogicalAddressing) {
+            offset = getItemOffset(revision, offset);
+        } else if (isPackedRevision(revision)) {
             long revOffset = getPackedOffset(revision);
             offset += revOffset;
         }
@@ -2367,6 +3176,16 @@ public class FSFS {
         return representationMap;
     }
 
+    private static long getDirContentsWeight(Map entries) {
+        // rough estimate of the heap occupied by the map, its FSEntry and FSID objects and their strings
+        long weight = 64;
+        for (Iterator names = entries.keySet().iterator(); names.hasNext();) {
+            String name = (String) names.next();
+            weight += 200 + 2 * name.length();
+        }
+        return weight;
+    }
+
     private FSEntry parseRepEntryValue(String name, String value) {
         if (value == null) {
             return null;
@@ -2386,6 +3205,11 @@ public class FSFS {
         return new FSEntry(id, type, name);
     }
 
+    private Date getRevisionTime(FSRevisionTimesIndex timesIndex, long revision) throws SVNException {
+        Date time = timesIndex != null ? timesIndex.getTime(revision) : null;
+        return time != null ? time : getRevisionTime(revision);
+    }
+
     private Date getRevisionTime(long revision) throws SVNException {
         SVNProperties revisionProperties = getRevisionProperties(revision);
         String timeString = revisionProperties.getStringValue(SVNRevisionProperty.DATE);
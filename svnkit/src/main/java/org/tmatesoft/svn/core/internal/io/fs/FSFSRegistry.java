@@ -0,0 +1,181 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+
+/**
+ * Hands out opened {@link FSFS} instances shared by all sessions of the same repository.
+ *
+ * <p/>
+ * Every {@link #acquire(File, boolean)} must be paired with a {@link #release(FSFS)}. An instance
+ * is closed when the last reference to it is released. Up to
+ * <code>svnkit.fs.idleInstancesCacheSize</code> (4 by default) closed instances are kept as idle,
+ * so that the next session reopens them with their caches still filled. Idle instances hold
+ * no open files, only memory, which is freed when they are evicted or by {@link #closeIdleInstances()}.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSFSRegistry {
+
+    private static int DEFAULT_IDLE_INSTANCES_CACHE_SIZE = Integer.parseInt(System.getProperty("svnkit.fs.idleInstancesCacheSize", "4"));
+
+    private static final Map<String, Entry> ourEntries = new SVNHashMap();
+    private static final Map<FSFS, Entry> ourEntriesByInstance = new IdentityHashMap<FSFS, Entry>();
+    private static final LinkedHashMap<String, Entry> ourIdleEntries = new LinkedHashMap<String, Entry>();
+
+    public static synchronized FSFS acquire(File repositoryRoot, boolean hooksEnabled) throws SVNException {
+        String key = getKey(repositoryRoot, hooksEnabled);
+        Entry entry = ourEntries.get(key);
+        if (entry != null && (!entry.isValid() || (ourIdleEntries.containsKey(key) && !entry.hasSameUUID()))) {
+            // the repository has been replaced since the instance was opened
+            ourEntries.remove(key);
+            if (ourIdleEntries.remove(key) != null) {
+                closeEntry(entry);
+            }
+            entry = null;
+        }
+        if (entry != null && ourIdleEntries.remove(key) != null) {
+            try {
+                entry.myFSFS.open();
+            } catch (SVNException e) {
+                ourEntries.remove(key);
+                closeEntry(entry);
+                throw e;
+            }
+        }
+        if (entry == null) {
+            FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.setHooksEnabled(hooksEnabled);
+            fsfs.open();
+            entry = new Entry(key, fsfs);
+            ourEntries.put(key, entry);
+            ourEntriesByInstance.put(fsfs, entry);
+        }
+        entry.myReferencesCount++;
+        return entry.myFSFS;
+    }
+
+    public static synchronized void release(FSFS fsfs) {
+        Entry entry = ourEntriesByInstance.get(fsfs);
+        if (entry == null || --entry.myReferencesCount > 0) {
+            return;
+        }
+        if (ourEntries.get(entry.myKey) == entry && DEFAULT_IDLE_INSTANCES_CACHE_SIZE > 0) {
+            // releases open files, the caches are kept until the instance is reopened or evicted
+            closeFiles(entry.myFSFS);
+            ourIdleEntries.put(entry.myKey, entry);
+            if (ourIdleEntries.size() > DEFAULT_IDLE_INSTANCES_CACHE_SIZE) {
+                Iterator<Entry> eldest = ourIdleEntries.values().iterator();
+                Entry evicted = eldest.next();
+                eldest.remove();
+                ourEntries.remove(evicted.myKey);
+                closeEntry(evicted);
+            }
+            return;
+        }
+        if (ourEntries.get(entry.myKey) == entry) {
+            ourEntries.remove(entry.myKey);
+        }
+        closeEntry(entry);
+    }
+
+    /**
+     * Closes all instances that are not used by any session.
+     */
+    public static synchronized void closeIdleInstances() {
+        for (Iterator<Entry> entries = ourIdleEntries.values().iterator(); entries.hasNext();) {
+            Entry entry = entries.next();
+            entries.remove();
+            ourEntries.remove(entry.myKey);
+            closeEntry(entry);
+        }
+    }
+
+    public static int getDefaultIdleInstancesCacheSize() {
+        return DEFAULT_IDLE_INSTANCES_CACHE_SIZE;
+    }
+
+    /**
+     * Sets the number of unused repository instances whose caches are kept, 0 drops an instance
+     * as soon as its last session releases it.
+     */
+    public static synchronized void setDefaultIdleInstancesCacheSize(int cacheSize) {
+        DEFAULT_IDLE_INSTANCES_CACHE_SIZE = cacheSize;
+        if (cacheSize <= 0) {
+            closeIdleInstances();
+        }
+    }
+
+    private static void closeEntry(Entry entry) {
+        ourEntriesByInstance.remove(entry.myFSFS);
+        closeFiles(entry.myFSFS);
+    }
+
+    private static void closeFiles(FSFS fsfs) {
+        try {
+            fsfs.close();
+        } catch (SVNException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+        }
+        fsfs.getMappedFilesCache().clear();
+    }
+
+    private static String getKey(File repositoryRoot, boolean hooksEnabled) {
+        return repositoryRoot.getAbsolutePath() + (hooksEnabled ? ":hooks" : ":nohooks");
+    }
+
+    private static class Entry {
+
+        private String myKey;
+        private FSFS myFSFS;
+        private long myFormatTimestamp;
+        private int myReferencesCount;
+
+        public Entry(String key, FSFS fsfs) {
+            myKey = key;
+            myFSFS = fsfs;
+            myFormatTimestamp = fsfs.getDBFormatFile().lastModified();
+        }
+
+        public boolean isValid() {
+            long timestamp = myFSFS.getDBFormatFile().lastModified();
+            return timestamp != 0 && timestamp == myFormatTimestamp;
+        }
+
+        /**
+         * Catches a repository recreated within the timestamp granularity, checked before
+         * caches of an idle instance are reused.
+         */
+        public boolean hasSameUUID() {
+            FSFile uuidFile = new FSFile(myFSFS.getUUIDFile());
+            try {
+                return myFSFS.getUUID().equals(uuidFile.readLine(38));
+            } catch (SVNException e) {
+                return false;
+            } finally {
+                uuidFile.close();
+            }
+        }
+    }
+}
@@ -37,6 +37,8 @@ public class FSFile {
     
     private File myFile;
     private final byte[] myData;
+    private final ByteBuffer myMappedData;
+    private final FSFileHandlePool myHandlePool;
     private int myOffset;
     private int myLength;
     private FileChannel myChannel;
@@ -51,8 +53,31 @@ public class FSFile {
     private MessageDigest myDigest;
     
     public FSFile(File file) {
+        this(file, null, null);
+    }
+
+    /**
+     * Creates a reader over <code>mappedData</code>, a read-only view of the
+     * whole <code>file</code> contents (usually mapped into memory by {@link FSFS}).
+     * The buffer is duplicated, so one buffer may be shared by several readers.
+     */
+    public FSFile(File file, ByteBuffer mappedData) {
+        this(file, mappedData, null);
+    }
+
+    /**
+     * Creates a reader that takes the channel of an immutable <code>file</code> from
+     * <code>handlePool</code> and returns it there on {@link #close()}.
+     */
+    public FSFile(File file, FSFileHandlePool handlePool) {
+        this(file, null, handlePool);
+    }
+
+    private FSFile(File file, ByteBuffer mappedData, FSFileHandlePool handlePool) {
         myFile = file;
         myData = null;
+        myMappedData = mappedData != null ? mappedData.duplicate() : null;
+        myHandlePool = mappedData == null ? handlePool : null;
         myPosition = 0;
         myBufferPosition = 0;
         myBuffer = ByteBuffer.allocate(1024);
@@ -68,6 +93,8 @@ public class FSFile {
     public FSFile(byte[] data, int offset, int length) {
         myFile = null;
         myData = data;
+        myMappedData = null;
+        myHandlePool = null;
         myOffset = offset;
         myLength = length;
         myPosition = 0;
@@ -87,6 +114,9 @@ public class FSFile {
     }
 
     public long size() {
+        if (myMappedData != null) {
+            return myMappedData.capacity();
+        }
         return myData == null ? myFile.length() : myLength;
     }
     
@@ -320,6 +350,17 @@ public class FSFile {
             }
             return myData[((int) (myOffset + myPosition - 1))] & 0xff;
         }
+        if (myMappedData != null) {
+            if (myPosition >= myMappedData.capacity()) {
+                return -1;
+            }
+            int r = myMappedData.get((int) myPosition) & 0xFF;
+            if (myDigest != null) {
+                myDigest.update((byte) r);
+            }
+            myPosition++;
+            return r;
+        }
         if ((myChannel == null && myInputStream == null) || myPosition < myBufferPosition || myPosition >= myBufferPosition + myBuffer.limit()) {
             if (fill() <= 0) {
                 return -1;
@@ -345,6 +386,21 @@ public class FSFile {
             myPosition += couldRead;
             return couldRead > 0 ? couldRead : -1;
         }
+        if (myMappedData != null) {
+            int couldRead = (int) Math.min(myMappedData.capacity() - myPosition, target.remaining());
+            if (couldRead <= 0) {
+                return -1;
+            }
+            selectMappedData(couldRead);
+            if (myDigest != null) {
+                myDigest.update(myMappedData);
+                selectMappedData(couldRead);
+            }
+            target.put(myMappedData);
+            myMappedData.clear();
+            myPosition += couldRead;
+            return couldRead;
+        }
         int read = 0;
         while(target.hasRemaining()) {
             if (fill() < 0) {
@@ -375,6 +431,20 @@ public class FSFile {
             myPosition += couldRead;
             return couldRead > 0 ? couldRead : -1;
         }
+        if (myMappedData != null) {
+            int couldRead = (int) Math.min(myMappedData.capacity() - myPosition, length);
+            if (couldRead <= 0) {
+                return -1;
+            }
+            selectMappedData(couldRead);
+            myMappedData.get(buffer, offset, couldRead);
+            myMappedData.clear();
+            if (myDigest != null) {
+                myDigest.update(buffer, offset, couldRead);
+            }
+            myPosition += couldRead;
+            return couldRead;
+        }
         int read = 0;
         int toRead = length;
         while(toRead > 0) {
@@ -401,7 +471,9 @@ public class FSFile {
     }
 
     public void close() {
-        if (myChannel != null) {
+        if (myChannel != null && myHandlePool != null) {
+            myHandlePool.release(myFile, myChannel);
+        } else if (myChannel != null) {
             try {
                 myChannel.close();
             } catch (IOException e) {}
@@ -416,9 +488,9 @@ public class FSFile {
     private int fill() throws IOException {
         if ((myChannel == null && myInputStream == null) || myPosition < myBufferPosition || (myPosition >= myBufferPosition + myBuffer.limit())) {
             myBufferPosition = myPosition;
-            getChannel().position(myBufferPosition);
             myBuffer.clear();
-            int read = getChannel().read(myBuffer);
+            // positional read, the channel may be shared with other readers
+            int read = getChannel().read(myBuffer, myBufferPosition);
             myBuffer.position(0);
             myBuffer.limit(read >= 0 ? read : 0);
             return read;
@@ -426,6 +498,12 @@ public class FSFile {
         return 0;
     }
     
+    private void selectMappedData(int length) {
+        myMappedData.clear();
+        myMappedData.position((int) myPosition);
+        myMappedData.limit((int) myPosition + length);
+    }
+
     private void allocateReadBuffer(int limit) {
         if (limit > myReadLineBuffer.capacity()) {
             myReadLineBuffer = ByteBuffer.allocate(limit*3/2);
@@ -435,7 +513,9 @@ public class FSFile {
     }
     
     private FileChannel getChannel() throws IOException {
-        if (myChannel == null) {
+        if (myChannel == null && myHandlePool != null) {
+            myChannel = myHandlePool.acquire(myFile);
+        } else if (myChannel == null) {
             final FileInputStream fileInputStream = SVNFileUtil.createFileInputStream(myFile);
             myChannel = fileInputStream.getChannel();
             myInputStream = fileInputStream;
@@ -0,0 +1,170 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+/**
+ * Keeps read-only channels of immutable revision and pack files open between reads,
+ * so that walking a tree does not open and close the same file over and over.
+ * A channel is shared by all readers of the file, readers must use positional reads only.
+ *
+ * <p/>
+ * Channels that are not in use are closed when there are more than <code>maxIdleHandles</code>
+ * of them or when they were not used for <code>idleTimeout</code> milliseconds.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSFileHandlePool {
+
+    private final Map<File, Handle> myHandles;
+    private final int myMaxIdleHandles;
+    private final long myIdleTimeout;
+    private int myIdleHandlesCount;
+
+    private long myOpenCount;
+    private long myReuseCount;
+
+    public FSFileHandlePool(int maxIdleHandles, long idleTimeout) {
+        myHandles = new LinkedHashMap<File, Handle>(16, 0.75f, true);
+        myMaxIdleHandles = maxIdleHandles;
+        myIdleTimeout = idleTimeout;
+    }
+
+    public synchronized FileChannel acquire(File file) throws IOException {
+        Handle handle = myHandles.get(file);
+        if (handle != null && !handle.myChannel.isOpen()) {
+            // closed by an interrupted reader
+            removeHandle(file, handle);
+            handle = null;
+        }
+        if (handle == null) {
+            FileInputStream inputStream = SVNFileUtil.createFileInputStream(file);
+            handle = new Handle(inputStream);
+            myHandles.put(file, handle);
+            myOpenCount++;
+        } else {
+            if (handle.myRefCount == 0) {
+                myIdleHandlesCount--;
+            }
+            myReuseCount++;
+        }
+        handle.myRefCount++;
+        return handle.myChannel;
+    }
+
+    public synchronized void release(File file, FileChannel channel) {
+        Handle handle = myHandles.get(file);
+        if (handle == null || handle.myChannel != channel) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+            }
+            return;
+        }
+        handle.myRefCount--;
+        handle.myLastUsed = System.currentTimeMillis();
+        if (handle.myRefCount == 0) {
+            myIdleHandlesCount++;
+        }
+        closeIdleHandles(handle.myLastUsed);
+    }
+
+    /**
+     * Closes all channels that are not in use at the moment and forgets the rest,
+     * those are closed when released.
+     */
+    public synchronized void closeIdleHandles() {
+        for (Iterator<Handle> handles = myHandles.values().iterator(); handles.hasNext();) {
+            Handle handle = handles.next();
+            handles.remove();
+            if (handle.myRefCount == 0) {
+                handle.close();
+            }
+        }
+        myIdleHandlesCount = 0;
+    }
+
+    public synchronized int getOpenHandlesCount() {
+        return myHandles.size();
+    }
+
+    public synchronized int getIdleHandlesCount() {
+        return myIdleHandlesCount;
+    }
+
+    public synchronized long getOpenCount() {
+        return myOpenCount;
+    }
+
+    public synchronized long getReuseCount() {
+        return myReuseCount;
+    }
+
+    private void closeIdleHandles(long now) {
+        File eldestFile = null;
+        Handle eldestHandle = null;
+        for (Iterator<Map.Entry<File, Handle>> entries = myHandles.entrySet().iterator(); entries.hasNext();) {
+            Map.Entry<File, Handle> entry = entries.next();
+            Handle handle = entry.getValue();
+            if (handle.myRefCount != 0) {
+                continue;
+            }
+            if (now - handle.myLastUsed >= myIdleTimeout) {
+                entries.remove();
+                myIdleHandlesCount--;
+                handle.close();
+            } else if (eldestHandle == null) {
+                // handles are kept in access order
+                eldestFile = entry.getKey();
+                eldestHandle = handle;
+            }
+        }
+        if (myIdleHandlesCount > myMaxIdleHandles && eldestHandle != null) {
+            removeHandle(eldestFile, eldestHandle);
+        }
+    }
+
+    private void removeHandle(File file, Handle handle) {
+        myHandles.remove(file);
+        if (handle.myRefCount == 0) {
+            myIdleHandlesCount--;
+        }
+        handle.close();
+    }
+
+    private static class Handle {
+
+        private final FileInputStream myInputStream;
+        private final FileChannel myChannel;
+        private int myRefCount;
+        private long myLastUsed;
+
+        public Handle(FileInputStream inputStream) {
+            myInputStream = inputStream;
+            myChannel = inputStream.getChannel();
+        }
+
+        public void close() {
+            SVNFileUtil.closeFile(myInputStream);
+        }
+    }
+}
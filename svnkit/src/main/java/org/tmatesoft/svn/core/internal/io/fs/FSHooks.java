@@ -134,6 +134,10 @@ public class FSHooks {
         runHook(reposRootDir, SVN_REPOS_HOOK_START_COMMIT, args, null);
     }
 
+    public static boolean hasHook(File reposRootDir, String hookName) throws SVNException {
+        return getHookFile(reposRootDir, hookName) != null;
+    }
+
     public static void runPreCommitHook(File reposRootDir, String txnName) throws SVNException {
         runHook(reposRootDir, SVN_REPOS_HOOK_PRE_COMMIT, new String[] {txnName}, null);
     }
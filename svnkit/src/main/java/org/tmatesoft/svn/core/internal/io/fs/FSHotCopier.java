@@ -34,6 +34,19 @@ import org.tmatesoft.svn.util.SVNLogType;
 public class FSHotCopier {
 
     public void runHotCopy(FSFS srcOwner, File dstPath) throws SVNException {
+        runHotCopy(srcOwner, dstPath, false);
+    }
+
+    /**
+     * Copies the repository of <code>srcOwner</code> to <code>dstPath</code>. When <code>incremental</code>
+     * is set and <code>dstPath</code> already holds a copy of the same repository, only new revisions
+     * and packs, and files that differ in size or timestamp from their source are copied.
+     */
+    public void runHotCopy(FSFS srcOwner, File dstPath, boolean incremental) throws SVNException {
+        if (incremental && new FSFS(dstPath).getDBFormatFile().isFile()) {
+            runIncrementalHotCopy(srcOwner, dstPath);
+            return;
+        }
         FSWriteLock dbLogsLock = FSWriteLock.getDBLogsLock(srcOwner, false);
         File srcPath = srcOwner.getRepositoryRoot();
         synchronized (dbLogsLock) {
@@ -65,6 +78,35 @@ public class FSHotCopier {
         }
     }
 
+    private void runIncrementalHotCopy(FSFS srcOwner, File dstPath) throws SVNException {
+        FSWriteLock dbLogsLock = FSWriteLock.getDBLogsLock(srcOwner, false);
+        synchronized (dbLogsLock) {
+            try {
+                dbLogsLock.lock();
+                FSFS dstOwner = new FSFS(dstPath);
+                dstOwner.open();
+                try {
+                    FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(dstOwner);
+                    synchronized (writeLock) {
+                        try {
+                            writeLock.lock();
+                            updateRepositoryLayout(srcOwner.getRepositoryRoot(), dstPath);
+                            incrementalHotCopy(srcOwner, dstOwner);
+                        } finally {
+                            writeLock.unlock();
+                            FSWriteLock.release(writeLock);
+                        }
+                    }
+                } finally {
+                    dstOwner.close();
+                }
+            } finally {
+                dbLogsLock.unlock();
+                FSWriteLock.release(dbLogsLock);
+            }
+        }
+    }
+
     private void writeFSType(FSFS dstOwner, String fsType) throws SVNException {
         OutputStream fsTypeStream = null;
         try {
@@ -99,6 +141,26 @@ public class FSHotCopier {
         }
     }
 
+    private void updateRepositoryLayout(File srcPath, File dstPath) throws SVNException {
+        File[] children = srcPath.listFiles();
+        for (int i = 0; children != null && i < children.length; i++) {
+            File child = children[i];
+            String childName = child.getName();
+            if (childName.equals(FSFS.DB_DIR) || childName.equals(FSFS.LOCKS_DIR) ||
+                    childName.equals(FSFS.REPOS_FORMAT_FILE)) {
+                continue;
+            }
+
+            File dstChildPath = new File(dstPath, childName);
+            if (child.isDirectory()) {
+                dstChildPath.mkdirs();
+                updateRepositoryLayout(child, dstChildPath);
+            } else if (child.isFile()) {
+                copyIfChanged(child, dstChildPath);
+            }
+        }
+    }
+
     private void createReposDir(File dir) throws SVNException {
         if (dir.exists()) {
             File[] dstChildren = dir.listFiles();
@@ -135,6 +197,7 @@ public class FSHotCopier {
     private void hotCopy(FSFS srcOwner, FSFS dstOwner) throws SVNException {
         int format = srcOwner.readDBFormat();
         FSRepositoryUtil.checkReposDBFormat(format);
+        FSRepositoryUtil.checkWritableReposDBFormat(format);
         SVNFileUtil.copyFile(srcOwner.getCurrentFile(), dstOwner.getCurrentFile(), true);
         SVNFileUtil.copyFile(srcOwner.getUUIDFile(), dstOwner.getUUIDFile(), true);
 
@@ -201,6 +264,13 @@ public class FSHotCopier {
           }
 
         File dstRevPropsDir = dstOwner.getRevisionPropertiesRoot();
+        if (format >= FSFS.MIN_PACKED_REVPROP_FORMAT && maxFilesPerDirectory > 0 && min_unpacked_revprop > 0) {
+            for (long shard = 0; shard < min_unpacked_revprop / maxFilesPerDirectory; shard++) {
+                String packName = String.valueOf(shard) + FSFS.PACK_EXT;
+                SVNFileUtil.copyDirectory(new File(srcOwner.getRevisionPropertiesRoot(), packName), new File(dstRevPropsDir, packName), false, null);
+            }
+            SVNFileUtil.copyFile(srcOwner.getRevisionPropertiesFile(0, false), new File(new File(dstRevPropsDir, "0"), "0"), true);
+        }
         for (rev = min_unpacked_revprop; rev <= youngestRev; rev++) {
             File dstDir = dstRevPropsDir;
             if (maxFilesPerDirectory > 0) {
@@ -220,6 +290,10 @@ public class FSHotCopier {
         if (srcLocksDir.exists()) {
             SVNFileUtil.copyDirectory(srcLocksDir, dstOwner.getDBLocksDir(), false, null);
         }
+        File srcLocksDBFile = srcOwner.getLocksDBFile();
+        if (srcLocksDBFile.isFile()) {
+            copySqlJetDb(srcLocksDBFile, dstOwner.getLocksDBFile());
+        }
 
         File srcNodeOriginsDir = srcOwner.getNodeOriginsDir();
         if (srcNodeOriginsDir.exists()) {
@@ -229,6 +303,223 @@ public class FSHotCopier {
         if (format >= FSFS.MIN_CURRENT_TXN_FORMAT) {
             SVNFileUtil.copyFile(srcOwner.getTransactionCurrentFile(), dstOwner.getTransactionCurrentFile(), true);
         }
+        if (format >= FSFS.MIN_REP_SHARING_FORMAT) {
+            copyIfChanged(srcOwner.getConfigFile(), dstOwner.getConfigFile());
+            copyRepCache(srcOwner, dstOwner);
+        }
         dstOwner.writeDBFormat(format, maxFilesPerDirectory, false);
     }
+
+    private void incrementalHotCopy(FSFS srcOwner, FSFS dstOwner) throws SVNException {
+        int format = srcOwner.readDBFormat();
+        FSRepositoryUtil.checkReposDBFormat(format);
+        FSRepositoryUtil.checkWritableReposDBFormat(format);
+        if (format != dstOwner.getDBFormat()) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNSUPPORTED_FEATURE, "The FSFS format ({0}) of the hotcopy source does not match the " +
+                    "FSFS format ({1}) of the hotcopy destination; please upgrade both repositories to the same format",
+                    new Object[] {String.valueOf(format), String.valueOf(dstOwner.getDBFormat())});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        long maxFilesPerDirectory = srcOwner.getMaxFilesPerDirectory();
+        if (maxFilesPerDirectory != dstOwner.getMaxFilesPerDirectory()) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNSUPPORTED_FEATURE, "The sharding layout configuration of the FSFS filesystem " +
+                    "at ''{0}'' does not match the sharding layout configuration of the FSFS filesystem at ''{1}''",
+                    new Object[] {srcOwner.getRepositoryRoot(), dstOwner.getRepositoryRoot()});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        if (!srcOwner.getUUID().equals(dstOwner.getUUID())) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_UUID_MISMATCH, "The UUID of the hotcopy source does not match the UUID of the hotcopy destination");
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+
+        // 'current' is written last, so the copy never refers to revisions it does not have
+        byte[] current = SVNFileUtil.readFully(srcOwner.getCurrentFile());
+        long youngestRev = srcOwner.getYoungestRevision();
+        long dstYoungestRev = dstOwner.getYoungestRevision();
+        if (dstYoungestRev > youngestRev) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNSUPPORTED_FEATURE, "The hotcopy destination already contains more revisions ({0}) " +
+                    "than the hotcopy source contains ({1}); are source and destination swapped?",
+                    new Object[] {String.valueOf(dstYoungestRev), String.valueOf(youngestRev)});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+
+        long minUnpackedRevision = 0;
+        long dstMinUnpackedRevision = 0;
+        if (format >= FSFS.MIN_PACKED_FORMAT) {
+            minUnpackedRevision = srcOwner.getMinUnpackedRev();
+            dstMinUnpackedRevision = dstOwner.getMinUnpackedRev();
+            if (dstMinUnpackedRevision > minUnpackedRevision) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNSUPPORTED_FEATURE, "The hotcopy destination has more packed revisions ({0}) " +
+                        "than the hotcopy source ({1})", new Object[] {String.valueOf(dstMinUnpackedRevision), String.valueOf(minUnpackedRevision)});
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+        }
+        boolean packedRevisionProperties = format >= FSFS.MIN_PACKED_REVPROP_FORMAT && maxFilesPerDirectory > 0;
+
+        // packs of revisions never change, those the destination has are skipped
+        File dstRevsDir = dstOwner.getDBRevsDir();
+        File dstRevPropsDir = dstOwner.getRevisionPropertiesRoot();
+        for (long rev = dstMinUnpackedRevision; rev < minUnpackedRevision; rev += maxFilesPerDirectory) {
+            long packedShard = rev / maxFilesPerDirectory;
+            SVNFileUtil.copyDirectory(srcOwner.getPackDir(packedShard), dstOwner.getPackDir(packedShard), false, null);
+        }
+        if (packedRevisionProperties) {
+            for (long shard = 0; shard < minUnpackedRevision / maxFilesPerDirectory; shard++) {
+                String packName = String.valueOf(shard) + FSFS.PACK_EXT;
+                syncDirectory(new File(srcOwner.getRevisionPropertiesRoot(), packName), new File(dstRevPropsDir, packName));
+            }
+        }
+
+        for (long rev = Math.max(minUnpackedRevision, dstYoungestRev + 1); rev <= youngestRev; rev++) {
+            File dstDir = dstRevsDir;
+            if (maxFilesPerDirectory > 0) {
+                dstDir = new File(dstRevsDir, String.valueOf(rev / maxFilesPerDirectory));
+            }
+            SVNFileUtil.copyFile(srcOwner.getRevisionFile(rev), new File(dstDir, String.valueOf(rev)), true);
+        }
+
+        // revision properties may be changed at any time
+        long minUnpackedRevProp = packedRevisionProperties ? minUnpackedRevision : 0;
+        if (minUnpackedRevProp > 0) {
+            copyRevisionPropertiesIfChanged(srcOwner, dstOwner, 0);
+        }
+        for (long rev = minUnpackedRevProp; rev <= youngestRev; rev++) {
+            copyRevisionPropertiesIfChanged(srcOwner, dstOwner, rev);
+        }
+
+        if (minUnpackedRevision > dstMinUnpackedRevision) {
+            File tmpFile = SVNFileUtil.createUniqueFile(dstOwner.getDBRoot(), "tempfile", ".tmp", false);
+            SVNFileUtil.writeToFile(tmpFile, String.valueOf(minUnpackedRevision) + '\n', "UTF-8");
+            SVNFileUtil.rename(tmpFile, dstOwner.getMinUnpackedRevFile());
+            for (long rev = dstMinUnpackedRevision; rev < minUnpackedRevision; rev += maxFilesPerDirectory) {
+                long shard = rev / maxFilesPerDirectory;
+                // pooled handles and mappings of the destination would keep the shard files open
+                dstOwner.invalidatePackManifest(shard);
+                SVNFileUtil.deleteAll(new File(dstRevsDir, String.valueOf(shard)), true);
+                if (packedRevisionProperties) {
+                    File revPropsShardDir = new File(dstRevPropsDir, String.valueOf(shard));
+                    if (shard == 0) {
+                        for (long packedRev = 1; packedRev < maxFilesPerDirectory; packedRev++) {
+                            SVNFileUtil.deleteFile(new File(revPropsShardDir, String.valueOf(packedRev)));
+                        }
+                    } else {
+                        SVNFileUtil.deleteAll(revPropsShardDir, true);
+                    }
+                }
+            }
+        }
+
+        syncDirectory(srcOwner.getDBLocksDir(), dstOwner.getDBLocksDir());
+        copyLocksDB(srcOwner, dstOwner);
+        syncDirectory(srcOwner.getNodeOriginsDir(), dstOwner.getNodeOriginsDir());
+        if (format >= FSFS.MIN_REP_SHARING_FORMAT) {
+            copyIfChanged(srcOwner.getConfigFile(), dstOwner.getConfigFile());
+            copyRepCache(srcOwner, dstOwner);
+        }
+        if (format >= FSFS.MIN_CURRENT_TXN_FORMAT) {
+            copyIfChanged(srcOwner.getTransactionCurrentFile(), dstOwner.getTransactionCurrentFile());
+        }
+
+        File tmpCurrentFile = SVNFileUtil.createUniqueFile(dstOwner.getDBRoot(), "current", ".tmp", false);
+        SVNFileUtil.writeToFile(tmpCurrentFile, current);
+        SVNFileUtil.rename(tmpCurrentFile, dstOwner.getCurrentFile());
+    }
+
+    private void copyRevisionPropertiesIfChanged(FSFS srcOwner, FSFS dstOwner, long revision) throws SVNException {
+        File dstDir = dstOwner.getRevisionPropertiesRoot();
+        if (srcOwner.getMaxFilesPerDirectory() > 0) {
+            dstDir = new File(dstDir, String.valueOf(revision / srcOwner.getMaxFilesPerDirectory()));
+        }
+        dstDir.mkdirs();
+        copyIfChanged(srcOwner.getRevisionPropertiesFile(revision, false), new File(dstDir, String.valueOf(revision)));
+    }
+
+    private void copyLocksDB(FSFS srcOwner, FSFS dstOwner) throws SVNException {
+        File srcLocksDBFile = srcOwner.getLocksDBFile();
+        File dstLocksDBFile = dstOwner.getLocksDBFile();
+        if (!srcLocksDBFile.isFile()) {
+            // the source has moved its locks back to the digest store
+            SVNFileUtil.deleteFile(dstLocksDBFile);
+        } else if (isChanged(srcLocksDBFile, dstLocksDBFile)) {
+            copySqlJetDb(srcLocksDBFile, dstLocksDBFile);
+        }
+    }
+
+    private void copyRepCache(FSFS srcOwner, FSFS dstOwner) throws SVNException {
+        File srcRepCache = srcOwner.getRepositoryCacheFile();
+        File dstRepCache = dstOwner.getRepositoryCacheFile();
+        if (!srcRepCache.isFile() || !isChanged(srcRepCache, dstRepCache)) {
+            return;
+        }
+        // closes the destination instance cache so the file is not replaced under it
+        IFSRepresentationCacheManager dstCacheManager = dstOwner.getRepositoryCacheManager();
+        if (dstCacheManager != null) {
+            dstCacheManager.close();
+        }
+        copySqlJetDb(srcRepCache, dstRepCache);
+    }
+
+    /**
+     * Copies a SQLite database within a read transaction, so that no writer changes it meanwhile.
+     */
+    private static void copySqlJetDb(final File src, final File dst) throws SVNException {
+        final SVNSqlJetDb sqlJetDb = SVNSqlJetDb.open(src, SVNSqlJetDb.Mode.ReadOnly);
+        try {
+            SVNException e = (SVNException) sqlJetDb.getDb().runReadTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    try {
+                        SVNFileUtil.copyFile(src, dst, true);
+                    } catch (SVNException e) {
+                        return e;
+                    }
+                    return null;
+                }
+            });
+            if (e != null) {
+                throw e;
+            }
+        } catch (SqlJetException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SQLITE_ERROR, e);
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        } finally {
+            sqlJetDb.close();
+        }
+    }
+
+    /**
+     * Brings <code>dstDir</code> in line with <code>srcDir</code>: copies changed files and removes
+     * those missing in the source.
+     */
+    private void syncDirectory(File srcDir, File dstDir) throws SVNException {
+        File[] srcChildren = srcDir.listFiles();
+        if (srcChildren == null) {
+            SVNFileUtil.deleteAll(dstDir, true);
+            return;
+        }
+        dstDir.mkdirs();
+        for (int i = 0; i < srcChildren.length; i++) {
+            File dstChild = new File(dstDir, srcChildren[i].getName());
+            if (srcChildren[i].isDirectory()) {
+                syncDirectory(srcChildren[i], dstChild);
+            } else {
+                copyIfChanged(srcChildren[i], dstChild);
+            }
+        }
+        File[] dstChildren = dstDir.listFiles();
+        for (int i = 0; dstChildren != null && i < dstChildren.length; i++) {
+            if (!new File(srcDir, dstChildren[i].getName()).exists()) {
+                SVNFileUtil.deleteAll(dstChildren[i], true);
+            }
+        }
+    }
+
+    private void copyIfChanged(File src, File dst) throws SVNException {
+        if (src.isFile() && isChanged(src, dst)) {
+            SVNFileUtil.copyFile(src, dst, true);
+        }
+    }
+
+    private static boolean isChanged(File src, File dst) {
+        return !dst.isFile() || src.length() != dst.length() || src.lastModified() != dst.lastModified();
+    }
 }
@@ -83,14 +83,55 @@ public class FSInputStream extends InputStream {
         if (representation == null) {
             return SVNFileUtil.DUMMY_IN;
         }
-        return new FSInputStream(combiner, representation, owner);
+        return createStream(combiner, representation, owner);
     }
 
     public static InputStream createDeltaStream(SVNDeltaCombiner combiner, FSRepresentation fileRep, FSFS owner) throws SVNException {
         if (fileRep == null) {
             return SVNFileUtil.DUMMY_IN;
         }
-        return new FSInputStream(combiner, fileRep, owner);
+        return createStream(combiner, fileRep, owner);
+    }
+
+    private static InputStream createStream(SVNDeltaCombiner combiner, FSRepresentation representation, FSFS owner) throws SVNException {
+        if (!owner.isFulltextCacheable(representation)) {
+            return new FSInputStream(combiner, representation, owner);
+        }
+        FSCache<String, ByteBuffer> fulltextCache = owner.getFulltextCache();
+        String cacheKey = representation.getRevision() + "/" + representation.getOffset();
+        ByteBuffer fulltext = fulltextCache.get(cacheKey);
+        if (fulltext == null) {
+            fulltext = readFulltext(new FSInputStream(combiner, representation, owner), owner.isFulltextCacheOffHeap());
+            fulltextCache.put(cacheKey, fulltext);
+        }
+        return new FulltextInputStream(fulltext.duplicate());
+    }
+
+    private static ByteBuffer readFulltext(FSInputStream stream, boolean offHeap) throws SVNException {
+        byte[] fulltext = new byte[(int) stream.myLength];
+        try {
+            int length = 0;
+            while (length < fulltext.length) {
+                int read = stream.readContents(fulltext, length, fulltext.length - length);
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+            }
+            if (length < fulltext.length || stream.readContents(new byte[1], 0, 1) >= 0) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Representation length does not match its expanded size");
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+        } finally {
+            stream.close();
+        }
+        if (offHeap) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(fulltext.length);
+            buffer.put(fulltext);
+            buffer.flip();
+            return buffer;
+        }
+        return ByteBuffer.wrap(fulltext);
     }
 
     public int read(byte[] buf, int offset, int length) throws IOException {
@@ -307,6 +348,44 @@ public class FSInputStream extends InputStream {
         }
     }
 
+    private static class FulltextInputStream extends InputStream {
+
+        private ByteBuffer myFulltext;
+
+        public FulltextInputStream(ByteBuffer fulltext) {
+            myFulltext = fulltext;
+        }
+
+        public int read(byte[] buf, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!myFulltext.hasRemaining()) {
+                return -1;
+            }
+            length = Math.min(length, myFulltext.remaining());
+            myFulltext.get(buf, offset, length);
+            return length;
+        }
+
+        public int read() {
+            if (!myFulltext.hasRemaining()) {
+                return -1;
+            }
+            return myFulltext.get() & 0xFF;
+        }
+
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, myFulltext.remaining()));
+            myFulltext.position(myFulltext.position() + skipped);
+            return skipped;
+        }
+
+        public int available() {
+            return myFulltext.remaining();
+        }
+    }
+
     public static class FSRepresentationState {
         FSFile myFile;
         /* The starting offset for the raw svndiff/plaintext data minus header. */
@@ -0,0 +1,278 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Log-to-phys index of a revision or pack file of a format 7 repository with
+ * logical addressing. Maps (revision, item index) pairs to offsets in the file.
+ *
+ * <p/>
+ * The index is stored inside the revision (pack) file, its position is recorded in the footer
+ * at the very end of the file: <code>&lt;l2p offset&gt; &lt;l2p md5&gt; &lt;p2l offset&gt; &lt;p2l md5&gt;</code>
+ * followed by a single byte holding the footer length. The index itself starts with the
+ * header <code>&lt;first revision&gt; &lt;page size&gt; &lt;revision count&gt; &lt;page count&gt;</code>,
+ * followed by the page count of each revision, the size and entry count of each page and the pages.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSL2PIndex {
+
+    public static final String L2P_INDEX_PREFIX = "L2P-INDEX\n";
+
+    private final long myFirstRevision;
+    private final long[][] myOffsets;
+
+    private FSL2PIndex(long firstRevision, long[][] offsets) {
+        myFirstRevision = firstRevision;
+        myOffsets = offsets;
+    }
+
+    public long getFirstRevision() {
+        return myFirstRevision;
+    }
+
+    public int getRevisionCount() {
+        return myOffsets.length;
+    }
+
+    public long getOffset(long revision, long itemIndex) throws SVNException {
+        if (revision < myFirstRevision || revision >= myFirstRevision + myOffsets.length) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Revision {0} not covered by item index",
+                    String.valueOf(revision));
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        long[] offsets = myOffsets[(int) (revision - myFirstRevision)];
+        if (itemIndex < 0 || itemIndex >= offsets.length || offsets[(int) itemIndex] < 0) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Item index {0} too large in revision {1}",
+                    new Object[] { String.valueOf(itemIndex), String.valueOf(revision) });
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        return offsets[(int) itemIndex];
+    }
+
+    public long getWeight() {
+        long weight = 64;
+        for (int i = 0; i < myOffsets.length; i++) {
+            weight += 16 + 8 * myOffsets[i].length;
+        }
+        return weight;
+    }
+
+    public static FSL2PIndex fromFile(FSFile file) throws SVNException {
+        long size = file.size();
+        if (size < 2) {
+            indexCorrupt(file, "File too short to hold an index footer");
+        }
+        int footerLength = readBytes(file, size - 1, 1)[0] & 0xFF;
+        if (footerLength == 0 || footerLength > size - 1) {
+            indexCorrupt(file, "Invalid index footer length");
+        }
+        long footerOffset = size - 1 - footerLength;
+        String footer = null;
+        try {
+            footer = new String(readBytes(file, footerOffset, footerLength), "US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            footer = new String(readBytes(file, footerOffset, footerLength));
+        }
+        String[] fields = footer.split(" ");
+        long l2pOffset = -1;
+        long p2lOffset = -1;
+        if (fields.length == 4) {
+            try {
+                l2pOffset = Long.parseLong(fields[0]);
+                p2lOffset = Long.parseLong(fields[2]);
+            } catch (NumberFormatException nfe) {
+                l2pOffset = -1;
+            }
+        }
+        if (l2pOffset < 0 || p2lOffset < l2pOffset || p2lOffset > footerOffset || p2lOffset - l2pOffset > Integer.MAX_VALUE) {
+            indexCorrupt(file, "Invalid index footer ''" + footer + "''");
+        }
+        byte[] index = readBytes(file, l2pOffset, (int) (p2lOffset - l2pOffset));
+        String checksum = computeChecksum(index);
+        if (!checksum.equals(fields[1])) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CHECKSUM_MISMATCH,
+                    "Checksum mismatch in item index of ''{0}'':\n   expected:  {1}\n     actual:  {2}\n",
+                    new Object[] { file.getFile(), fields[1], checksum });
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        return fromBytes(file, index);
+    }
+
+    private static FSL2PIndex fromBytes(FSFile file, byte[] data) throws SVNException {
+        byte[] prefix = L2P_INDEX_PREFIX.getBytes();
+        if (data.length < prefix.length) {
+            indexCorrupt(file, "Missing item index header");
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                indexCorrupt(file, "Missing item index header");
+            }
+        }
+        Decoder decoder = new Decoder(file, data, prefix.length);
+        long firstRevision = decoder.readNumber();
+        int pageSize = decoder.readCount();
+        int revisionCount = decoder.readCount();
+        int pageCount = decoder.readCount();
+        if (pageSize == 0) {
+            indexCorrupt(file, "Item index page size must not be 0");
+        }
+
+        int[] revisionPageCounts = new int[revisionCount];
+        long totalPages = 0;
+        for (int i = 0; i < revisionCount; i++) {
+            revisionPageCounts[i] = decoder.readCount();
+            totalPages += revisionPageCounts[i];
+        }
+        if (totalPages != pageCount) {
+            indexCorrupt(file, "Item index page count mismatch");
+        }
+        int[] pageSizes = new int[pageCount];
+        int[] entryCounts = new int[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            pageSizes[i] = decoder.readCount();
+            entryCounts[i] = decoder.readCount();
+            if (entryCounts[i] > pageSize) {
+                indexCorrupt(file, "Item index page has too many entries");
+            }
+        }
+
+        long[][] offsets = new long[revisionCount][];
+        int page = 0;
+        for (int i = 0; i < revisionCount; i++) {
+            int itemsCount = 0;
+            for (int j = 0; j < revisionPageCounts[i]; j++) {
+                itemsCount = j * pageSize + entryCounts[page + j];
+            }
+            long[] revisionOffsets = new long[itemsCount];
+            for (int j = 0; j < revisionPageCounts[i]; j++, page++) {
+                int pageEnd = decoder.getPosition() + pageSizes[page];
+                long lastValue = 0;
+                for (int k = 0; k < entryCounts[page]; k++) {
+                    long value = decoder.readNumber();
+                    lastValue += (value & 1) != 0 ? -1 - (value >>> 1) : (value >>> 1);
+                    revisionOffsets[j * pageSize + k] = lastValue - 1;
+                }
+                if (decoder.getPosition() > pageEnd) {
+                    indexCorrupt(file, "Item index page exceeds its size");
+                }
+                decoder.setPosition(pageEnd);
+            }
+            offsets[i] = revisionOffsets;
+        }
+        return new FSL2PIndex(firstRevision, offsets);
+    }
+
+    private static byte[] readBytes(FSFile file, long offset, int length) throws SVNException {
+        byte[] bytes = new byte[length];
+        file.seek(offset);
+        int read = 0;
+        try {
+            while (read < length) {
+                int count = file.read(bytes, read, length - read);
+                if (count < 0) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.STREAM_UNEXPECTED_EOF,
+                            "Unexpected end of file ''{0}''", file.getFile());
+                    SVNErrorManager.error(err, SVNLogType.FSFS);
+                }
+                read += count;
+            }
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getMessage());
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        }
+        return bytes;
+    }
+
+    private static String computeChecksum(byte[] data) throws SVNException {
+        MessageDigest digest = null;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "MD5 implementation not found: {0}", e.getLocalizedMessage());
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        }
+        digest.update(data);
+        return SVNFileUtil.toHexDigest(digest);
+    }
+
+    private static void indexCorrupt(FSFile file, String message) throws SVNException {
+        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Corrupt item index in ''{0}'': {1}",
+                new Object[] { file.getFile(), message });
+        SVNErrorManager.error(err, SVNLogType.FSFS);
+    }
+
+    /**
+     * Reads unsigned numbers stored 7 bits per byte, least significant group first,
+     * with the high bit set on all but the last byte.
+     */
+    private static class Decoder {
+
+        private final FSFile myFile;
+        private final byte[] myData;
+        private int myPosition;
+
+        public Decoder(FSFile file, byte[] data, int position) {
+            myFile = file;
+            myData = data;
+            myPosition = position;
+        }
+
+        public long readNumber() throws SVNException {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                if (myPosition >= myData.length || shift > 63) {
+                    indexCorrupt(myFile, "Unexpected end of item index");
+                }
+                int b = myData[myPosition++] & 0xFF;
+                value |= ((long) (b & 0x7F)) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+            }
+        }
+
+        public int readCount() throws SVNException {
+            long value = readNumber();
+            if (value > Integer.MAX_VALUE) {
+                indexCorrupt(myFile, "Item index value out of range");
+            }
+            return (int) value;
+        }
+
+        public int getPosition() {
+            return myPosition;
+        }
+
+        public void setPosition(int position) throws SVNException {
+            if (position > myData.length) {
+                indexCorrupt(myFile, "Unexpected end of item index");
+            }
+            myPosition = position;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.tmatesoft.svn.core.ISVNLogEntryHandler;
 import org.tmatesoft.svn.core.SVNErrorCode;
@@ -31,6 +32,7 @@ import org.tmatesoft.svn.core.SVNMergeInfo;
 import org.tmatesoft.svn.core.SVNMergeInfoInheritance;
 import org.tmatesoft.svn.core.SVNMergeRange;
 import org.tmatesoft.svn.core.SVNMergeRangeList;
+import org.tmatesoft.svn.core.SVNNodeKind;
 import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.SVNPropertyValue;
@@ -40,6 +42,7 @@ import org.tmatesoft.svn.core.internal.util.SVNHashMap;
 import org.tmatesoft.svn.core.internal.util.SVNHashSet;
 import org.tmatesoft.svn.core.internal.util.SVNMergeInfoUtil;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNMergeDriver;
 import org.tmatesoft.svn.core.internal.wc.SVNMergeInfoManager;
 import org.tmatesoft.svn.core.io.ISVNLocationSegmentHandler;
@@ -47,6 +50,7 @@ import org.tmatesoft.svn.core.io.SVNLocationEntry;
 import org.tmatesoft.svn.core.io.SVNLocationSegment;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.util.SVNLogType;
 
 
 /**
@@ -165,6 +169,13 @@ public class FSLog {
             return count;
         }
 
+        if (!myIsIncludeMergedRevisions) {
+            FSChangedPathsIndex changedPathsIndex = myFSFS.getChangedPathsIndex(myEndRevision);
+            if (changedPathsIndex != null) {
+                return doIndexedLogs(changedPathsIndex);
+            }
+        }
+
         Map logTargetHistoryAsMergeInfo = null;
         if (myIsIncludeMergedRevisions) {
             logTargetHistoryAsMergeInfo = getPathsHistoryAsMergeInfo(myPaths, myStartRevision, myEndRevision);
@@ -172,6 +183,29 @@ public class FSLog {
         return doLogs(myPaths, logTargetHistoryAsMergeInfo, null, myStartRevision, myEndRevision, myIsIncludeMergedRevisions, false, false, myIsDescending, myLimit);
     }
     
+    private long doIndexedLogs(FSChangedPathsIndex changedPathsIndex) throws SVNException {
+        FSRevisionRoot root = myFSFS.createRevisionRoot(myEndRevision);
+        TreeSet revisions = new TreeSet();
+        for (int i = 0; i < myPaths.length; i++) {
+            String path = SVNPathUtil.canonicalizeAbsolutePath(myPaths[i]);
+            if (root.checkNodeKind(path) == SVNNodeKind.NONE) {
+                SVNErrorManager.error(FSErrors.errorNotFound(root, path), SVNLogType.FSFS);
+            }
+            changedPathsIndex.collectHistoryRevisions(path, myStartRevision, myEndRevision, myIsStrictNode, revisions);
+        }
+
+        long sendCount = 0;
+        for (Iterator revs = myIsDescending ? revisions.descendingIterator() : revisions.iterator(); revs.hasNext();) {
+            long revision = ((Long) revs.next()).longValue();
+            sendLog(revision, null, null, false, false, false);
+            sendCount++;
+            if (myLimit > 0 && sendCount >= myLimit) {
+                break;
+            }
+        }
+        return sendCount;
+    }
+
     private long doLogs(String[] paths, Map logTargetHistoryAsMergeinfo, Set nestedMerges, long startRevision, long endRevision, boolean includeMergedRevisions, 
             boolean subtractiveMerge, boolean handlingMergedRevisions, boolean isDescendingOrder, long limit) throws SVNException {
         long sendCount = 0;
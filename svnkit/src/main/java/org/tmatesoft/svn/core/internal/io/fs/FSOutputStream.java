@@ -60,6 +60,8 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
     private boolean myIsClosed;
     private boolean myIsCompress;
     private FSWriteLock myTxnLock;
+    private FSDeltaPipeline myDeltaPipeline;
+    private int myDeltaThreads;
 
     private FSOutputStream(FSRevisionNode revNode, CountingOutputStream targetFileOS, File targetFile, InputStream source, long deltaStart, 
             long repSize, long repOffset, FSTransactionRoot txnRoot, boolean compress, FSWriteLock txnLock) throws SVNException {
@@ -77,6 +79,8 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
         myTxnLock = txnLock;
         myDeltaGenerator = new SVNDeltaGenerator(SVN_DELTA_WINDOW_SIZE);
         myTextBuffer = new ByteArrayOutputStream();
+        // the setting may change while the stream is written, but a stream either uses the pipeline or not
+        myDeltaThreads = FSFS.getDefaultDeltaThreads();
 
         try {
             myMD5Digest = MessageDigest.getInstance("MD5");
@@ -111,6 +115,8 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
         mySHA1Digest.reset();
         myTextBuffer.reset();
         myTxnLock = txnLock;
+        myDeltaPipeline = null;
+        myDeltaThreads = FSFS.getDefaultDeltaThreads();
     }
 
     public static OutputStream createStream(FSRevisionNode revNode, FSTransactionRoot txnRoot, OutputStream dstStream, boolean compress) throws SVNException {
@@ -190,27 +196,33 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
     }
 
     public void write(byte[] b, int off, int len) throws IOException {
-        myMD5Digest.update(b, off, len);
-        mySHA1Digest.update(b, off, len);
         myRepSize += len;
-        int toWrite = 0;
-        while (len > 0) {
-            toWrite = len;
-            myTextBuffer.write(b, off, toWrite);
-            if (myTextBuffer.size() >= WRITE_BUFFER_SIZE) {
-                try {
-                    ByteArrayInputStream target = new ByteArrayInputStream(myTextBuffer.toByteArray());
-                    myDeltaGenerator.sendDelta(null, mySourceStream, mySourceOffset, target, this, false);
-                } catch (SVNException svne) {
-                    throw new IOException(svne.getMessage());
-                }
-                myTextBuffer.reset();
+        myTextBuffer.write(b, off, len);
+        if (myTextBuffer.size() >= WRITE_BUFFER_SIZE) {
+            try {
+                flushTextBuffer();
+            } catch (SVNException svne) {
+                throw new IOException(svne.getMessage());
             }
-            off += toWrite;
-            len -= toWrite;
         }
     }
 
+    private void flushTextBuffer() throws SVNException {
+        byte[] text = myTextBuffer.toByteArray();
+        myTextBuffer.reset();
+        if (myDeltaPipeline == null && myDeltaThreads > 0) {
+            // contents do not fit into one buffer, let workers compute digests and delta windows
+            myDeltaPipeline = new FSDeltaPipeline(myTargetFileOS, mySourceStream, myIsCompress, myMD5Digest, mySHA1Digest, myDeltaThreads);
+        }
+        if (myDeltaPipeline != null) {
+            myDeltaPipeline.write(text, 0, text.length);
+            return;
+        }
+        myMD5Digest.update(text);
+        mySHA1Digest.update(text);
+        myDeltaGenerator.sendDelta(null, mySourceStream, mySourceOffset, new ByteArrayInputStream(text), this, false);
+    }
+
     public void close() throws IOException {
         if (myIsClosed) {
             return;
@@ -218,8 +230,13 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
         myIsClosed = true;
         final long truncateToSize[] = new long[] {-1};
         try {
-            ByteArrayInputStream target = new ByteArrayInputStream(myTextBuffer.toByteArray());
-            myDeltaGenerator.sendDelta(null, mySourceStream, mySourceOffset, target, this, false);
+            if (myDeltaPipeline != null) {
+                byte[] text = myTextBuffer.toByteArray();
+                myDeltaPipeline.write(text, 0, text.length);
+                myDeltaPipeline.finish();
+            } else {
+                flushTextBuffer();
+            }
 
             final FSRepresentation rep = new FSRepresentation();
             rep.setOffset(myRepOffset);
@@ -239,7 +256,7 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
             
             FSFS fsfs = myTxnRoot.getOwner();
             final IFSRepresentationCacheManager reposCacheManager = fsfs.getRepositoryCacheManager();
-            if (reposCacheManager != null) {
+            if (reposCacheManager != null && reposCacheManager.mayContainRepresentation(rep.getSHA1HexDigest())) {
                 try {
                     reposCacheManager.runReadTransaction(new IFSSqlJetTransaction() {
                         public void run() throws SVNException {
@@ -266,6 +283,9 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
         } catch (SVNException svne) {
             throw new IOException(svne.getMessage());
         } finally {
+            if (myDeltaPipeline != null) {
+                myDeltaPipeline.abort();
+            }
             closeStreams(truncateToSize[0]);
             try {
                 myTxnLock.unlock();
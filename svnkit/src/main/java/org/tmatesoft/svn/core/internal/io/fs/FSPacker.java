@@ -15,8 +15,19 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNCancelException;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
@@ -64,6 +75,7 @@ public class FSPacker {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_UNSUPPORTED_FORMAT, "FS format too old to pack, please upgrade.");
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
+        FSRepositoryUtil.checkWritableReposDBFormat(format);
 
         long maxFilesPerDirectory = fsfs.getMaxFilesPerDirectory();
         if (maxFilesPerDirectory <= 0) {
@@ -86,22 +98,121 @@ public class FSPacker {
             return;
         }
 
-        for (long i = minUnpackedRev / maxFilesPerDirectory; i < completedShards; i++) {
+        long firstShard = minUnpackedRev / maxFilesPerDirectory;
+        int threads = FSFS.getDefaultPackThreads();
+        if (threads > 1 && completedShards - firstShard > 1) {
+            packShardsInParallel(fsfs, firstShard, completedShards, packRevisionProperties, threads);
+            return;
+        }
+        for (long i = firstShard; i < completedShards; i++) {
             myCanceller.checkCancelled();
             packShard(fsfs, i, packRevisionProperties);
         }
     }
 
+    /**
+     * Writes packs of shards on worker threads. Packs of a shard do not replace anything until 
+     * <code>min-unpacked-rev</code> is moved past it, which is done here for one shard after another, 
+     * so an interrupted run leaves the repository as consistent as the sequential one.
+     */
+    private void packShardsInParallel(final FSFS fsfs, long firstShard, long completedShards, final boolean packRevisionProperties, int threads) throws SVNException {
+        final AtomicBoolean aborted = new AtomicBoolean();
+        final ISVNCanceller workerCanceller = new ISVNCanceller() {
+            public void checkCancelled() throws SVNCancelException {
+                if (aborted.get()) {
+                    SVNErrorManager.cancel("Packing aborted", SVNLogType.FSFS);
+                }
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger myThreadNumber = new AtomicInteger(1);
+
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "svnkit-fs-pack-thread-" + myThreadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        LinkedList<Future<Object>> pendingShards = new LinkedList<Future<Object>>();
+        long nextShard = firstShard;
+        try {
+            for (long shard = firstShard; shard < completedShards; shard++) {
+                while (nextShard < completedShards && pendingShards.size() < threads + 1) {
+                    myCanceller.checkCancelled();
+                    final long shardToPack = nextShard++;
+                    pendingShards.add(executor.submit(new Callable<Object>() {
+                        public Object call() throws Exception {
+                            writeShardPacks(fsfs, shardToPack, packRevisionProperties, workerCanceller);
+                            return null;
+                        }
+                    }));
+                }
+                // events of a shard are sent together, as in the sequential run
+                firePackEvent(shard, true);
+                if (packRevisionProperties) {
+                    firePackEvent(shard, true);
+                }
+                waitForShard(pendingShards.removeFirst());
+                myCanceller.checkCancelled();
+                finishShard(fsfs, shard, packRevisionProperties);
+            }
+        } finally {
+            aborted.set(true);
+            executor.shutdown();
+            // workers must not write packs once the write lock is released
+            boolean interrupted = false;
+            while (!executor.isTerminated()) {
+                try {
+                    executor.awaitTermination(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void waitForShard(Future<Object> future) throws SVNException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Packing interrupted");
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SVNException) {
+                throw (SVNException) e.getCause();
+            }
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Packing failed: {0}", e.getCause());
+            SVNErrorManager.error(err, e.getCause(), SVNLogType.FSFS);
+        }
+    }
+
     private void packShard(FSFS fsfs, long shard, boolean packRevisionProperties) throws SVNException {
-        File revShardPath = new File(fsfs.getDBRevsDir(), String.valueOf(shard));
-        File revpropShardPath = new File(fsfs.getRevisionPropertiesRoot(), String.valueOf(shard));
-        packRevShard(fsfs, shard, revShardPath);
+        firePackEvent(shard, true);
+        packRevShard(fsfs, shard, new File(fsfs.getDBRevsDir(), String.valueOf(shard)), myCanceller);
 
         if (packRevisionProperties) {
             myCanceller.checkCancelled();
-            packRevPropShard(fsfs, shard, revpropShardPath, (long)(0.9 * fsfs.getRevPropPackSize()));
+            firePackEvent(shard, true);
+            packRevPropShard(fsfs, shard, new File(fsfs.getRevisionPropertiesRoot(), String.valueOf(shard)), (long)(0.9 * fsfs.getRevPropPackSize()));
+        }
+        finishShard(fsfs, shard, packRevisionProperties);
+    }
+
+    private void writeShardPacks(FSFS fsfs, long shard, boolean packRevisionProperties, ISVNCanceller canceller) throws SVNException {
+        packRevShard(fsfs, shard, new File(fsfs.getDBRevsDir(), String.valueOf(shard)), canceller);
+        if (packRevisionProperties) {
+            canceller.checkCancelled();
+            packRevPropShard(fsfs, shard, new File(fsfs.getRevisionPropertiesRoot(), String.valueOf(shard)), (long)(0.9 * fsfs.getRevPropPackSize()));
         }
+    }
 
+    private void finishShard(FSFS fsfs, long shard, boolean packRevisionProperties) throws SVNException {
+        File revShardPath = new File(fsfs.getDBRevsDir(), String.valueOf(shard));
+        File revpropShardPath = new File(fsfs.getRevisionPropertiesRoot(), String.valueOf(shard));
+        fsfs.invalidatePackManifest(shard);
 
         File finalPath = fsfs.getMinUnpackedRevFile();
         File tmpFile = SVNFileUtil.createUniqueFile(fsfs.getDBRoot(), "tempfile", ".tmp", false);
@@ -130,14 +241,12 @@ public class FSPacker {
         }
     }
 
-    private void packRevShard(FSFS fsfs, long shard, File shardPath) throws SVNException {
+    private void packRevShard(FSFS fsfs, long shard, File shardPath, ISVNCanceller canceller) throws SVNException {
         File packDir = fsfs.getPackDir(shard);
         File packFile = fsfs.getPackFile(shard);
         File manifestFile = fsfs.getManifestFile(shard);
 
-        firePackEvent(shard, true);
-
-        SVNFileUtil.deleteAll(packDir, false, myCanceller);
+        SVNFileUtil.deleteAll(packDir, false, canceller);
 
         long startRev = shard * fsfs.getMaxFilesPerDirectory();
         long endRev = (shard + 1) * fsfs.getMaxFilesPerDirectory() - 1;
@@ -155,7 +264,7 @@ public class FSPacker {
                 InputStream revIS = null;
                 try {
                     revIS = SVNFileUtil.openFileForReading(path);
-                    FSRepositoryUtil.copy(revIS, packFileOS, myCanceller);
+                    FSRepositoryUtil.copy(revIS, packFileOS, canceller);
                 } finally {
                     SVNFileUtil.closeFile(revIS);
                 }
@@ -180,8 +289,6 @@ public class FSPacker {
     private void packRevPropShard(FSFS fsfs, long shard, File shardPath, long maxPackSize) throws SVNException {
         File packPath = new File(fsfs.getRevisionPropertiesRoot(), String.valueOf(shard) + FSFS.PACK_EXT);
 
-        firePackEvent(shard, true);
-
         long startRev = shard * fsfs.getMaxFilesPerDirectory();
         long endRev = (shard + 1) * fsfs.getMaxFilesPerDirectory() - 1;
         if (startRev == 0) {
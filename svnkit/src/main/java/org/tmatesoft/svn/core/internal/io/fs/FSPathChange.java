@@ -172,6 +172,14 @@ public class FSPathChange extends SVNLogEntryPath {
         }
 
         String pathStr = changeLine.substring(delimiterInd + 1);
+        if (!pathStr.startsWith("/")) {
+            // format 7 may also record whether svn:mergeinfo was modified
+            delimiterInd = pathStr.indexOf(' ');
+            String mergeinfoModStr = delimiterInd == -1 ? null : pathStr.substring(0, delimiterInd);
+            if (FSPathChange.FLAG_TRUE.equals(mergeinfoModStr) || FSPathChange.FLAG_FALSE.equals(mergeinfoModStr)) {
+                pathStr = pathStr.substring(delimiterInd + 1);
+            }
+        }
         
         String copyfromPath = null;
         long copyfromRevision = SVNRepository.INVALID_REVISION;
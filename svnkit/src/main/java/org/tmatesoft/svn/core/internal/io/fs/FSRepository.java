@@ -75,6 +75,7 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
     private FSUpdateContext myReporterContext;
     private FSLocationsFinder myLocationsFinder;
     private FSFS myFSFS;
+    private FSFS myAcquiredFSFS;
     private SVNMergeInfoManager myMergeInfoManager;
     private FSLog myLogDriver;
     private boolean myIsHooksEnabled;
@@ -84,11 +85,12 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
         setHooksEnabled(true);
     }
 
+    /**
+     * Takes effect from the next repository access, instances with and without hooks
+     * are shared separately.
+     */
     public void setHooksEnabled(boolean enabled) {
         myIsHooksEnabled = enabled;
-        if (getFSFS() != null) {
-            getFSFS().setHooksEnabled(isHooksEnabled());
-        }
     }
     
     public boolean isHooksEnabled() {
@@ -478,7 +480,6 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
             openRepository();
             path = getRepositoryPath(path);
 
-            File digestFile = myFSFS.getDigestFileFromRepositoryPath(path);
             final ArrayList locks = new ArrayList();
             ISVNLockHandler handler = new ISVNLockHandler() {
 
@@ -490,7 +491,7 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
                 }
             };
 
-            myFSFS.walkDigestFiles(digestFile, handler, false);
+            myFSFS.walkLocks(path, handler, false);
 
             return (SVNLock[]) locks.toArray(new SVNLock[locks.size()]);
         } finally {
@@ -620,7 +621,13 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
     public FSTranslateReporter beginReport(long revision, SVNURL url, String target, boolean ignoreAncestry,
             boolean sendTextDeltas, boolean sendCopyFromArgs, SVNDepth depth, ISVNEditor editor) throws SVNException {
         openRepository();
-        makeReporterContext(revision, target, url, depth, ignoreAncestry, sendTextDeltas, sendCopyFromArgs, editor);
+        try {
+            makeReporterContext(revision, target, url, depth, ignoreAncestry, sendTextDeltas, sendCopyFromArgs, editor);
+        } catch (SVNException svne) {
+            closeRepository();
+            throw svne;
+        }
+        // the repository is closed by the reporter once the report is finished or aborted
         return new FSTranslateReporter(this);
     }
 
@@ -732,8 +739,9 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
     }
 
     void closeRepository() throws SVNException {
-        if (myFSFS != null) {
-            myFSFS.close();
+        if (myAcquiredFSFS != null) {
+            FSFSRegistry.release(myAcquiredFSFS);
+            myAcquiredFSFS = null;
         }
         unlock();
     }
@@ -820,9 +828,8 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
 
         myReposRootDir = hasCustomHostName ? new File("\\\\" + hostName, dirPath).getAbsoluteFile() :
                                              new File(dirPath).getAbsoluteFile();
-        myFSFS = new FSFS(myReposRootDir);
-        myFSFS.setHooksEnabled(isHooksEnabled());
-        myFSFS.open();
+        myFSFS = FSFSRegistry.acquire(myReposRootDir, isHooksEnabled());
+        myAcquiredFSFS = myFSFS;
         setRepositoryCredentials(myFSFS.getUUID(), getLocation().setPath(rootPath, false));
     }
 
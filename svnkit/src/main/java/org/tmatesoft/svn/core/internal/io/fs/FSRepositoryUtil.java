@@ -268,6 +268,16 @@ public class FSRepositoryUtil {
     }
     
     public static void loadRootChangesOffset(FSFS fsfs, long revision, FSFile file, long[] rootOffset, long[] changesOffset) throws SVNException {
+        if (fsfs.isLogicalAddressing()) {
+            // there is no trailer, root node and changes are items with fixed indexes
+            if (changesOffset != null && changesOffset.length > 0) {
+                changesOffset[0] = fsfs.getItemOffset(revision, FSFS.ITEM_INDEX_CHANGES);
+            }
+            if (rootOffset != null && rootOffset.length > 0) {
+                rootOffset[0] = fsfs.getItemOffset(revision, FSFS.ITEM_INDEX_ROOT_NODE);
+            }
+            return;
+        }
         ByteBuffer buffer = ByteBuffer.allocate(64);
         long offset = 0; 
 
@@ -394,14 +404,28 @@ public class FSRepositoryUtil {
                     new Integer(FSFS.MIN_PACKED_REVPROP_SQLITE_DEV_FORMAT));
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        if (format < FSFS.DB_FORMAT_LOW || format > FSFS.DB_FORMAT) {
+        if (format < FSFS.DB_FORMAT_LOW || format > FSFS.MAX_READABLE_DB_FORMAT) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_UNSUPPORTED_FORMAT, 
                     "Expected FS format between ''{0}'' and ''{1}''; found format ''{2}''", 
-                    new Object[] {new Integer(FSFS.DB_FORMAT_LOW), new Integer(FSFS.DB_FORMAT), 
+                    new Object[] {new Integer(FSFS.DB_FORMAT_LOW), new Integer(FSFS.MAX_READABLE_DB_FORMAT), 
                     new Integer(format)});
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
     }
+
+    /**
+     * Writing format 7 repositories is not supported: commits would have to maintain the log-to-phys
+     * and phys-to-log indexes, pack and hot copy would have to rewrite them. Such repositories
+     * can be read, and their revision properties and locks changed, but not committed to, packed or hot copied.
+     */
+    public static void checkWritableReposDBFormat(int format) throws SVNException {
+        if (format > FSFS.DB_FORMAT) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_UNSUPPORTED_FORMAT, 
+                    "FS format ''{0}'' is supported for reading only; commits, pack and hotcopy need format ''{1}'' or lower", 
+                    new Object[] {new Integer(format), new Integer(FSFS.DB_FORMAT)});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+    }
     
     public static void validateProperty(String propertyName, SVNPropertyValue propertyValue) throws SVNException {
         if (!SVNProperty.isRegularProperty(propertyName)) {
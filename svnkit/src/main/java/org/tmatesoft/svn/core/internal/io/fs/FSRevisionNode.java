@@ -619,8 +619,26 @@ public class FSRevisionNode {
             return null;
         }
 
-        long count = getCount();
-        count = count & (count - 1);
+        long predecessors = getCount();
+        long fulltextInterval = fsfsOwner.getFulltextInterval();
+        if (fulltextInterval > 0 && predecessors % fulltextInterval == 0) {
+            return null;
+        }
+
+        long count = predecessors & (predecessors - 1);
+        long walk = predecessors - count;
+        long maxWalk = fsfsOwner.getMaxDeltificationWalk();
+        if (maxWalk >= 0 && walk > maxWalk) {
+            return null;
+        }
+        if (walk < fsfsOwner.getMaxLinearDeltification()) {
+            count = predecessors - 1;
+        }
+        if (fulltextInterval > 0) {
+            // never delta across the last stored fulltext, so chains stay within one interval
+            count = Math.max(count, predecessors - predecessors % fulltextInterval);
+        }
+
         FSRevisionNode baseNode = this;
         while ((count++) < getCount()) {
             baseNode = fsfsOwner.getRevisionNode(baseNode.getPredecessorId());
@@ -96,6 +96,9 @@ public class FSRevisionRoot extends FSRoot {
     }
 
     public FSRevisionNode getRootRevisionNode() throws SVNException {
+        if (myRootRevisionNode == null) {
+            myRootRevisionNode = getOwner().fetchRevisionNodeFromCache(getRevision(), "/");
+        }
         if (myRootRevisionNode == null) {
             FSFile file = getOwner().getPackOrRevisionFSFile(getRevision());
             try {
@@ -106,10 +109,26 @@ public class FSRevisionRoot extends FSRoot {
             } finally {
                 file.close();
             }
+            getOwner().putRevisionNodeToCache(getRevision(), "/", myRootRevisionNode);
         }
         return myRootRevisionNode;
     }
 
+    public void putRevNodeToCache(String path, FSRevisionNode node) throws SVNException {
+        checkCachePath(path);
+        getOwner().putRevisionNodeToCache(getRevision(), path, node);
+    }
+
+    public void removeRevNodeFromCache(String path) throws SVNException {
+        checkCachePath(path);
+        getOwner().removeRevisionNodeFromCache(getRevision(), path);
+    }
+
+    protected FSRevisionNode fetchRevNodeFromCache(String path) throws SVNException {
+        checkCachePath(path);
+        return getOwner().fetchRevisionNodeFromCache(getRevision(), path);
+    }
+
     public SVNLocationEntry getPreviousLocation(String path, long[] appearedRevision) throws SVNException {
         if (appearedRevision != null && appearedRevision.length > 0) {
             appearedRevision[0] = SVNRepository.INVALID_REVISION;
@@ -0,0 +1,239 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Date;
+
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Optional index of revision dates (<code>db/revision-times</code>) used to resolve dated
+ * revisions without reading revision properties.
+ *
+ * <p/>
+ * The file holds one big-endian 8 byte record per revision starting with revision 0,
+ * the <code>svn:date</code> of the revision in microseconds or <code>Long.MIN_VALUE</code>
+ * if the revision has no date. Once created, the index is appended to on every commit and
+ * updated in place when <code>svn:date</code> is changed, both under the repository write lock.
+ * In format 6 and newer repositories the in-place changes are followed by a revprop generation
+ * bump, which tells readers to reload the index.
+ *
+ * <p/>
+ * Native Subversion does not know the index, so <code>svn:date</code> changes made by native
+ * tools (e.g. <code>svnadmin setrevprop</code>) are not reflected in it until it is rebuilt.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRevisionTimesIndex {
+
+    public static final String REVISION_TIMES_INDEX_FILE = "revision-times";
+
+    private static final int RECORD_SIZE = 8;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private final long[] myTimes;
+    private final long myTimestamp;
+    private final long myLength;
+    private final long myReadTime;
+    private final long myRevPropGeneration;
+
+    private FSRevisionTimesIndex(long[] times, long timestamp, long length, long readTime, long revPropGeneration) {
+        myTimes = times;
+        myTimestamp = timestamp;
+        myLength = length;
+        myReadTime = readTime;
+        myRevPropGeneration = revPropGeneration;
+    }
+
+    public long getRevisionCount() {
+        return myTimes.length;
+    }
+
+    /**
+     * @return the date of <code>revision</code> or <code>null</code> if the revision
+     *         has no date or is not covered by the index
+     */
+    public SVNDate getTime(long revision) {
+        if (revision < 0 || revision >= myTimes.length || myTimes[(int) revision] == NO_TIME) {
+            return null;
+        }
+        long micros = myTimes[(int) revision];
+        return new SVNDate(micros / 1000, (int) (micros % 1000));
+    }
+
+    /**
+     * Tells whether <code>file</code> is still the file this index was loaded from.
+     *
+     * @param revPropGeneration current revprop generation, or -1 if the repository has none
+     */
+    public boolean isUpToDate(File file, long revPropGeneration) {
+        if (file.lastModified() != myTimestamp || file.length() != myLength) {
+            return false;
+        }
+        if (revPropGeneration < 0) {
+            // a file read within the timestamp granularity might have been changed again without changing its timestamp
+            return myReadTime - myTimestamp >= 2000;
+        }
+        return revPropGeneration == myRevPropGeneration;
+    }
+
+    /**
+     * @param revPropGeneration revprop generation read before the file, or -1 if the repository has none
+     */
+    public static FSRevisionTimesIndex load(File file, long revPropGeneration) throws SVNException {
+        long readTime = System.currentTimeMillis();
+        long timestamp = file.lastModified();
+        long length = file.length();
+        int count = (int) Math.min(length / RECORD_SIZE, Integer.MAX_VALUE);
+        long[] times = new long[count];
+        DataInputStream inputStream = null;
+        try {
+            inputStream = new DataInputStream(SVNFileUtil.openFileForReading(file, SVNLogType.FSFS));
+            for (int i = 0; i < count; i++) {
+                times[i] = inputStream.readLong();
+            }
+        } catch (EOFException e) {
+            // truncated by a concurrent writer, the next load will see the complete file
+            return new FSRevisionTimesIndex(new long[0], timestamp, -1, readTime, revPropGeneration);
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can not read revision times index ''{0}'': {1}",
+                    new Object[] { file, e.getLocalizedMessage() });
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            SVNFileUtil.closeFile(inputStream);
+        }
+        return new FSRevisionTimesIndex(times, timestamp, length, readTime, revPropGeneration);
+    }
+
+    /**
+     * Writes a new index for all revisions of <code>fsfs</code>, the caller should hold the write lock.
+     */
+    public static void build(FSFS fsfs, File file, ISVNCanceller canceller) throws SVNException {
+        long youngest = fsfs.getYoungestRevision();
+        File tmpFile = SVNFileUtil.createUniqueFile(file.getParentFile(), file.getName(), ".tmp", false);
+        OutputStream os = null;
+        try {
+            os = SVNFileUtil.openFileForWriting(tmpFile);
+            DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(os));
+            for (long revision = 0; revision <= youngest; revision++) {
+                if (canceller != null && revision % 1000 == 0) {
+                    canceller.checkCancelled();
+                }
+                outputStream.writeLong(readTime(fsfs, revision));
+            }
+            outputStream.flush();
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can not write revision times index ''{0}'': {1}",
+                    new Object[] { tmpFile, e.getLocalizedMessage() });
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            SVNFileUtil.closeFile(os);
+        }
+        SVNFileUtil.rename(tmpFile, file);
+    }
+
+    /**
+     * Appends records of all revisions of <code>fsfs</code> which are not in the index yet,
+     * the caller should hold the write lock.
+     */
+    public static void append(FSFS fsfs, File file) throws SVNException {
+        long youngest = fsfs.getYoungestRevision();
+        RandomAccessFile raFile = openFile(file);
+        try {
+            long count = raFile.length() / RECORD_SIZE;
+            if (count > youngest) {
+                return;
+            }
+            byte[] records = new byte[(int) (youngest - count + 1) * RECORD_SIZE];
+            for (long revision = count; revision <= youngest; revision++) {
+                writeLong(records, (int) (revision - count) * RECORD_SIZE, readTime(fsfs, revision));
+            }
+            // drops a partial record left by an interrupted writer
+            raFile.setLength(count * RECORD_SIZE);
+            raFile.seek(count * RECORD_SIZE);
+            raFile.write(records);
+        } catch (IOException e) {
+            ioError(file, e);
+        } finally {
+            SVNFileUtil.closeFile(raFile);
+        }
+    }
+
+    /**
+     * Records the current <code>svn:date</code> of <code>revision</code> if the index covers it,
+     * the caller should hold the write lock.
+     */
+    public static void update(FSFS fsfs, File file, long revision) throws SVNException {
+        RandomAccessFile raFile = openFile(file);
+        try {
+            if (revision >= raFile.length() / RECORD_SIZE) {
+                return;
+            }
+            byte[] record = new byte[RECORD_SIZE];
+            writeLong(record, 0, readTime(fsfs, revision));
+            raFile.seek(revision * RECORD_SIZE);
+            raFile.write(record);
+        } catch (IOException e) {
+            ioError(file, e);
+        } finally {
+            SVNFileUtil.closeFile(raFile);
+        }
+    }
+
+    private static long readTime(FSFS fsfs, long revision) throws SVNException {
+        String timeString = fsfs.getRevisionProperties(revision).getStringValue(SVNRevisionProperty.DATE);
+        if (timeString == null) {
+            return NO_TIME;
+        }
+        Date date = SVNDate.parseDateString(timeString);
+        return date instanceof SVNDate ? ((SVNDate) date).getTimeInMicros() : date.getTime() * 1000;
+    }
+
+    private static void writeLong(byte[] buffer, int offset, long value) {
+        for (int i = RECORD_SIZE - 1; i >= 0; i--) {
+            buffer[offset + i] = (byte) (value & 0xFF);
+            value >>>= 8;
+        }
+    }
+
+    private static RandomAccessFile openFile(File file) throws SVNException {
+        try {
+            return new RandomAccessFile(file, "rw");
+        } catch (IOException e) {
+            ioError(file, e);
+        }
+        return null;
+    }
+
+    private static void ioError(File file, IOException e) throws SVNException {
+        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can not write revision times index ''{0}'': {1}",
+                new Object[] { file, e.getLocalizedMessage() });
+        SVNErrorManager.error(err, e, SVNLogType.FSFS);
+    }
+}
@@ -148,10 +148,7 @@ public abstract class FSRoot {
     }
 
     public void putRevNodeToCache(String path, FSRevisionNode node) throws SVNException {
-        if (!path.startsWith("/")) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Invalid path ''{0}''", path);
-            SVNErrorManager.error(err, SVNLogType.FSFS);
-        }
+        checkCachePath(path);
         if (myRevNodesCache == null) {
             myRevNodesCache = new RevisionCache(100);
         }
@@ -159,10 +156,7 @@ public abstract class FSRoot {
     }
 
     public void removeRevNodeFromCache(String path) throws SVNException {
-        if (!path.startsWith("/")) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Invalid path ''{0}''", path);
-            SVNErrorManager.error(err, SVNLogType.FSFS);
-        }
+        checkCachePath(path);
         if (myRevNodesCache == null) {
             return;
         }
@@ -173,11 +167,15 @@ public abstract class FSRoot {
         if (myRevNodesCache == null) {
             return null;
         }
+        checkCachePath(path);
+        return (FSRevisionNode) myRevNodesCache.fetch(path);
+    }
+
+    protected void checkCachePath(String path) throws SVNException {
         if (!path.startsWith("/")) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Invalid path ''{0}''", path);
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        return (FSRevisionNode) myRevNodesCache.fetch(path);
     }
 
     private void foldChange(Map mapChanges, FSPathChange change) throws SVNException {
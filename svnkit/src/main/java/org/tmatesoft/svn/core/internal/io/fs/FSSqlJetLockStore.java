@@ -0,0 +1,221 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
+import org.tmatesoft.sqljet.core.schema.SqlJetConflictAction;
+import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
+import org.tmatesoft.sqljet.core.table.ISqlJetRunnableWithLock;
+import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLock;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.io.ISVNLockHandler;
+import org.tmatesoft.svn.util.SVNLogType;
+
+
+/**
+ * Lock store keeping all locks of a repository in a single table of <code>db/locks.db</code>
+ * ordered by path, so that the locks of a directory are read with one range scan.
+ * This store is not understood by native Subversion.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSSqlJetLockStore implements IFSLockStore {
+
+    public static final String LOCKS_DB = "locks.db";
+
+    private static final String LOCKS_TABLE = "locks";
+    private static final int LOCKS_DB_FORMAT = 1;
+    private static final String LOCKS_DB_SQL = "create table locks (path text not null primary key, " +
+                                               "                    token text not null, " +
+                                               "                    owner text not null, " +
+                                               "                    comment text, " +
+                                               "                    is_dav_comment integer not null, " +
+                                               "                    creation_date text, " +
+                                               "                    expiration_date text); ";
+
+    private SqlJetDb myDB;
+    private ISqlJetTable myTable;
+
+    private FSSqlJetLockStore(SqlJetDb db) throws SqlJetException {
+        myDB = db;
+        myTable = db.getTable(LOCKS_TABLE);
+    }
+
+    public static FSSqlJetLockStore open(File file) throws SVNException {
+        SqlJetDb db = null;
+        try {
+            db = SqlJetDb.open(file, true);
+            db.setSafetyLevel(SqlJetSafetyLevel.NORMAL);
+            checkFormat(db);
+            return new FSSqlJetLockStore(db);
+        } catch (SqlJetException e) {
+            if (db != null) {
+                try {
+                    db.close();
+                } catch (SqlJetException inner) {
+                }
+            }
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+        return null;
+    }
+
+    private static void checkFormat(final SqlJetDb db) throws SqlJetException {
+        db.runWithLock(new ISqlJetRunnableWithLock() {
+            public Object runWithLock(SqlJetDb db) throws SqlJetException {
+                int version = db.getOptions().getUserVersion();
+                if (version < LOCKS_DB_FORMAT) {
+                    db.getOptions().setAutovacuum(true);
+                    db.runWriteTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            db.getOptions().setUserVersion(LOCKS_DB_FORMAT);
+                            db.createTable(LOCKS_DB_SQL);
+                            return null;
+                        }
+                    });
+                } else if (version > LOCKS_DB_FORMAT) {
+                    throw new SqlJetException("Schema format " + version + " not recognized");
+                }
+                return null;
+            }
+        });
+    }
+
+    public SVNLock getLock(final String repositoryPath) throws SVNException {
+        return (SVNLock) runTransaction(false, new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                ISqlJetCursor cursor = myTable.lookup(myTable.getPrimaryKeyIndexName(), new Object[] {repositoryPath});
+                try {
+                    return cursor.eof() ? null : readLock(cursor);
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+    }
+
+    public void setLock(final SVNLock lock, final boolean isDAVComment) throws SVNException {
+        runTransaction(true, new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                String creationDate = lock.getCreationDate() != null ? SVNDate.formatDate(lock.getCreationDate()) : null;
+                String expirationDate = lock.getExpirationDate() != null ? SVNDate.formatDate(lock.getExpirationDate()) : null;
+                myTable.insertOr(SqlJetConflictAction.REPLACE, new Object[] {lock.getPath(), lock.getID(), lock.getOwner(),
+                        lock.getComment(), new Long(isDAVComment ? 1 : 0), creationDate, expirationDate});
+                return null;
+            }
+        });
+    }
+
+    public void deleteLock(final SVNLock lock) throws SVNException {
+        runTransaction(true, new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                ISqlJetCursor cursor = myTable.lookup(myTable.getPrimaryKeyIndexName(), new Object[] {lock.getPath()});
+                try {
+                    if (!cursor.eof()) {
+                        cursor.delete();
+                    }
+                } finally {
+                    cursor.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    public void walkLocks(final String repositoryPath, ISVNLockHandler handler) throws SVNException {
+        final List<SVNLock> locks = new ArrayList<SVNLock>();
+        runTransaction(false, new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                if ("/".equals(repositoryPath)) {
+                    collectLocks(myTable.open(), null, locks);
+                } else {
+                    collectLocks(myTable.lookup(myTable.getPrimaryKeyIndexName(), new Object[] {repositoryPath}), null, locks);
+                    // '0' follows '/', so the scope holds exactly the paths starting with "<path>/" and "<path>0"
+                    String upperBound = repositoryPath + "0";
+                    collectLocks(myTable.scope(myTable.getPrimaryKeyIndexName(), new Object[] {repositoryPath + "/"},
+                            new Object[] {upperBound}), upperBound, locks);
+                }
+                return null;
+            }
+        });
+        // the handler may delete expired locks, so it is called outside of the read transaction
+        for (Iterator<SVNLock> iterator = locks.iterator(); iterator.hasNext();) {
+            SVNLock lock = iterator.next();
+            handler.handleLock(lock.getPath(), lock, null);
+        }
+    }
+
+    public void close() throws SVNException {
+        if (myDB != null) {
+            try {
+                myDB.close();
+            } catch (SqlJetException e) {
+                SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+            } finally {
+                myTable = null;
+                myDB = null;
+            }
+        }
+    }
+
+    private static void collectLocks(ISqlJetCursor cursor, String excludedPath, List<SVNLock> locks) throws SqlJetException {
+        try {
+            for (; !cursor.eof(); cursor.next()) {
+                if (excludedPath != null && excludedPath.equals(cursor.getString("path"))) {
+                    continue;
+                }
+                locks.add(readLock(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static SVNLock readLock(ISqlJetCursor cursor) throws SqlJetException {
+        String creationDate = cursor.getString("creation_date");
+        String expirationDate = cursor.getString("expiration_date");
+        Date creation = creationDate != null ? SVNDate.parseDate(creationDate) : null;
+        Date expiration = expirationDate != null ? SVNDate.parseDate(expirationDate) : null;
+        return new FSLock(cursor.getString("path"), cursor.getString("token"), cursor.getString("owner"),
+                cursor.getString("comment"), creation, expiration, cursor.getInteger("is_dav_comment") != 0);
+    }
+
+    private Object runTransaction(boolean write, ISqlJetTransaction transaction) throws SVNException {
+        try {
+            return write ? myDB.runWriteTransaction(transaction) : myDB.runReadTransaction(transaction);
+        } catch (SqlJetException e) {
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+        return null;
+    }
+
+    private static SVNErrorMessage convertError(SqlJetException e) {
+        SVNErrorCode code = e.getErrorCode() == SqlJetErrorCode.READONLY ? SVNErrorCode.SQLITE_READONLY : SVNErrorCode.SQLITE_ERROR;
+        return SVNErrorMessage.create(code, e.getMessage());
+    }
+}
@@ -32,6 +32,7 @@ import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNRevisionProperty;
 import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
@@ -164,19 +165,31 @@ public class FSTransactionRoot extends FSRoot {
     }
 
     public static FSTransactionInfo beginTransactionForCommit(long baseRevision, SVNProperties revisionProperties, FSFS owner) throws SVNException {
+        return beginTransactionForCommit(baseRevision, revisionProperties, owner, false);
+    }
+
+    /**
+     * @param inMemory whether the transaction is driven by a single in-process editor of <code>owner</code>
+     *                 and may keep its node revisions in memory, see {@link FSFS#setDefaultInMemoryTransactions(boolean)}
+     */
+    public static FSTransactionInfo beginTransactionForCommit(long baseRevision, SVNProperties revisionProperties, FSFS owner, boolean inMemory) throws SVNException {
         List caps = new ArrayList();
         caps.add("mergeinfo");
         String author = revisionProperties.getStringValue(SVNRevisionProperty.AUTHOR);
         if (owner != null && owner.isHooksEnabled()) {
             FSHooks.runStartCommitHook(owner.getRepositoryRoot(), author, caps);
         }
-        FSTransactionInfo txn = FSTransactionRoot.beginTransaction(baseRevision, FSTransactionRoot.SVN_FS_TXN_CHECK_LOCKS, owner);
+        FSTransactionInfo txn = FSTransactionRoot.beginTransaction(baseRevision, FSTransactionRoot.SVN_FS_TXN_CHECK_LOCKS, owner, inMemory);
         owner.changeTransactionProperties(txn.getTxnId(), revisionProperties);
         return txn;
     }
 
     public static FSTransactionInfo beginTransaction(long baseRevision, int flags, FSFS owner) throws SVNException {
-        FSTransactionInfo txn = createTxn(baseRevision, owner);
+        return beginTransaction(baseRevision, flags, owner, false);
+    }
+
+    public static FSTransactionInfo beginTransaction(long baseRevision, int flags, FSFS owner, boolean inMemory) throws SVNException {
+        FSTransactionInfo txn = createTxn(baseRevision, owner, inMemory && FSFS.isDefaultInMemoryTransactions());
         String commitTime = SVNDate.formatDate(new Date(System.currentTimeMillis()));
         owner.setTransactionProperty(txn.getTxnId(), SVNRevisionProperty.DATE, SVNPropertyValue.create(commitTime));
 
@@ -191,21 +204,25 @@ public class FSTransactionRoot extends FSRoot {
         return txn;
     }
 
-    private static FSTransactionInfo createTxn(long baseRevision, FSFS owner) throws SVNException {
+    private static FSTransactionInfo createTxn(long baseRevision, FSFS owner, boolean inMemory) throws SVNException {
+        FSRepositoryUtil.checkWritableReposDBFormat(owner.getDBFormat());
         String txnId = null;
         if (owner.getDBFormat() >= FSFS.MIN_CURRENT_TXN_FORMAT) {
             txnId = createTxnDir(baseRevision, owner);    
         } else {
             txnId = createPre15TxnDir(baseRevision, owner);
         }
-        
+        if (inMemory) {
+            owner.createTransactionStore(txnId);
+        }
+
         FSTransactionInfo txn = new FSTransactionInfo(baseRevision, txnId);
         FSRevisionRoot root = owner.createRevisionRoot(baseRevision);
         FSRevisionNode rootNode = root.getRootRevisionNode();
         owner.createNewTxnNodeRevisionFromRevision(txnId, rootNode);
         SVNFileUtil.createEmptyFile(owner.getTransactionProtoRevFile(txn.getTxnId()));
         SVNFileUtil.createEmptyFile(owner.getTransactionProtoRevLockFile(txn.getTxnId()));
-        SVNFileUtil.createEmptyFile(new File(owner.getTransactionDir(txn.getTxnId()), "changes"));
+        SVNFileUtil.closeFile(owner.openTransactionFileForWriting(txnId, "changes", false));
         owner.writeNextIDs(txnId, "0", "0");
         return txn;
     }
@@ -321,15 +338,16 @@ public class FSTransactionRoot extends FSRoot {
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
 
+        String nodeFileName = FSFS.PATH_PREFIX_NODE + id.getNodeID() + "." + id.getCopyID();
         if (node.getPropsRepresentation() != null && node.getPropsRepresentation().isTxn()) {
-            SVNFileUtil.deleteFile(getTransactionRevNodePropsFile(id));
+            getOwner().deleteTransactionFile(myTxnID, nodeFileName + FSFS.TXN_PATH_EXT_PROPS);
         }
 
         if (node.getTextRepresentation() != null && node.getTextRepresentation().isTxn() && node.getType() == SVNNodeKind.DIR) {
-            SVNFileUtil.deleteFile(getTransactionRevNodeChildrenFile(id));
+            getOwner().deleteTransactionFile(myTxnID, nodeFileName + FSFS.TXN_PATH_EXT_CHILDREN);
         }
 
-        SVNFileUtil.deleteFile(getOwner().getTransactionRevNodeFile(id));
+        getOwner().deleteTransactionFile(myTxnID, nodeFileName);
     }
 
     public void setProplist(FSRevisionNode node, SVNProperties properties) throws SVNException {
@@ -338,11 +356,20 @@ public class FSTransactionRoot extends FSRoot {
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
 
-        File propsFile = getTransactionRevNodePropsFile(node.getId());
-        SVNWCProperties.setProperties(properties, propsFile,
-                                    SVNFileUtil.createUniqueFile(propsFile.getParentFile(), 
-                                                                 ".props", ".tmp", false), 
-                                    SVNWCProperties.SVN_HASH_TERMINATOR);
+        if (getOwner().getTransactionStore(myTxnID) != null) {
+            OutputStream dst = getOwner().openTransactionFileForWriting(myTxnID, getTransactionRevNodePropsFile(node.getId()).getName(), false);
+            try {
+                SVNWCProperties.setProperties(properties, dst, SVNWCProperties.SVN_HASH_TERMINATOR);
+            } finally {
+                SVNFileUtil.closeFile(dst);
+            }
+        } else {
+            File propsFile = getTransactionRevNodePropsFile(node.getId());
+            SVNWCProperties.setProperties(properties, propsFile,
+                                        SVNFileUtil.createUniqueFile(propsFile.getParentFile(), 
+                                                                     ".props", ".tmp", false), 
+                                        SVNWCProperties.SVN_HASH_TERMINATOR);
+        }
 
         if (node.getPropsRepresentation() == null || !node.getPropsRepresentation().isTxn()) {
             FSRepresentation mutableRep = new FSRepresentation();
@@ -380,14 +407,14 @@ public class FSTransactionRoot extends FSRoot {
         }
 
         FSRepresentation textRep = parentRevNode.getTextRepresentation();
-        File childrenFile = getTransactionRevNodeChildrenFile(parentRevNode.getId());
+        String childrenFileName = getTransactionRevNodeChildrenFile(parentRevNode.getId()).getName();
         OutputStream dst = null;
 
         try {
             if (textRep == null || !textRep.isTxn()) {
                 Map entries = parentRevNode.getDirEntries(getOwner());
                 SVNProperties unparsedEntries = unparseDirEntries(entries);
-                dst = SVNFileUtil.openFileForWriting(childrenFile);
+                dst = getOwner().openTransactionFileForWriting(myTxnID, childrenFileName, false);
                 SVNWCProperties.setProperties(unparsedEntries, dst, SVNWCProperties.SVN_HASH_TERMINATOR);
                 textRep = new FSRepresentation();
                 textRep.setRevision(SVNRepository.INVALID_REVISION);
@@ -397,9 +424,11 @@ public class FSTransactionRoot extends FSRoot {
                 textRep.setUniquifier(uniquifier);
                 parentRevNode.setTextRepresentation(textRep);
                 parentRevNode.setIsFreshTxnRoot(false);
+                // entries of the committed representation are shared through FSFS cache, modify a private copy
+                parentRevNode.setDirContents(new SVNHashMap(entries));
                 getOwner().putTxnRevisionNode(parentRevNode.getId(), parentRevNode);
             } else {
-                dst = SVNFileUtil.openFileForWriting(childrenFile, true);
+                dst = getOwner().openTransactionFileForWriting(myTxnID, childrenFileName, true);
             }
             Map dirContents = parentRevNode.getDirContents();
             if (entryId != null) {
@@ -472,7 +501,7 @@ public class FSTransactionRoot extends FSRoot {
     public String[] readNextIDs() throws SVNException {
         String[] ids = new String[2];
         String idsToParse = null;
-        FSFile idsFile = new FSFile(getOwner().getNextIDsFile(myTxnID));
+        FSFile idsFile = getOwner().openTransactionFile(myTxnID, "next-ids");
 
         try {
             idsToParse = idsFile.readLine(FSRepositoryUtil.MAX_KEY_SIZE * 2 + 3);
@@ -493,8 +522,12 @@ public class FSTransactionRoot extends FSRoot {
     }
 
     public void writeFinalCurrentFile(long newRevision, String startNodeId, String startCopyId) throws SVNException, IOException {
+        writeFinalCurrentFile(newRevision, startNodeId, startCopyId, false);
+    }
+
+    public void writeFinalCurrentFile(long newRevision, String startNodeId, String startCopyId, boolean sync) throws SVNException, IOException {
         if (getOwner().getDBFormat() >= FSFS.MIN_NO_GLOBAL_IDS_FORMAT) {
-            getOwner().writeCurrentFile(newRevision, null, null);
+            getOwner().writeCurrentFile(newRevision, null, null, sync);
             return;
         }
         
@@ -503,7 +536,7 @@ public class FSTransactionRoot extends FSRoot {
         String txnCopyId = txnIds[1];
         String newNodeId = FSTransactionRoot.addKeys(startNodeId, txnNodeId);
         String newCopyId = FSTransactionRoot.addKeys(startCopyId, txnCopyId);
-        getOwner().writeCurrentFile(newRevision, newNodeId, newCopyId);
+        getOwner().writeCurrentFile(newRevision, newNodeId, newCopyId, sync);
     }
 
     public FSID writeFinalRevision(FSID newId, final CountingOutputStream protoFile, long revision, FSID id, 
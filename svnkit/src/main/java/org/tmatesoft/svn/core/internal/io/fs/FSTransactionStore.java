@@ -0,0 +1,318 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.util.SVNLogType;
+
+
+/**
+ * Keeps the small files of a transaction (node revisions, their children and properties,
+ * <code>changes</code> and <code>next-ids</code>) in memory instead of the transaction directory.
+ *
+ * <p/>
+ * Files are addressed by their names in the transaction directory. Once the size of the kept
+ * files exceeds the spill threshold, new contents are appended to the single
+ * {@link #SPILL_FILE} in the transaction directory. The store is only visible to the
+ * {@link FSFS} instance that created it, so it is used for transactions driven by one
+ * in-process editor; {@link #writeFiles(File)} exports the files for the pre-commit hook.
+ *
+ * <p/>
+ * Segments of the spill file that belonged to overwritten or deleted files are kept in a free
+ * list and reused by later spills, so the file only grows with the size of the live contents.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSTransactionStore {
+
+    public static final String SPILL_FILE = "spill";
+
+    private File mySpillFile;
+    private long mySpillThreshold;
+    private Map<String, Record> myRecords;
+    private long myMemorySize;
+    private RandomAccessFile mySpill;
+    private long mySpillLength;
+    private SVNErrorMessage mySpillError;
+    private List<long[]> myFreeSegments;
+    private long myLastAccessTime;
+
+    public FSTransactionStore(File transactionDir, long spillThreshold) {
+        mySpillFile = new File(transactionDir, SPILL_FILE);
+        mySpillThreshold = spillThreshold;
+        myRecords = new SVNHashMap();
+        myFreeSegments = new ArrayList<long[]>();
+        myLastAccessTime = System.currentTimeMillis();
+    }
+
+    public synchronized boolean exists(String name) {
+        return myRecords.containsKey(name);
+    }
+
+    /**
+     * @return file contents or <code>null</code> if there is no such file
+     */
+    public synchronized byte[] read(String name) throws SVNException {
+        if (mySpillError != null) {
+            // writes of closing streams are not checked by callers
+            SVNErrorManager.error(mySpillError, SVNLogType.FSFS);
+        }
+        myLastAccessTime = System.currentTimeMillis();
+        Record record = myRecords.get(name);
+        if (record == null) {
+            return null;
+        }
+        if (record.mySegments == null) {
+            byte[] data = new byte[record.myLength];
+            System.arraycopy(record.myData, 0, data, 0, record.myLength);
+            return data;
+        }
+        int length = 0;
+        for (Iterator<long[]> segments = record.mySegments.iterator(); segments.hasNext();) {
+            length += (int) segments.next()[1];
+        }
+        byte[] data = new byte[length];
+        int offset = 0;
+        try {
+            for (Iterator<long[]> segments = record.mySegments.iterator(); segments.hasNext();) {
+                long[] segment = segments.next();
+                mySpill.seek(segment[0]);
+                mySpill.readFully(data, offset, (int) segment[1]);
+                offset += (int) segment[1];
+            }
+        } catch (IOException e) {
+            error(e);
+        }
+        return data;
+    }
+
+    public synchronized void write(String name, byte[] data, int length, boolean append) throws SVNException {
+        myLastAccessTime = System.currentTimeMillis();
+        Record record = myRecords.get(name);
+        if (record == null || !append) {
+            if (record != null) {
+                release(record);
+            }
+            record = new Record();
+            myRecords.put(name, record);
+        }
+        if (record.mySegments == null && myMemorySize + length <= mySpillThreshold) {
+            if (record.myData == null || record.myLength + length > record.myData.length) {
+                byte[] newData = new byte[Math.max(record.myLength + length, record.myLength * 2)];
+                if (record.myData != null) {
+                    System.arraycopy(record.myData, 0, newData, 0, record.myLength);
+                }
+                record.myData = newData;
+            }
+            System.arraycopy(data, 0, record.myData, record.myLength, length);
+            record.myLength += length;
+            myMemorySize += length;
+            return;
+        }
+        if (record.mySegments == null) {
+            // the record moves to the spill file as a whole
+            record.mySegments = new ArrayList<long[]>();
+            if (record.myLength > 0) {
+                record.mySegments.add(spill(record.myData, record.myLength));
+            }
+            myMemorySize -= record.myLength;
+            record.myData = null;
+            record.myLength = 0;
+        }
+        if (length > 0) {
+            record.mySegments.add(spill(data, length));
+        }
+    }
+
+    public synchronized void delete(String name) {
+        myLastAccessTime = System.currentTimeMillis();
+        Record record = myRecords.remove(name);
+        if (record != null) {
+            release(record);
+        }
+    }
+
+    /**
+     * Returns a stream that stores the written contents as file <code>name</code> when closed.
+     */
+    public OutputStream openForWriting(final String name, final boolean append) {
+        return new ByteArrayOutputStream() {
+            private boolean myIsClosed;
+
+            public void close() throws IOException {
+                if (myIsClosed) {
+                    return;
+                }
+                myIsClosed = true;
+                try {
+                    FSTransactionStore.this.write(name, buf, count, append);
+                } catch (SVNException e) {
+                    throw new IOException(e.getMessage());
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes all kept files into <code>dir</code>.
+     */
+    public synchronized void writeFiles(File dir) throws SVNException {
+        for (Iterator<String> names = myRecords.keySet().iterator(); names.hasNext();) {
+            String name = names.next();
+            OutputStream os = null;
+            try {
+                os = SVNFileUtil.openFileForWriting(new File(dir, name));
+                os.write(read(name));
+            } catch (IOException e) {
+                error(e);
+            } finally {
+                SVNFileUtil.closeFile(os);
+            }
+        }
+    }
+
+    public synchronized long getMemorySize() {
+        return myMemorySize;
+    }
+
+    public synchronized long getSpillSize() {
+        return mySpillLength;
+    }
+
+    /**
+     * @return time of the last read or write of the store's files
+     */
+    public synchronized long getLastAccessTime() {
+        return myLastAccessTime;
+    }
+
+    public synchronized void dispose() throws SVNException {
+        myRecords.clear();
+        myFreeSegments.clear();
+        myMemorySize = 0;
+        mySpillLength = 0;
+        if (mySpill != null) {
+            try {
+                mySpill.close();
+            } catch (IOException e) {
+            }
+            mySpill = null;
+            SVNFileUtil.deleteFile(mySpillFile);
+        }
+    }
+
+    private long[] spill(byte[] data, int length) throws SVNException {
+        long[] segment = allocate(length);
+        try {
+            if (mySpill == null) {
+                mySpill = new RandomAccessFile(mySpillFile, "rw");
+            }
+            mySpill.seek(segment[0]);
+            mySpill.write(data, 0, length);
+        } catch (IOException e) {
+            error(e);
+        }
+        return segment;
+    }
+
+    private long[] allocate(int length) {
+        for (int i = 0; i < myFreeSegments.size(); i++) {
+            long[] free = myFreeSegments.get(i);
+            if (free[1] < length) {
+                continue;
+            }
+            long[] segment = new long[] {free[0], length};
+            if (free[1] == length) {
+                myFreeSegments.remove(i);
+            } else {
+                free[0] += length;
+                free[1] -= length;
+            }
+            return segment;
+        }
+        long[] segment = new long[] {mySpillLength, length};
+        mySpillLength += length;
+        return segment;
+    }
+
+    private void release(Record record) {
+        if (record.mySegments == null) {
+            myMemorySize -= record.myLength;
+            return;
+        }
+        for (Iterator<long[]> segments = record.mySegments.iterator(); segments.hasNext();) {
+            free(segments.next());
+        }
+        record.mySegments = null;
+    }
+
+    private void free(long[] segment) {
+        // free segments are sorted by offset, adjacent ones are merged
+        int index = 0;
+        while (index < myFreeSegments.size() && myFreeSegments.get(index)[0] < segment[0]) {
+            index++;
+        }
+        long[] free = new long[] {segment[0], segment[1]};
+        if (index > 0) {
+            long[] previous = myFreeSegments.get(index - 1);
+            if (previous[0] + previous[1] == free[0]) {
+                previous[1] += free[1];
+                free = previous;
+                index--;
+                myFreeSegments.remove(index);
+            }
+        }
+        if (index < myFreeSegments.size()) {
+            long[] next = myFreeSegments.get(index);
+            if (free[0] + free[1] == next[0]) {
+                free[1] += next[1];
+                myFreeSegments.remove(index);
+            }
+        }
+        if (free[0] + free[1] == mySpillLength) {
+            // the tail is overwritten by the next spill
+            mySpillLength = free[0];
+        } else {
+            myFreeSegments.add(index, free);
+        }
+    }
+
+    private void error(IOException e) throws SVNException {
+        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can''t access transaction spill file ''{0}'': {1}",
+                new Object[] {mySpillFile, e.getLocalizedMessage()});
+        mySpillError = err;
+        SVNErrorManager.error(err, e, SVNLogType.FSFS);
+    }
+
+    private static class Record {
+
+        private byte[] myData;
+        private int myLength;
+        private List<long[]> mySegments;
+    }
+}
@@ -32,7 +32,11 @@ public class FSTranslateReporter implements ISVNReporter {
     
     public void abortReport() throws SVNException {
         if (!myIsRepositoryClosed) {
-            myDelegate.abortReport();
+            try {
+                myDelegate.abortReport();
+            } finally {
+                closeRepository();
+            }
         }
     }
 
@@ -44,7 +48,11 @@ public class FSTranslateReporter implements ISVNReporter {
 
     public void finishReport() throws SVNException {
         if (!myIsRepositoryClosed) {
-            myDelegate.finishReport();
+            try {
+                myDelegate.finishReport();
+            } finally {
+                closeRepository();
+            }
         }
     }
 
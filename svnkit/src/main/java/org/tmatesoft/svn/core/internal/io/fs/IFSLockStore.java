@@ -0,0 +1,40 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLock;
+import org.tmatesoft.svn.core.io.ISVNLockHandler;
+
+
+/**
+ * Storage of repository locks. Stores do not check expiration dates, that is done by {@link FSFS}
+ * which also makes sure that modifications are only made under the repository write lock.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public interface IFSLockStore {
+
+    public SVNLock getLock(String repositoryPath) throws SVNException;
+
+    public void setLock(SVNLock lock, boolean isDAVComment) throws SVNException;
+
+    public void deleteLock(SVNLock lock) throws SVNException;
+
+    /**
+     * Reports the lock of <code>repositoryPath</code> and all locks below it to <code>handler</code>.
+     */
+    public void walkLocks(String repositoryPath, ISVNLockHandler handler) throws SVNException;
+
+    public void close() throws SVNException;
+}
@@ -11,6 +11,8 @@
  */
 package org.tmatesoft.svn.core.internal.io.fs;
 
+import java.util.Collection;
+
 import org.tmatesoft.svn.core.SVNException;
 
 
@@ -22,11 +24,19 @@ public interface IFSRepresentationCacheManager {
     
     public void insert(final FSRepresentation representation, boolean rejectDup) throws SVNException;
 
+    public void insert(Collection<FSRepresentation> representations, boolean rejectDup) throws SVNException;
+
     public void runWriteTransaction(IFSSqlJetTransaction transaction) throws SVNException;
 
     public void runReadTransaction(IFSSqlJetTransaction transaction) throws SVNException;
     
     public FSRepresentation getRepresentationByHash(String hash) throws SVNException;
+
+    /**
+     * @return <code>false</code> if there is certainly no representation with <code>hash</code>, 
+     *         so no transaction needs to be started to look it up
+     */
+    public boolean mayContainRepresentation(String hash);
     
     public void close() throws SVNException;
 }
@@ -11,6 +11,8 @@
  */
 package org.tmatesoft.svn.core.internal.io.fs.repcache;
 
+import java.util.Collection;
+
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
 import org.tmatesoft.svn.core.internal.io.fs.IFSRepresentationCacheManager;
@@ -38,6 +40,10 @@ public class FSEmptyRepresentationCacheManager implements IFSRepresentationCache
         return null;
     }
 
+    public boolean mayContainRepresentation(String hash) {
+        return false;
+    }
+
     /**
      * @param representation
      * @param rejectDup
@@ -46,6 +52,9 @@ public class FSEmptyRepresentationCacheManager implements IFSRepresentationCache
     public void insert(FSRepresentation representation, boolean rejectDup) throws SVNException {
     }
 
+    public void insert(Collection<FSRepresentation> representations, boolean rejectDup) throws SVNException {
+    }
+
     /**
      * @param transaction
      * @throws SVNException
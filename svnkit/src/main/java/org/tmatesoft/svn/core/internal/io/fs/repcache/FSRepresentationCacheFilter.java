@@ -0,0 +1,91 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.repcache;
+
+
+/**
+ * Bloom filter of the SHA1 keys of the <code>rep_cache</code> table.
+ *
+ * <p/>
+ * Keys are SHA1 hex digests, so the bit positions are taken from the digest itself
+ * (double hashing over two of its 32 bit words) instead of hashing it again. The filter is
+ * sized for {@link #getCapacity()} keys at about 1% false positives, the owner rebuilds it
+ * with a bigger capacity once it is full.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRepresentationCacheFilter {
+
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASH_FUNCTIONS = 7;
+    private static final int MIN_CAPACITY = 4096;
+
+    private long[] myBits;
+    private long myBitsCount;
+    private int myCapacity;
+    private int myKeysCount;
+
+    public FSRepresentationCacheFilter(int expectedKeys) {
+        myCapacity = Math.max(MIN_CAPACITY, expectedKeys * 2);
+        myBitsCount = (long) myCapacity * BITS_PER_KEY;
+        myBits = new long[(int) ((myBitsCount + 63) / 64)];
+    }
+
+    public void add(String hash) {
+        long h1 = getWord(hash, 0);
+        long h2 = getWord(hash, 8) | 1;
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % myBitsCount;
+            myBits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        myKeysCount++;
+    }
+
+    /**
+     * @return <code>false</code> if <code>hash</code> has never been added
+     */
+    public boolean mightContain(String hash) {
+        long h1 = getWord(hash, 0);
+        long h2 = getWord(hash, 8) | 1;
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % myBitsCount;
+            if ((myBits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isFull() {
+        return myKeysCount >= myCapacity;
+    }
+
+    public int getCapacity() {
+        return myCapacity;
+    }
+
+    public int getKeysCount() {
+        return myKeysCount;
+    }
+
+    private static long getWord(String hash, int offset) {
+        long word = 0;
+        int end = Math.min(hash.length(), offset + 8);
+        for (int i = offset; i < end; i++) {
+            int digit = Character.digit(hash.charAt(i), 16);
+            // not a hex digest, still map it deterministically
+            word = (word << 4) | (digit >= 0 ? digit : (hash.charAt(i) & 0xF));
+        }
+        return word * 0x9E3779B97F4A7C15L;
+    }
+}
@@ -12,6 +12,7 @@
 package org.tmatesoft.svn.core.internal.io.fs.repcache;
 
 import java.io.File;
+import java.util.Collection;
 
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
@@ -50,6 +51,8 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
     private SqlJetDb myRepCacheDB;
     private ISqlJetTable myTable;
     private FSFS myFSFS;
+    private FSRepresentationCacheFilter myFilter;
+    private long myFilteredLookupsCount;
     
     public static IFSRepresentationCacheManager openRepresentationCache(FSFS fsfs) throws SVNException {
         final FSRepresentationCacheManager cacheObj = new FSRepresentationCacheManager();
@@ -59,6 +62,9 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
             
             checkFormat(cacheObj.myRepCacheDB);
             cacheObj.myTable = cacheObj.myRepCacheDB.getTable(REP_CACHE_TABLE);
+            if (FSFS.isDefaultRepCacheFilter()) {
+                cacheObj.buildFilter();
+            }
         } catch (SqlJetException e) {
             SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
             return new FSEmptyRepresentationCacheManager();
@@ -106,13 +112,15 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
         });
     }
     
-    public void insert(final FSRepresentation representation, boolean rejectDup) throws SVNException {
+    public synchronized void insert(final FSRepresentation representation, boolean rejectDup) throws SVNException {
         if (representation.getSHA1HexDigest() == null) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.BAD_CHECKSUM_KIND, 
                     "Only SHA1 checksums can be used as keys in the rep_cache table.\n");
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        FSRepresentation oldRep = getRepresentationByHash(representation.getSHA1HexDigest());
+        // the filter may miss rows inserted by other processes, look the key up for real
+        FSRepresentationCacheRecord oldRecord = getByHash(representation.getSHA1HexDigest());
+        FSRepresentation oldRep = oldRecord != null ? createRepresentation(oldRecord) : null;
         if (oldRep != null) {
             if (rejectDup && (oldRep.getRevision() != representation.getRevision() || oldRep.getOffset() != representation.getOffset() ||
                     oldRep.getSize() != representation.getSize() || oldRep.getExpandedSize() != representation.getExpandedSize())) {
@@ -134,9 +142,40 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
         } catch (SqlJetException e) {
             SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
         }
+        if (myFilter != null) {
+            if (myFilter.isFull()) {
+                try {
+                    buildFilter();
+                } catch (SqlJetException e) {
+                    SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+                }
+            } else {
+                myFilter.add(representation.getSHA1HexDigest());
+            }
+        }
     }
 
-    public void close() throws SVNException {
+    /**
+     * Inserts <code>representations</code> in a single write transaction.
+     */
+    public void insert(final Collection<FSRepresentation> representations, final boolean rejectDup) throws SVNException {
+        runWriteTransaction(new IFSSqlJetTransaction() {
+            public void run() throws SVNException {
+                for (FSRepresentation representation : representations) {
+                    insert(representation, rejectDup);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the number of lookups answered by the filter without reading the table
+     */
+    public synchronized long getFilteredLookupsCount() {
+        return myFilteredLookupsCount;
+    }
+
+    public synchronized void close() throws SVNException {
         if (myRepCacheDB != null) {
             try {
                 myRepCacheDB.close();
@@ -146,24 +185,61 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
                 myTable = null;
                 myRepCacheDB = null;
                 myFSFS = null;
+                myFilter = null;
             }
         }
     }
     
-    public FSRepresentation getRepresentationByHash(String hash) throws SVNException {
+    public synchronized FSRepresentation getRepresentationByHash(String hash) throws SVNException {
+        if (!mayContainRepresentation(hash)) {
+            return null;
+        }
         FSRepresentationCacheRecord cache = getByHash(hash);
         if (cache != null) {
-            FSRepresentation representation = new FSRepresentation();
-            representation.setExpandedSize(cache.getExpandedSize());
-            representation.setOffset(cache.getOffset());
-            representation.setRevision(cache.getRevision());
-            representation.setSize(cache.getSize());
-            representation.setSHA1HexDigest(cache.getHash());
-            return representation;
+            return createRepresentation(cache);
         }
         return null;
     }
 
+    public synchronized boolean mayContainRepresentation(String hash) {
+        if (myFilter != null && hash != null && !myFilter.mightContain(hash)) {
+            myFilteredLookupsCount++;
+            return false;
+        }
+        return true;
+    }
+
+    private static FSRepresentation createRepresentation(FSRepresentationCacheRecord cache) {
+        FSRepresentation representation = new FSRepresentation();
+        representation.setExpandedSize(cache.getExpandedSize());
+        representation.setOffset(cache.getOffset());
+        representation.setRevision(cache.getRevision());
+        representation.setSize(cache.getSize());
+        representation.setSHA1HexDigest(cache.getHash());
+        return representation;
+    }
+
+    private void buildFilter() throws SqlJetException {
+        myRepCacheDB.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                ISqlJetCursor cursor = myTable.open();
+                try {
+                    FSRepresentationCacheFilter filter = new FSRepresentationCacheFilter((int) Math.min(Integer.MAX_VALUE / 32, cursor.getRowCount()));
+                    while (!cursor.eof()) {
+                        if (!cursor.isNull(FSRepresentationCacheRecord.HASH_FIELD)) {
+                            filter.add(cursor.getString(FSRepresentationCacheRecord.HASH_FIELD));
+                        }
+                        cursor.next();
+                    }
+                    myFilter = filter;
+                } finally {
+                    cursor.close();
+                }
+                return null;
+            }
+        });
+    }
+
     private FSRepresentationCacheRecord getByHash(final String hash) throws SVNException {
         ISqlJetCursor lookup = null;
         try {
@@ -198,7 +274,7 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
         return SVNErrorCode.SQLITE_ERROR;
     }
 
-    public void runWriteTransaction(final IFSSqlJetTransaction transaction) throws SVNException {
+    public synchronized void runWriteTransaction(final IFSSqlJetTransaction transaction) throws SVNException {
         if (myRepCacheDB != null) {
             try {
                 myRepCacheDB.runWriteTransaction(new ISqlJetTransaction() {
@@ -217,7 +293,7 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
         }
     }
 
-    public void runReadTransaction(final IFSSqlJetTransaction transaction) throws SVNException {
+    public synchronized void runReadTransaction(final IFSSqlJetTransaction transaction) throws SVNException {
         if (myRepCacheDB != null) {
             try {
                 myRepCacheDB.runReadTransaction(new ISqlJetTransaction() {
@@ -81,8 +81,14 @@ public class SVNDate extends Date {
     private int myMicroSeconds;
 
     public SVNDate(long time, int micro) {
-        super((1000 * time + micro) / 1000);
-        myMicroSeconds = micro >= 0 ? micro % 1000 : 1000 + (micro % 1000);
+        super(toMilliseconds(1000 * time + micro));
+        myMicroSeconds = (int) (1000 * time + micro - 1000 * getTime());
+    }
+
+    private static long toMilliseconds(long micros) {
+        // rounds down for dates before 1970 as well
+        long millis = micros / 1000;
+        return micros % 1000 < 0 ? millis - 1 : millis;
     }
 
     public String format() {
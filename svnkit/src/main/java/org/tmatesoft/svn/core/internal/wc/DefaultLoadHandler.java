@@ -156,7 +156,7 @@ public class DefaultLoadHandler implements ISVNLoadHandler {
         myCurrentRevisionBaton.myRevisionOffset = revision - (headRevision + 1);
         
         if (revision > 0) {
-            myCurrentRevisionBaton.myTxn = FSTransactionRoot.beginTransaction(headRevision, 0, myFSFS);
+            myCurrentRevisionBaton.myTxn = FSTransactionRoot.beginTransaction(headRevision, 0, myFSFS, true);
             myCurrentRevisionBaton.myTxnRoot = myFSFS.createTransactionRoot(myCurrentRevisionBaton.myTxn);
             String message = "<<< Started new transaction, based on original revision " + revision;
             if (myProgressHandler != null) {
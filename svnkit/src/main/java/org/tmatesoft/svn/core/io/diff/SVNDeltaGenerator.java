@@ -21,6 +21,7 @@ import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.delta.SVNDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNFastXDeltaAlgorithm;
 import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
 import org.tmatesoft.svn.core.internal.wc.IOExceptionWrapper;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
@@ -43,22 +44,31 @@ import org.tmatesoft.svn.util.SVNLogType;
  * @since   1.2
  */
 public class SVNDeltaGenerator {
-    
-    private SVNDeltaAlgorithm myXDelta = new SVNXDeltaAlgorithm();
+
+    private static boolean ourIsFastXDeltaEnabled = Boolean.TRUE.toString().equalsIgnoreCase(System.getProperty("svnkit.delta.fastXDelta", "true"));
+    private static int ourDefaultSourceViewSize = getIntegerProperty("svnkit.delta.sourceViewSize", 0);
+
+    private SVNDeltaAlgorithm myXDelta = ourIsFastXDeltaEnabled ? new SVNFastXDeltaAlgorithm() : new SVNXDeltaAlgorithm();
     
     private byte[] mySourceBuffer;
     private byte[] myTargetBuffer;
     private int myMaximumBufferSize;
+    private int myMaximumSourceViewSize;
     
     /**
      * Creates a generator that will produce diff windows of 
      * 100Kbytes contents length. That is, after applying of 
      * such a window you get 100 Kbytes of file contents.
      * 
+     * <p>
+     * When the <code>svnkit.delta.sourceViewSize</code> system property is set
+     * to a value larger than the window size, target windows are matched against
+     * a source view of that size, see {@link #SVNDeltaGenerator(int, int)}.
+     * 
      * @see #SVNDeltaGenerator(int)
      */
     public SVNDeltaGenerator() {
-        this(1024*100);
+        this(1024*100, ourDefaultSourceViewSize);
     }
     
     /**
@@ -70,7 +80,35 @@ public class SVNDeltaGenerator {
      *                              window would produce
      */
     public SVNDeltaGenerator(int maximumDiffWindowSize) {
+        this(maximumDiffWindowSize, 0);
+    }
+
+    /**
+     * Creates a generator that will produce diff windows of 
+     * a specified contents length, matching each target window against
+     * a source view of up to <code>maximumSourceViewSize</code> bytes.
+     * 
+     * <p>
+     * By default the source view of a window is the source chunk at the same
+     * offset as the target window, so data that moves between windows (for instance, 
+     * after an insertion near the beginning of a file) is sent as new data. 
+     * A larger source view slides along the source centered around the position 
+     * of the target window, with the whole source used when it fits. Produced windows 
+     * are standard svndiff windows with forward sliding source views, which any delta 
+     * consumer can apply, but they should not be stored in FSFS representations, 
+     * which expect each window to use the matching window of the base.
+     * 
+     * @param maximumDiffWindowSize a maximum size of a file contents
+     *                              chunk that a single applied diff 
+     *                              window would produce
+     * @param maximumSourceViewSize a maximum size of a source view; values not
+     *                              larger than <code>maximumDiffWindowSize</code>
+     *                              keep source and target windows aligned
+     * @since 1.8.7
+     */
+    public SVNDeltaGenerator(int maximumDiffWindowSize, int maximumSourceViewSize) {
         myMaximumBufferSize = maximumDiffWindowSize;
+        myMaximumSourceViewSize = maximumSourceViewSize;
         int initialSize = Math.min(8192, myMaximumBufferSize);
         mySourceBuffer = new byte[initialSize];
         myTargetBuffer = new byte[initialSize];
@@ -146,6 +184,9 @@ public class SVNDeltaGenerator {
                 return null;
             }
         }
+        if (myMaximumSourceViewSize > myMaximumBufferSize) {
+            return sendDeltaAgainstSourceView(path, source, sourceOffset, target, consumer, digest);
+        }
         boolean windowSent = false;
         while(true) {
             int targetLength;
@@ -194,6 +235,75 @@ public class SVNDeltaGenerator {
         return SVNFileUtil.toHexDigest(digest);
     }
 
+    private String sendDeltaAgainstSourceView(String path, InputStream source, long sourceOffset, InputStream target, ISVNDeltaConsumer consumer, MessageDigest digest) throws SVNException {
+        // the view is kept at the beginning of mySourceBuffer, offsets are relative to sourceOffset.
+        long viewOffset = 0;
+        int viewLength = 0;
+        boolean sourceEnded = false;
+        long targetOffset = 0;
+        boolean windowSent = false;
+        try {
+            while(true) {
+                int targetLength = readToBuffer(target, myTargetBuffer);
+                if (targetLength <= 0) {
+                    if (!windowSent && consumer != null) {
+                        consumer.textDeltaChunk(path, SVNDiffWindow.EMPTY);
+                    }
+                    break;
+                }
+                // center the view around the target window, but never slide it backwards.
+                long viewStart = Math.max(viewOffset, targetOffset + targetLength / 2 - myMaximumSourceViewSize / 2);
+                if (sourceEnded) {
+                    viewStart = Math.min(viewStart, Math.max(viewOffset, viewOffset + viewLength - myMaximumSourceViewSize));
+                }
+                if (viewStart > viewOffset) {
+                    int dropped = (int) Math.min(viewLength, viewStart - viewOffset);
+                    System.arraycopy(mySourceBuffer, dropped, mySourceBuffer, 0, viewLength - dropped);
+                    viewLength -= dropped;
+                    long toSkip = viewStart - viewOffset - dropped;
+                    while (toSkip > 0 && !sourceEnded) {
+                        int read = SVNFileUtil.readIntoBuffer(source, mySourceBuffer, 0, (int) Math.min(toSkip, mySourceBuffer.length));
+                        if (read <= 0) {
+                            sourceEnded = true;
+                            break;
+                        }
+                        toSkip -= read;
+                    }
+                    viewOffset = viewStart;
+                }
+                while (!sourceEnded && viewLength < myMaximumSourceViewSize) {
+                    if (viewLength == mySourceBuffer.length) {
+                        byte[] expanded = new byte[Math.min(myMaximumSourceViewSize, viewLength * 2)];
+                        System.arraycopy(mySourceBuffer, 0, expanded, 0, viewLength);
+                        mySourceBuffer = expanded;
+                    }
+                    int toRead = Math.min(myMaximumSourceViewSize, mySourceBuffer.length) - viewLength;
+                    int read = SVNFileUtil.readIntoBuffer(source, mySourceBuffer, viewLength, toRead);
+                    if (read < toRead) {
+                        sourceEnded = true;
+                    }
+                    viewLength += Math.max(0, read);
+                }
+                if (digest != null) {
+                    digest.update(myTargetBuffer, 0, targetLength);
+                }
+                sendDelta(path, sourceOffset + viewOffset, mySourceBuffer, viewLength, myTargetBuffer, targetLength, consumer);
+                windowSent = true;
+                targetOffset += targetLength;
+            }
+        } catch (IOExceptionWrapper ioew) {
+            throw ioew.getOriginalException();
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+            SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+            return null;
+        }
+        if (consumer != null) {
+            consumer.textDeltaEnd(path);
+        }
+        return SVNFileUtil.toHexDigest(digest);
+    }
+
     /**
      * Generates a series of diff windows of fixed size comparing 
      * target bytes (read from <code>target</code> stream) against an empty file, and sends produced windows to 
@@ -275,6 +385,14 @@ public class SVNDeltaGenerator {
         algorithm.reset();
     }
     
+    private static int getIntegerProperty(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(System.getProperty(name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     private int readToBuffer(InputStream is, byte[] buffer) throws IOException {
         int read = SVNFileUtil.readIntoBuffer(is, buffer, 0, buffer.length);
         if (read <= 0) {
@@ -21,6 +21,7 @@ import java.util.zip.DeflaterOutputStream;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.delta.SVNLZ4;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.util.SVNLogType;
@@ -55,6 +56,12 @@ public class SVNDiffWindow {
      * @since 1.1, new in Subversion 1.4 
      */
     public static final byte[] SVN1_HEADER = new byte[] {'S', 'V', 'N', '\1'};
+
+    /**
+     * Bytes of the delta header of a diff window compressed with LZ4.
+     * @since 1.8.7, new in Subversion 1.10
+     */
+    public static final byte[] SVN2_HEADER = new byte[] {'S', 'V', 'N', '\2'};
     
     /**
      * An empty window (in particular, its instructions length = 0). Corresponds 
@@ -254,6 +261,9 @@ public class SVNDiffWindow {
                 System.arraycopy(oldSourceBuffer, start, applyBaton.mySourceBuffer, 0, (applyBaton.mySourceViewLength - start));
                 length = (applyBaton.mySourceViewLength - start);
             }            
+        } else {
+            // same view as the previous window, it is already in the buffer.
+            length = getSourceViewLength();
         }
         if (length < getSourceViewLength()) {
             // fill what remains.
@@ -453,9 +463,27 @@ public class SVNDiffWindow {
      * @since                 1.1
      */
     public void writeTo(OutputStream os, boolean writeHeader, boolean compress) throws IOException {
+        writeTo(os, writeHeader, compress ? 1 : 0);
+    }
+
+    /**
+     * Formats and writes this window bytes to the specified output stream 
+     * using the given svndiff version.
+     * 
+     * @param os              an output stream to write the window to
+     * @param writeHeader     if <span class="javakeyword">true</span> a window
+     *                        header will be also written
+     * @param version         svndiff version: 0 for non-compressed window ({@link #SVN_HEADER}),  
+     *                        1 for zlib ({@link #SVN1_HEADER}) or 2 for LZ4 ({@link #SVN2_HEADER})
+     *                        compressed window  
+     * @throws IOException
+     * @since                 1.8.7
+     */
+    public void writeTo(OutputStream os, boolean writeHeader, int version) throws IOException {
         if (writeHeader) {
-            os.write(compress ? SVN1_HEADER : SVN_HEADER);
+            os.write(version == 2 ? SVN2_HEADER : (version == 1 ? SVN1_HEADER : SVN_HEADER));
         }
+        boolean compress = version == 1 || version == 2;
         if (!hasInstructions()) {
             return;
         }
@@ -469,9 +497,14 @@ public class SVNDiffWindow {
         int instLength = 0;
         int dataLength = 0;
         if (compress) {
-            instructions = inflate(myData, myDataOffset, myInstructionsLength);
+            if (version == 2) {
+                instructions = compressLZ4(myData, myDataOffset, myInstructionsLength);
+                newData = compressLZ4(myData, myDataOffset + myInstructionsLength, myNewDataLength);
+            } else {
+                instructions = inflate(myData, myDataOffset, myInstructionsLength);
+                newData = inflate(myData, myDataOffset + myInstructionsLength, myNewDataLength);
+            }
             instLength = instructions.remaining();
-            newData = inflate(myData, myDataOffset + myInstructionsLength, myNewDataLength);
             dataLength = newData.remaining();
             SVNDiffInstruction.writeInt(offsets, instLength);
             SVNDiffInstruction.writeInt(offsets, dataLength);
@@ -570,6 +603,19 @@ public class SVNDiffWindow {
         return buffer;
     }
     
+    private static ByteBuffer compressLZ4(byte[] src, int offset, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(SVNLZ4.maxCompressedLength(length) + 10);
+        SVNDiffInstruction.writeInt(buffer, length);
+        int compressedLength = SVNLZ4.compress(src, offset, length, buffer.array(), buffer.arrayOffset() + buffer.position());
+        if (compressedLength >= length) {
+            buffer.put(src, offset, length);
+        } else {
+            buffer.position(buffer.position() + compressedLength);
+        }
+        buffer.flip();
+        return buffer;
+    }
+    
     private class InstructionsIterator implements Iterator {
         
         private SVNDiffInstruction myNextInsruction;
@@ -39,6 +39,7 @@ import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNRevisionProperty;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSChangedPathsIndex;
 import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.io.fs.FSHotCopier;
 import org.tmatesoft.svn.core.internal.io.fs.FSPacker;
@@ -587,6 +588,52 @@ public class SVNAdminClient extends SVNAdminBasicClient {
 
     }
 
+    /**
+     * Creates or brings up to date the changed paths index of a repository.
+     *
+     * <p/>
+     * The index maps repository paths to revisions in which they were changed and makes
+     * log and deleted revision requests faster. Once created, the index is updated on every commit.
+     *
+     * @param  repositoryRoot  root of the repository to index
+     * @throws SVNException
+     * @since  1.8.7
+     */
+    public void doBuildChangedPathsIndex(File repositoryRoot) throws SVNException {
+        FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
+        FSChangedPathsIndex index = null;
+        try {
+            index = FSChangedPathsIndex.create(fsfs);
+            index.update(fsfs, myEventHandler);
+        } finally {
+            if (index != null) {
+                index.close();
+            }
+            SVNAdminHelper.closeRepository(fsfs);
+        }
+    }
+
+    /**
+     * Creates or rewrites the revision times index of a repository.
+     *
+     * <p/>
+     * The index keeps dates of all revisions in a compact file and lets dated revisions
+     * be resolved without reading revision properties. Once created, the index is updated on
+     * every commit and every change of the <code>svn:date</code> revision property.
+     *
+     * @param  repositoryRoot  root of the repository to index
+     * @throws SVNException
+     * @since  1.8.7
+     */
+    public void doBuildRevisionTimesIndex(File repositoryRoot) throws SVNException {
+        FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
+        try {
+            fsfs.buildRevisionTimesIndex(myEventHandler);
+        } finally {
+            SVNAdminHelper.closeRepository(fsfs);
+        }
+    }
+
     /**
      * Completely synchronizes two repositories.
      *
@@ -752,7 +799,6 @@ public class SVNAdminClient extends SVNAdminBasicClient {
     public void doListLocks(File repositoryRoot) throws SVNException {
         FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
         try {
-            File digestFile = fsfs.getDigestFileFromRepositoryPath("/");
             ISVNLockHandler handler = new ISVNLockHandler() {
                 public void handleLock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
                     checkCancelled();
@@ -765,7 +811,7 @@ public class SVNAdminClient extends SVNAdminBasicClient {
                 public void handleUnlock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
                 }
             };
-            fsfs.walkDigestFiles(digestFile, handler, false);
+            fsfs.walkLocks("/", handler, false);
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
         }
@@ -1197,10 +1243,30 @@ public class SVNAdminClient extends SVNAdminBasicClient {
      * @since                       1.2.0, SVN 1.5.0
      */
     public void doHotCopy(File srcRepositoryRoot, File newRepositoryRoot) throws SVNException {
+        doHotCopy(srcRepositoryRoot, newRepositoryRoot, false);
+    }
+
+    /**
+     * Makes a hot copy of a repository located at <code>srcRepositoryRoot</code> to one located at
+     * <code>newRepositoryRoot</code>. This method is identical to the <code>'svnadmin hotcopy --incremental'</code> 
+     * command when <code>incremental</code> is <span class="javakeyword">true</span>.
+     *
+     * <p/>
+     * An incremental hot copy into an existing copy of the same repository only copies new revisions
+     * and packs and those revision properties, locks and other files that changed since the previous copy.
+     * If <code>newRepositoryRoot</code> is not a repository yet, a complete copy is made.
+     *
+     * @param  srcRepositoryRoot   repository to copy data from
+     * @param  newRepositoryRoot   repository to copy data to
+     * @param  incremental         whether to update an existing copy
+     * @throws SVNException
+     * @since  1.8.7
+     */
+    public void doHotCopy(File srcRepositoryRoot, File newRepositoryRoot, boolean incremental) throws SVNException {
         FSFS fsfs = SVNAdminHelper.openRepository(srcRepositoryRoot, false);
         try {
             FSHotCopier copier = getHotCopier();
-            copier.runHotCopy(fsfs, newRepositoryRoot);
+            copier.runHotCopy(fsfs, newRepositoryRoot, incremental);
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
         }
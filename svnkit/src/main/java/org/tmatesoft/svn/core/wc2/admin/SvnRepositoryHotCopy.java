@@ -7,6 +7,7 @@ import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
 public class SvnRepositoryHotCopy extends SvnRepositoryOperation<Long> {
     
     private File srcRepositoryRoot;
+    private boolean incremental;
 
     public SvnRepositoryHotCopy(SvnOperationFactory factory) {
         super(factory);
@@ -27,4 +28,12 @@ public class SvnRepositoryHotCopy extends SvnRepositoryOperation<Long> {
 	public void setNewRepositoryRoot(File newRepositoryRoot) {
 	    setRepositoryRoot(newRepositoryRoot);
 	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
 }
@@ -1,5 +1,7 @@
 package org.tmatesoft.svn.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.Map;
 
@@ -11,15 +13,26 @@ import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNLogEntry;
 import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSFSRegistry;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.io.fs.FSTransactionStore;
+import org.tmatesoft.svn.core.internal.io.fs.repcache.FSRepresentationCacheManager;
 import org.tmatesoft.svn.core.internal.wc.SVNExternal;
+import org.tmatesoft.svn.core.internal.wc.SVNFileListUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.internal.wc17.SVNWCContext;
 import org.tmatesoft.svn.core.internal.wc17.db.Structure;
 import org.tmatesoft.svn.core.internal.wc17.db.StructureFields;
 import org.tmatesoft.svn.core.internal.wc2.SvnWcGeneration;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 import org.tmatesoft.svn.core.wc.DefaultSVNCommitHandler;
 import org.tmatesoft.svn.core.wc.SVNClientManager;
 import org.tmatesoft.svn.core.wc.SVNCommitClient;
@@ -27,6 +40,7 @@ import org.tmatesoft.svn.core.wc.SVNCommitItem;
 import org.tmatesoft.svn.core.wc.SVNCommitPacket;
 import org.tmatesoft.svn.core.wc.SVNRevision;
 import org.tmatesoft.svn.core.wc.SVNStatusType;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
 import org.tmatesoft.svn.core.wc2.SvnCheckout;
 import org.tmatesoft.svn.core.wc2.SvnCommit;
 import org.tmatesoft.svn.core.wc2.SvnLog;
@@ -441,6 +455,209 @@ public class CommitTest {
         }
     }
 
+    @Test
+    public void testInMemoryTransactions() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testInMemoryTransactions", options);
+        final boolean inMemoryTransactions = FSFS.isDefaultInMemoryTransactions();
+        final long spillThreshold = FSFS.getDefaultTransactionSpillThreshold();
+        try {
+            FSFS.setDefaultInMemoryTransactions(true);
+            FSFS.setDefaultTransactionSpillThreshold(4096);
+
+            final SVNURL url = sandbox.createSvnRepository();
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            for (int i = 0; i < 100; i++) {
+                commitBuilder1.addFile("directory" + (i % 5) + "/file" + i, ("contents" + i).getBytes());
+            }
+            commitBuilder1.setDirectoryProperty("directory0", "propertyName", SVNPropertyValue.create("propertyValue"));
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.changeFile("directory1/file1", "changedContents".getBytes());
+            commitBuilder2.setFileProperty("directory2/file2", "propertyName", SVNPropertyValue.create("propertyValue"));
+            commitBuilder2.delete("directory3/file3");
+            commitBuilder2.addDirectoryByCopying("copiedDirectory", "directory4");
+            commitBuilder2.commit();
+
+            final File repositoryRoot = new File(url.getPath());
+            Assert.assertEquals(0, SVNFileListUtil.listFiles(new File(repositoryRoot, "db/transactions")).length);
+
+            final ByteArrayOutputStream dump = new ByteArrayOutputStream();
+            final SVNAdminClient adminClient = SVNClientManager.newInstance().getAdminClient();
+            adminClient.doDump(repositoryRoot, dump, SVNRevision.create(0), SVNRevision.HEAD, false, false);
+
+            final SVNURL loadedUrl = sandbox.createSvnRepository();
+            adminClient.doLoad(new File(loadedUrl.getPath()), new ByteArrayInputStream(dump.toByteArray()));
+
+            final ByteArrayOutputStream loadedDump = new ByteArrayOutputStream();
+            adminClient.doDump(new File(loadedUrl.getPath()), loadedDump, SVNRevision.create(0), SVNRevision.HEAD, false, false);
+            Assert.assertEquals(stripUUID(dump.toString("UTF-8")), stripUUID(loadedDump.toString("UTF-8")));
+
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(loadedUrl);
+            try {
+                Assert.assertEquals(2, svnRepository.getLatestRevision());
+                final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+                final SVNProperties properties = new SVNProperties();
+                svnRepository.getFile("directory1/file1", 2, properties, contents);
+                Assert.assertEquals("changedContents", contents.toString("UTF-8"));
+                svnRepository.getFile("directory2/file2", 2, properties, null);
+                Assert.assertEquals("propertyValue", properties.getStringValue("propertyName"));
+                Assert.assertEquals(SVNNodeKind.NONE, svnRepository.checkPath("directory3/file3", 2));
+                Assert.assertEquals(SVNNodeKind.FILE, svnRepository.checkPath("copiedDirectory/file4", 2));
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            FSFS.setDefaultInMemoryTransactions(inMemoryTransactions);
+            FSFS.setDefaultTransactionSpillThreshold(spillThreshold);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testTransactionStoreReusesSpillSegments() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testTransactionStoreReusesSpillSegments", options);
+        final FSTransactionStore store = new FSTransactionStore(sandbox.createDirectory("transaction"), 0);
+        try {
+            for (int i = 0; i < 100; i++) {
+                store.write("node." + (i % 3), getSpilledContents(i, 1000), 1000, false);
+            }
+            Assert.assertEquals(3000, store.getSpillSize());
+            Assert.assertArrayEquals(getSpilledContents(99, 1000), store.read("node.0"));
+
+            store.delete("node.1");
+            store.write("changes", getSpilledContents(100, 400), 400, false);
+            store.write("changes", getSpilledContents(101, 600), 600, true);
+            Assert.assertEquals(3000, store.getSpillSize());
+            store.delete("node.2");
+            store.delete("node.0");
+            Assert.assertEquals(2000, store.getSpillSize());
+            store.write("node.0", getSpilledContents(102, 1500), 1500, false);
+            Assert.assertEquals(3500, store.getSpillSize());
+
+            final byte[] changes = store.read("changes");
+            Assert.assertEquals(1000, changes.length);
+            Assert.assertEquals(new String(getSpilledContents(100, 400)) + new String(getSpilledContents(101, 600)), new String(changes));
+            Assert.assertArrayEquals(getSpilledContents(102, 1500), store.read("node.0"));
+        } finally {
+            store.dispose();
+            sandbox.dispose();
+        }
+    }
+
+    private static byte[] getSpilledContents(int index, int length) {
+        final byte[] contents = new byte[length];
+        for (int i = 0; i < length; i++) {
+            contents[i] = (byte) ('a' + (index + i) % 26);
+        }
+        return contents;
+    }
+
+    @Test
+    public void testAbandonedInMemoryTransactionsArePurged() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testAbandonedInMemoryTransactionsArePurged", options);
+        final boolean inMemoryTransactions = FSFS.isDefaultInMemoryTransactions();
+        final long transactionStoreTimeout = FSFS.getDefaultTransactionStoreTimeout();
+        try {
+            FSFS.setDefaultInMemoryTransactions(true);
+
+            final SVNURL url = sandbox.createSvnRepository();
+            final File transactionsDir = new File(url.getPath(), "db/transactions");
+            final SVNRepository outOfDateRepository = SVNRepositoryFactory.create(url);
+            final SVNRepository abandonedRepository = SVNRepositoryFactory.create(url);
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                final ISVNEditor outOfDateEditor = outOfDateRepository.getCommitEditor("", null);
+                outOfDateEditor.openRoot(-1);
+                outOfDateEditor.addFile("file", null, -1);
+                outOfDateEditor.closeFile("file", null);
+
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file");
+                commitBuilder.commit();
+
+                try {
+                    outOfDateEditor.closeEdit();
+                    Assert.fail();
+                } catch (SVNException e) {
+                    // the file is added by the other commit
+                }
+                Assert.assertEquals(0, SVNFileListUtil.listFiles(transactionsDir).length);
+
+                final ISVNEditor abandonedEditor = abandonedRepository.getCommitEditor("", null);
+                abandonedEditor.openRoot(-1);
+                Assert.assertEquals(1, SVNFileListUtil.listFiles(transactionsDir).length);
+
+                FSFS.setDefaultTransactionStoreTimeout(0);
+                final ISVNEditor editor = svnRepository.getCommitEditor("", null);
+                editor.openRoot(-1);
+                Assert.assertEquals(1, SVNFileListUtil.listFiles(transactionsDir).length);
+                editor.abortEdit();
+                Assert.assertEquals(0, SVNFileListUtil.listFiles(transactionsDir).length);
+            } finally {
+                outOfDateRepository.closeSession();
+                abandonedRepository.closeSession();
+                svnRepository.closeSession();
+            }
+        } finally {
+            FSFS.setDefaultInMemoryTransactions(inMemoryTransactions);
+            FSFS.setDefaultTransactionStoreTimeout(transactionStoreTimeout);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testRepCacheFilter() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRepCacheFilter", options);
+        final boolean repCacheFilter = FSFS.isDefaultRepCacheFilter();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("file1", "sharedContents1".getBytes());
+            commitBuilder1.commit();
+
+            FSFS.setDefaultRepCacheFilter(true);
+            final FSFS fsfs = FSFSRegistry.acquire(new File(url.getPath()), true);
+            try {
+                Assume.assumeTrue(fsfs.getRepositoryCacheManager() instanceof FSRepresentationCacheManager);
+                final FSRepresentationCacheManager cacheManager = (FSRepresentationCacheManager) fsfs.getRepositoryCacheManager();
+
+                final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+                commitBuilder2.addFile("file2", "sharedContents1".getBytes());
+                commitBuilder2.addFile("file3", "sharedContents2".getBytes());
+                commitBuilder2.commit();
+                Assert.assertTrue(cacheManager.getFilteredLookupsCount() > 0);
+
+                final CommitBuilder commitBuilder3 = new CommitBuilder(url);
+                commitBuilder3.addFile("file4", "sharedContents2".getBytes());
+                commitBuilder3.commit();
+
+                final FSRevisionRoot root = fsfs.createRevisionRoot(3);
+                Assert.assertEquals(1, root.getRevisionNode("file2").getTextRepresentation().getRevision());
+                Assert.assertEquals(2, root.getRevisionNode("file3").getTextRepresentation().getRevision());
+                Assert.assertEquals(2, root.getRevisionNode("file4").getTextRepresentation().getRevision());
+                Assert.assertTrue(cacheManager.mayContainRepresentation(root.getRevisionNode("file4").getTextRepresentation().getSHA1HexDigest()));
+            } finally {
+                FSFSRegistry.release(fsfs);
+            }
+        } finally {
+            FSFS.setDefaultRepCacheFilter(repCacheFilter);
+            sandbox.dispose();
+        }
+    }
+
+    private static String stripUUID(String dump) {
+        return dump.replaceAll("UUID: .*", "");
+    }
+
     private void setIncomplete(SvnOperationFactory svnOperationFactory, File path, long revision, File reposRelpath) throws SVNException {
         SVNWCContext context = new SVNWCContext(svnOperationFactory.getOptions(), svnOperationFactory.getEventHandler());
         try {
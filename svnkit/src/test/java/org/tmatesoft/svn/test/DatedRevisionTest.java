@@ -0,0 +1,122 @@
+package org.tmatesoft.svn.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionTimesIndex;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class DatedRevisionTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long BASE_TIME = 1388534400000L;
+
+    @Test
+    public void testDatedRevisionWithRevisionTimesIndex() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testDatedRevisionWithRevisionTimesIndex", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            for (int i = 1; i <= 5; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file" + i);
+                commitBuilder.commit();
+            }
+
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                for (int revision = 0; revision <= 5; revision++) {
+                    setDate(svnRepository, revision, BASE_TIME + revision * 2 * DAY);
+                }
+
+                final List<Long> expectedRevisions = getDatedRevisions(svnRepository);
+                Assert.assertEquals(Long.valueOf(1), expectedRevisions.get(9));
+
+                final SVNClientManager clientManager = SVNClientManager.newInstance();
+                try {
+                    clientManager.getAdminClient().doBuildRevisionTimesIndex(new File(url.getPath()));
+                } finally {
+                    clientManager.dispose();
+                }
+                final File indexFile = new File(url.getPath(), "db/" + FSRevisionTimesIndex.REVISION_TIMES_INDEX_FILE);
+                Assert.assertEquals(6 * 8, indexFile.length());
+                Assert.assertEquals(expectedRevisions, getDatedRevisions(svnRepository));
+
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file6");
+                commitBuilder.commit();
+                Assert.assertEquals(7 * 8, indexFile.length());
+                setDate(svnRepository, 6, BASE_TIME + 12 * DAY);
+                Assert.assertEquals(6, svnRepository.getDatedRevision(new Date(BASE_TIME + 13 * DAY)));
+
+                Assert.assertEquals(2, svnRepository.getDatedRevision(new Date(BASE_TIME + 5 * DAY)));
+                setDate(svnRepository, 3, BASE_TIME + 4 * DAY + DAY / 2);
+                Assert.assertEquals(2, svnRepository.getDatedRevision(new Date(BASE_TIME + 4 * DAY + DAY / 4)));
+                Assert.assertEquals(3, svnRepository.getDatedRevision(new Date(BASE_TIME + 5 * DAY)));
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testRevisionTimesIndexBefore1970() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testRevisionTimesIndexBefore1970", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("file");
+            commitBuilder.commit();
+
+            final String date = "1969-12-31T23:59:59.998500Z";
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                svnRepository.setRevisionPropertyValue(1, SVNRevisionProperty.DATE, SVNPropertyValue.create(date));
+            } finally {
+                svnRepository.closeSession();
+            }
+
+            final SVNClientManager clientManager = SVNClientManager.newInstance();
+            try {
+                clientManager.getAdminClient().doBuildRevisionTimesIndex(new File(url.getPath()));
+            } finally {
+                clientManager.dispose();
+            }
+            final File indexFile = new File(url.getPath(), "db/" + FSRevisionTimesIndex.REVISION_TIMES_INDEX_FILE);
+            final FSRevisionTimesIndex index = FSRevisionTimesIndex.load(indexFile, -1);
+            Assert.assertEquals(date, index.getTime(1).format());
+            Assert.assertEquals(SVNDate.parseDate(date).getTimeInMicros(), index.getTime(1).getTimeInMicros());
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private static void setDate(SVNRepository svnRepository, long revision, long time) throws SVNException {
+        final String date = new SVNDate(time, 0).format();
+        svnRepository.setRevisionPropertyValue(revision, SVNRevisionProperty.DATE, SVNPropertyValue.create(date));
+    }
+
+    private static List<Long> getDatedRevisions(SVNRepository svnRepository) throws SVNException {
+        final List<Long> revisions = new ArrayList<Long>();
+        for (long time = BASE_TIME - DAY; time <= BASE_TIME + 11 * DAY; time += DAY / 2) {
+            revisions.add(svnRepository.getDatedRevision(new Date(time)));
+        }
+        return revisions;
+    }
+}
@@ -0,0 +1,479 @@
+package org.tmatesoft.svn.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
+import org.tmatesoft.svn.core.internal.delta.SVNFastXDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNLZ4;
+import org.tmatesoft.svn.core.internal.delta.SVNVDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class DeltaCompressionTest {
+
+    @Test
+    public void testLZ4RoundTrip() throws Exception {
+        final Random random = new Random(0);
+        final byte[] incompressible = new byte[10000];
+        random.nextBytes(incompressible);
+
+        assertLZ4RoundTrip(new byte[0]);
+        assertLZ4RoundTrip("short".getBytes());
+        assertLZ4RoundTrip(incompressible);
+        assertLZ4RoundTrip(createText(100000));
+
+        final byte[] repeated = new byte[70000];
+        Arrays.fill(repeated, (byte) 'x');
+        assertLZ4RoundTrip(repeated);
+    }
+
+    @Test
+    public void testFastXDeltaIsIdentical() throws Exception {
+        final Random random = new Random(0);
+        final SVNDeltaAlgorithm fastXDelta = new SVNFastXDeltaAlgorithm();
+        final byte[] text = createText(100000);
+        final byte[] binary = new byte[100000];
+        random.nextBytes(binary);
+        final byte[] zeros = new byte[100000];
+
+        assertXDeltaIsIdentical(fastXDelta, new byte[0], text);
+        assertXDeltaIsIdentical(fastXDelta, text, "short".getBytes());
+        assertXDeltaIsIdentical(fastXDelta, text, text);
+        assertXDeltaIsIdentical(fastXDelta, binary, text);
+        assertXDeltaIsIdentical(fastXDelta, zeros, zeros);
+        assertXDeltaIsIdentical(fastXDelta, Arrays.copyOf(text, 1000), text);
+        assertXDeltaIsIdentical(fastXDelta, text, Arrays.copyOf(text, 1000));
+        for (int i = 0; i < 20; i++) {
+            final byte[] source = random.nextBoolean() ? text : binary;
+            assertXDeltaIsIdentical(fastXDelta, source, edit(source, random));
+            assertXDeltaIsIdentical(fastXDelta, Arrays.copyOf(source, 1 + random.nextInt(source.length)), edit(source, random));
+        }
+    }
+
+    @Test
+    public void testVDeltaWindows() throws Exception {
+        final Random random = new Random(0);
+        final SVNDeltaAlgorithm vDelta = new SVNVDeltaAlgorithm();
+        final byte[] text = createText(100000);
+        // the same instance handles windows of decreasing and growing sizes
+        assertVDeltaWindow(vDelta, text, edit(text, random));
+        assertVDeltaWindow(vDelta, Arrays.copyOf(text, 5000), edit(Arrays.copyOf(text, 5000), random));
+        assertVDeltaWindow(vDelta, new byte[0], text);
+        assertVDeltaWindow(vDelta, edit(text, random), text);
+    }
+
+    @Test
+    public void testSvndiff2Windows() throws Exception {
+        final byte[] source = createText(50000);
+        final byte[] target = new byte[source.length + 10];
+        System.arraycopy(source, 0, target, 10, source.length);
+        System.arraycopy("new bytes\n".getBytes(), 0, target, 0, 10);
+
+        final byte[] svndiff0 = createDelta(source, target, 0);
+        final byte[] svndiff2 = createDelta(source, createText(60000), 2);
+        Assert.assertEquals('\2', svndiff2[3]);
+        Assert.assertTrue(svndiff2.length < createDelta(source, createText(60000), 0).length);
+
+        Assert.assertArrayEquals(target, applyDelta(source, svndiff0, target.length));
+        Assert.assertArrayEquals(target, applyDelta(source, createDelta(source, target, 2), target.length));
+        Assert.assertArrayEquals(createText(60000), applyDelta(source, svndiff2, 60000));
+    }
+
+    @Test
+    public void testSvndiff1Windows() throws Exception {
+        final byte[] source = createText(300000);
+        final byte[] target = createText(350000);
+        final byte[] incompressible = new byte[250000];
+        new Random(0).nextBytes(incompressible);
+
+        // several windows of different sizes go through the same decompression buffers
+        Assert.assertArrayEquals(target, applyDelta(source, createDelta(source, target, 1), target.length));
+        Assert.assertArrayEquals(incompressible, applyDelta(source, createDelta(source, incompressible, 1), incompressible.length));
+        Assert.assertArrayEquals(source, applyDelta(new byte[0], createDelta(new byte[0], source, 1), source.length));
+    }
+
+    @Test
+    public void testSlidingSourceView() throws Exception {
+        final Random random = new Random(0);
+        final byte[] source = new byte[1000000];
+        random.nextBytes(source);
+        // a removal of 100000 bytes shifts all later windows
+        final byte[] target = new byte[901000];
+        random.nextBytes(target);
+        System.arraycopy(source, 0, target, 1000, 600000);
+        System.arraycopy(source, 700000, target, 601000, 300000);
+
+        final byte[] alignedDelta = createDelta(new SVNDeltaGenerator(), source, target);
+        final byte[] slidingDelta = createDelta(new SVNDeltaGenerator(100 * 1024, 300 * 1024), source, target);
+        final byte[] wholeSourceDelta = createDelta(new SVNDeltaGenerator(100 * 1024, 2000000), source, target);
+
+        Assert.assertTrue(alignedDelta.length > 250000);
+        Assert.assertTrue(slidingDelta.length < 10000);
+        Assert.assertTrue(wholeSourceDelta.length < 10000);
+        Assert.assertArrayEquals(target, applyDelta(source, alignedDelta, 100 * 1024));
+        Assert.assertArrayEquals(target, applyDelta(source, slidingDelta, 100 * 1024));
+        Assert.assertArrayEquals(target, applyDelta(source, wholeSourceDelta, 100 * 1024));
+        Assert.assertArrayEquals(target, applyDeltaToStream(source, new SVNDeltaGenerator(100 * 1024, 300 * 1024), target));
+        Assert.assertArrayEquals(target, applyDeltaToStream(source, new SVNDeltaGenerator(100 * 1024, 2000000), target));
+
+        final byte[] shortTarget = Arrays.copyOf(target, 5000);
+        Assert.assertArrayEquals(shortTarget, applyDelta(source, createDelta(new SVNDeltaGenerator(100 * 1024, 300 * 1024), source, shortTarget), shortTarget.length));
+        Assert.assertArrayEquals(target, applyDelta(new byte[0], createDelta(new SVNDeltaGenerator(100 * 1024, 300 * 1024), new byte[0], target), 100 * 1024));
+    }
+
+    @Test
+    public void testPipelinedDeltaRepresentations() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testPipelinedDeltaRepresentations", options);
+        final int deltaThreads = FSFS.getDefaultDeltaThreads();
+        try {
+            final byte[] firstContents = createText(1000000);
+            final byte[] secondContents = new byte[firstContents.length + 1000];
+            System.arraycopy(firstContents, 0, secondContents, 0, 300000);
+            System.arraycopy(createText(1000), 0, secondContents, 300000, 1000);
+            System.arraycopy(firstContents, 300000, secondContents, 301000, firstContents.length - 300000);
+
+            FSFS.setDefaultDeltaThreads(0);
+            final SVNURL sequentialUrl = sandbox.createSvnRepository();
+            commitContents(sequentialUrl, firstContents, secondContents);
+
+            FSFS.setDefaultDeltaThreads(4);
+            final SVNURL pipelinedUrl = sandbox.createSvnRepository();
+            commitContents(pipelinedUrl, firstContents, secondContents);
+
+            final byte[] revisionFile = SVNFileUtil.readFully(new File(pipelinedUrl.getPath(), "db/revs/0/2"));
+            Assert.assertTrue(new String(revisionFile, "ISO-8859-1").contains("DELTA 1 "));
+            Assert.assertTrue(revisionFile.length < secondContents.length / 10);
+
+            final FSFS sequentialFSFS = new FSFS(new File(sequentialUrl.getPath()));
+            final FSFS pipelinedFSFS = new FSFS(new File(pipelinedUrl.getPath()));
+            sequentialFSFS.open();
+            pipelinedFSFS.open();
+            try {
+                for (long revision = 1; revision <= 2; revision++) {
+                    final FSRevisionNode sequentialNode = sequentialFSFS.createRevisionRoot(revision).getRevisionNode("file");
+                    final FSRevisionNode pipelinedNode = pipelinedFSFS.createRevisionRoot(revision).getRevisionNode("file");
+                    Assert.assertEquals(sequentialNode.getFileMD5Checksum(), pipelinedNode.getFileMD5Checksum());
+                    Assert.assertEquals(sequentialNode.getFileSHA1Checksum(), pipelinedNode.getFileSHA1Checksum());
+                }
+                final FSRevisionRoot root1 = pipelinedFSFS.createRevisionRoot(1);
+                final FSRevisionRoot root2 = pipelinedFSFS.createRevisionRoot(2);
+                Assert.assertArrayEquals(firstContents, readContents(root1.getFileStreamForPath(new SVNDeltaCombiner(), "file")));
+                Assert.assertArrayEquals(secondContents, readContents(root2.getFileStreamForPath(new SVNDeltaCombiner(), "file")));
+            } finally {
+                sequentialFSFS.close();
+                pipelinedFSFS.close();
+            }
+        } finally {
+            FSFS.setDefaultDeltaThreads(deltaThreads);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testDeltaThreadsChangedWhileWriting() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testDeltaThreadsChangedWhileWriting", options);
+        final int deltaThreads = FSFS.getDefaultDeltaThreads();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final byte[] contents = createText(1000000);
+
+            FSFS.setDefaultDeltaThreads(0);
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                final ISVNEditor editor = svnRepository.getCommitEditor("", null);
+                editor.openRoot(-1);
+                editor.addFile("file", null, -1);
+                editor.applyTextDelta("file", null);
+                final String checksum = new SVNDeltaGenerator().sendDelta("file", new ByteArrayInputStream(contents), new ISVNDeltaConsumer() {
+                    private int myChunks;
+
+                    public void applyTextDelta(String path, String baseChecksum) {
+                    }
+
+                    public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+                        // the stream has flushed its buffer without the pipeline by now
+                        if (++myChunks == 3) {
+                            FSFS.setDefaultDeltaThreads(4);
+                        }
+                        return editor.textDeltaChunk(path, diffWindow);
+                    }
+
+                    public void textDeltaEnd(String path) throws SVNException {
+                        editor.textDeltaEnd(path);
+                    }
+                }, true);
+                editor.closeFile("file", checksum);
+                editor.closeDir();
+                editor.closeEdit();
+
+                final ByteArrayOutputStream fileContents = new ByteArrayOutputStream();
+                svnRepository.getFile("file", 1, null, fileContents);
+                Assert.assertArrayEquals(contents, fileContents.toByteArray());
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            FSFS.setDefaultDeltaThreads(deltaThreads);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testDeltificationOptions() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testDeltificationOptions", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File configFile = new File(url.getPath(), "db/" + FSFS.PATH_CONFIG);
+            final String config = configFile.isFile() ? new String(SVNFileUtil.readFully(configFile), "UTF-8") : "";
+            SVNFileUtil.writeToFile(configFile, config + "\n[" + FSFS.DELTIFICATION_SECTION + "]\n" +
+                    FSFS.MAX_LINEAR_DELTIFICATION_OPTION + " = 16\n" +
+                    FSFS.FULLTEXT_INTERVAL_OPTION + " = 4\n", "UTF-8");
+
+            final int revisions = 10;
+            for (int revision = 1; revision <= revisions; revision++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                if (revision == 1) {
+                    commitBuilder.addFile("file", createRevisionText(revision));
+                } else {
+                    commitBuilder.changeFile("file", createRevisionText(revision));
+                }
+                commitBuilder.commit();
+            }
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                Assert.assertEquals(16, fsfs.getMaxLinearDeltification());
+                Assert.assertEquals(4, fsfs.getFulltextInterval());
+                for (long revision = 1; revision <= revisions; revision++) {
+                    final FSRevisionRoot root = fsfs.createRevisionRoot(revision);
+                    final String header = readRepresentationHeader(url, root.getRevisionNode("file"));
+                    final long predecessors = revision - 1;
+                    if (predecessors % 4 == 0) {
+                        Assert.assertEquals("DELTA", header);
+                    } else {
+                        Assert.assertTrue(header, header.startsWith("DELTA " + (revision - 1) + " "));
+                    }
+                    Assert.assertArrayEquals(createRevisionText(revision), readContents(root.getFileStreamForPath(new SVNDeltaCombiner(), "file")));
+                }
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private static byte[] createRevisionText(long revision) throws IOException {
+        return (new String(createText(10000), "UTF-8") + "changed in r" + revision + "\n").getBytes("UTF-8");
+    }
+
+    private static String readRepresentationHeader(SVNURL url, FSRevisionNode node) throws SVNException, IOException {
+        final byte[] revisionFile = SVNFileUtil.readFully(new File(url.getPath(), "db/revs/0/" + node.getTextRepresentation().getRevision()));
+        final int offset = (int) node.getTextRepresentation().getOffset();
+        int end = offset;
+        while (revisionFile[end] != '\n') {
+            end++;
+        }
+        return new String(revisionFile, offset, end - offset, "ISO-8859-1");
+    }
+
+    private static void commitContents(SVNURL url, byte[] firstContents, byte[] secondContents) throws SVNException {
+        final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+        commitBuilder1.addFile("file", firstContents);
+        commitBuilder1.commit();
+
+        final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+        commitBuilder2.changeFile("file", secondContents);
+        commitBuilder2.commit();
+    }
+
+    private static void assertLZ4RoundTrip(byte[] data) throws IOException {
+        final byte[] compressed = new byte[SVNLZ4.maxCompressedLength(data.length) + 3];
+        final int compressedLength = SVNLZ4.compress(data, 0, data.length, compressed, 3);
+        final byte[] decompressed = new byte[data.length + 5];
+        Assert.assertEquals(data.length, SVNLZ4.decompress(compressed, 3, compressedLength, decompressed, 5, data.length));
+        Assert.assertArrayEquals(data, Arrays.copyOfRange(decompressed, 5, decompressed.length));
+    }
+
+    private static byte[] createText(int length) {
+        final StringBuilder text = new StringBuilder();
+        for (int line = 0; text.length() < length; line++) {
+            text.append("line ").append(line % 97).append(" of the text, ").append(line * 31 % 1000).append('\n');
+        }
+        return text.substring(0, length).getBytes();
+    }
+
+    private static byte[] createDelta(byte[] source, byte[] target, final int version) throws SVNException {
+        return createDelta(new SVNDeltaGenerator(), source, target, version);
+    }
+
+    private static byte[] createDelta(SVNDeltaGenerator deltaGenerator, byte[] source, byte[] target) throws SVNException {
+        return createDelta(deltaGenerator, source, target, 0);
+    }
+
+    private static byte[] createDelta(SVNDeltaGenerator deltaGenerator, byte[] source, byte[] target, final int version) throws SVNException {
+        final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        deltaGenerator.sendDelta("file", new ByteArrayInputStream(source), 0, new ByteArrayInputStream(target), new ISVNDeltaConsumer() {
+            private boolean myIsHeaderWritten;
+
+            public void applyTextDelta(String path, String baseChecksum) {
+            }
+
+            public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+                try {
+                    diffWindow.writeTo(delta, !myIsHeaderWritten, version);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                myIsHeaderWritten = true;
+                return SVNFileUtil.DUMMY_OUT;
+            }
+
+            public void textDeltaEnd(String path) {
+            }
+        }, false);
+        return delta.toByteArray();
+    }
+
+    private static void assertXDeltaIsIdentical(SVNDeltaAlgorithm fastXDelta, byte[] source, byte[] target) {
+        final SVNDeltaAlgorithm xDelta = new SVNXDeltaAlgorithm();
+        xDelta.computeDelta(source, source.length, target, target.length);
+        fastXDelta.computeDelta(source, source.length, target, target.length);
+
+        Assert.assertEquals(xDelta.getInstructionsLength(), fastXDelta.getInstructionsLength());
+        Assert.assertEquals(xDelta.getNewDataLength(), fastXDelta.getNewDataLength());
+        final ByteBuffer expected = xDelta.getData();
+        final ByteBuffer actual = fastXDelta.getData();
+        Assert.assertArrayEquals(Arrays.copyOf(expected.array(), expected.limit()), Arrays.copyOf(actual.array(), actual.limit()));
+        xDelta.reset();
+        fastXDelta.reset();
+    }
+
+    private static void assertVDeltaWindow(SVNDeltaAlgorithm vDelta, byte[] source, byte[] target) {
+        vDelta.computeDelta(source, source.length, target, target.length);
+        final SVNDiffWindow window = new SVNDiffWindow(0, source.length, target.length, vDelta.getInstructionsLength(), vDelta.getNewDataLength());
+        window.setData(vDelta.getData());
+        final byte[] result = new byte[target.length];
+        window.apply(source, result);
+        vDelta.reset();
+        Assert.assertArrayEquals(target, result);
+    }
+
+    private static byte[] edit(byte[] source, Random random) {
+        final ByteArrayOutputStream target = new ByteArrayOutputStream();
+        int offset = 0;
+        while (offset < source.length) {
+            final int length = Math.min(source.length - offset, random.nextInt(5000));
+            switch (random.nextInt(4)) {
+                case 0:
+                    // skip a part of the source
+                    break;
+                case 1:
+                    final byte[] inserted = new byte[random.nextInt(300)];
+                    random.nextBytes(inserted);
+                    target.write(inserted, 0, inserted.length);
+                    target.write(source, offset, length);
+                    break;
+                case 2:
+                    // repeat a block from anywhere in the source
+                    final int from = random.nextInt(source.length);
+                    target.write(source, from, Math.min(source.length - from, length));
+                    break;
+                default:
+                    target.write(source, offset, length);
+                    break;
+            }
+            offset += length;
+        }
+        return target.toByteArray();
+    }
+
+    private static byte[] applyDeltaToStream(byte[] source, SVNDeltaGenerator deltaGenerator, byte[] target) throws SVNException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final SVNDeltaProcessor deltaProcessor = new SVNDeltaProcessor();
+        deltaProcessor.applyTextDelta(new ByteArrayInputStream(source), result, false);
+        deltaGenerator.sendDelta("file", new ByteArrayInputStream(source), 0, new ByteArrayInputStream(target), new ISVNDeltaConsumer() {
+            public void applyTextDelta(String path, String baseChecksum) {
+            }
+
+            public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+                return deltaProcessor.textDeltaChunk(diffWindow);
+            }
+
+            public void textDeltaEnd(String path) {
+                deltaProcessor.textDeltaEnd();
+            }
+        }, false);
+        return result.toByteArray();
+    }
+
+    private static byte[] applyDelta(final byte[] source, byte[] delta, int targetLength) throws SVNException {
+        final ByteArrayOutputStream target = new ByteArrayOutputStream();
+        final byte[] targetBuffer = new byte[targetLength];
+        final SVNDeltaReader reader = new SVNDeltaReader();
+        // feed the reader in small chunks to cover windows split between reads
+        for (int offset = 0; offset < delta.length; offset += 1000) {
+            reader.nextWindow(delta, offset, Math.min(1000, delta.length - offset), "file", new ISVNDeltaConsumer() {
+                public void applyTextDelta(String path, String baseChecksum) {
+                }
+
+                public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+                    final byte[] sourceView = Arrays.copyOfRange(source, (int) diffWindow.getSourceViewOffset(),
+                            (int) diffWindow.getSourceViewOffset() + diffWindow.getSourceViewLength());
+                    final int length = diffWindow.apply(sourceView, targetBuffer);
+                    target.write(targetBuffer, 0, length);
+                    return SVNFileUtil.DUMMY_OUT;
+                }
+
+                public void textDeltaEnd(String path) {
+                }
+            });
+        }
+        return target.toByteArray();
+    }
+
+    private static byte[] readContents(InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+}
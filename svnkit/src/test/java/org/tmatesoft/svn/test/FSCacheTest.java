@@ -0,0 +1,420 @@
+package org.tmatesoft.svn.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.internal.io.fs.FSCache;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSFileHandlePool;
+import org.tmatesoft.svn.core.internal.io.fs.FSID;
+import org.tmatesoft.svn.core.internal.io.fs.FSPacker;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+
+public class FSCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        final FSCache<String, String> cache = new FSCache<String, String>(2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        Assert.assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("1", cache.get("a"));
+        Assert.assertEquals("3", cache.get("c"));
+        Assert.assertEquals(3, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testWeightLimit() throws Exception {
+        final FSCache<String, String> cache = new FSCache<String, String>(10) {
+            protected long getWeight(String key, String value) {
+                return value.length();
+            }
+        };
+        cache.put("a", "1234");
+        cache.put("b", "1234");
+        cache.put("c", "12345678901");
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(8, cache.getWeight());
+
+        cache.put("d", "1234");
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(8, cache.getWeight());
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testDirContentsAreSharedAndImmutable() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testDirContentsAreSharedAndImmutable", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("trunk/file1", "contents".getBytes());
+            commitBuilder1.commit();
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final FSRevisionNode trunkNode = fsfs.createRevisionRoot(1).getRevisionNode("/trunk");
+                final Map firstEntries = trunkNode.getDirEntries(fsfs);
+                final long hits = fsfs.getDirContentsCache().getHitCount();
+                final Map secondEntries = fsfs.getRevisionNode(trunkNode.getId()).getDirEntries(fsfs);
+                Assert.assertEquals(1, firstEntries.size());
+                Assert.assertEquals(hits + 1, fsfs.getDirContentsCache().getHitCount());
+                Assert.assertEquals(firstEntries, secondEntries);
+                try {
+                    secondEntries.remove("file1");
+                    Assert.fail();
+                } catch (UnsupportedOperationException e) {
+                    //expected
+                }
+            } finally {
+                fsfs.close();
+            }
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.addFile("trunk/file2", "contents".getBytes());
+            commitBuilder2.delete("trunk/file1");
+            commitBuilder2.commit();
+
+            final FSFS reopened = new FSFS(new File(url.getPath()));
+            reopened.open();
+            try {
+                final Map oldEntries = reopened.createRevisionRoot(1).getRevisionNode("/trunk").getDirEntries(reopened);
+                final Map newEntries = reopened.createRevisionRoot(2).getRevisionNode("/trunk").getDirEntries(reopened);
+                Assert.assertTrue(oldEntries.containsKey("file1"));
+                Assert.assertFalse(newEntries.containsKey("file1"));
+                Assert.assertTrue(newEntries.containsKey("file2"));
+            } finally {
+                reopened.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testFulltextCache() throws Exception {
+        doTestFulltextCache(false);
+    }
+
+    @Test
+    public void testOffHeapFulltextCache() throws Exception {
+        doTestFulltextCache(true);
+    }
+
+    private void doTestFulltextCache(boolean offHeap) throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testFulltextCache." + offHeap, options);
+        final long defaultCacheSize = FSFS.getDefaultFulltextCacheSize();
+        final boolean defaultOffHeap = FSFS.isDefaultFulltextCacheOffHeap();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("file", "first line\n".getBytes());
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.changeFile("file", "first line\nsecond line\n".getBytes());
+            commitBuilder2.commit();
+
+            FSFS.setDefaultFulltextCacheSize(1024 * 1024);
+            FSFS.setDefaultFulltextCacheOffHeap(offHeap);
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final FSCache<String, ByteBuffer> fulltextCache = fsfs.getFulltextCache();
+                final FSRevisionRoot root = fsfs.createRevisionRoot(2);
+
+                Assert.assertEquals("first line\nsecond line\n", readContents(root.getFileStreamForPath(new SVNDeltaCombiner(), "file")));
+                Assert.assertEquals(0, fulltextCache.getHitCount());
+                Assert.assertEquals(1, fulltextCache.size());
+
+                Assert.assertEquals("first line\nsecond line\n", readContents(root.getFileStreamForPath(new SVNDeltaCombiner(), "file")));
+                Assert.assertEquals(1, fulltextCache.getHitCount());
+                Assert.assertEquals("first line\n", readContents(fsfs.createRevisionRoot(1).getFileStreamForPath(new SVNDeltaCombiner(), "file")));
+                Assert.assertEquals(2, fulltextCache.size());
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            FSFS.setDefaultFulltextCacheSize(defaultCacheSize);
+            FSFS.setDefaultFulltextCacheOffHeap(defaultOffHeap);
+            sandbox.dispose();
+        }
+    }
+
+    private static String readContents(InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            final byte[] buffer = new byte[3];
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return new String(outputStream.toByteArray());
+    }
+
+    @Test
+    public void testPackManifestsCache() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testPackManifestsCache", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                fsfs.writeDBFormat(fsfs.getDBFormat(), 10, true);
+            } finally {
+                fsfs.close();
+            }
+            for (int i = 0; i < 25; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file" + i, ("contents" + i).getBytes());
+                commitBuilder.commit();
+            }
+
+            final FSFS packedFSFS = new FSFS(repositoryRoot);
+            packedFSFS.open();
+            try {
+                new FSPacker(null).pack(packedFSFS);
+
+                final FSCache<Long, long[]> manifestsCache = packedFSFS.getPackManifestsCache();
+                for (int revision = 1; revision <= 25; revision++) {
+                    final FSRevisionRoot root = packedFSFS.createRevisionRoot(revision);
+                    Assert.assertEquals("contents" + (revision - 1),
+                            readContents(root.getFileStreamForPath(new SVNDeltaCombiner(), "file" + (revision - 1))));
+                }
+                Assert.assertEquals(2, manifestsCache.size());
+                Assert.assertEquals(2, manifestsCache.getMissCount());
+                Assert.assertTrue(manifestsCache.getHitCount() > 0);
+            } finally {
+                packedFSFS.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testMappedRevisionFiles() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testMappedRevisionFiles", options);
+        final long defaultThreshold = FSFS.getDefaultMappedFileThreshold();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("trunk/file", "first line\n".getBytes());
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.changeFile("trunk/file", "first line\nsecond line\n".getBytes());
+            commitBuilder2.commit();
+
+            FSFS.setDefaultMappedFileThreshold(1);
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final FSRevisionRoot root = fsfs.createRevisionRoot(2);
+                Assert.assertEquals("first line\nsecond line\n", readContents(root.getFileStreamForPath(new SVNDeltaCombiner(), "trunk/file")));
+                Assert.assertEquals(1, root.getRevisionNode("trunk").getDirEntries(fsfs).size());
+                Assert.assertEquals(2, fsfs.getMappedFilesCache().size());
+                Assert.assertTrue(fsfs.getMappedFilesCache().getHitCount() > 0);
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            FSFS.setDefaultMappedFileThreshold(defaultThreshold);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testFileHandlePool() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testFileHandlePool", options);
+        final int defaultMaxIdleHandles = FSFS.getDefaultMaxIdleFileHandles();
+        try {
+            Assert.assertEquals(0, defaultMaxIdleHandles);
+            FSFS.setDefaultMaxIdleFileHandles(16);
+
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("trunk/file1", "contents1".getBytes());
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.addFile("trunk/file2", "contents2".getBytes());
+            commitBuilder2.commit();
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            final FSFileHandlePool handlePool = fsfs.getFileHandlePool();
+            try {
+                final FSRevisionRoot root = fsfs.createRevisionRoot(2);
+                Assert.assertEquals("contents1", readContents(root.getFileStreamForPath(new SVNDeltaCombiner(), "trunk/file1")));
+                Assert.assertEquals("contents2", readContents(root.getFileStreamForPath(new SVNDeltaCombiner(), "trunk/file2")));
+
+                Assert.assertEquals(2, handlePool.getOpenCount());
+                Assert.assertTrue(handlePool.getReuseCount() > 0);
+                Assert.assertEquals(2, handlePool.getOpenHandlesCount());
+                Assert.assertEquals(2, handlePool.getIdleHandlesCount());
+            } finally {
+                fsfs.close();
+            }
+            Assert.assertEquals(0, handlePool.getOpenHandlesCount());
+
+            final File revisionFile = new File(url.getPath(), "db/revs/0/1");
+            final File otherRevisionFile = new File(url.getPath(), "db/revs/0/2");
+            final FSFileHandlePool smallPool = new FSFileHandlePool(1, 60000);
+            final FileChannel channel = smallPool.acquire(revisionFile);
+            final FileChannel otherChannel = smallPool.acquire(otherRevisionFile);
+            Assert.assertSame(channel, smallPool.acquire(revisionFile));
+            smallPool.release(revisionFile, channel);
+            smallPool.release(revisionFile, channel);
+            smallPool.release(otherRevisionFile, otherChannel);
+
+            Assert.assertEquals(1, smallPool.getOpenHandlesCount());
+            Assert.assertEquals(1, smallPool.getIdleHandlesCount());
+            Assert.assertFalse(channel.isOpen());
+            Assert.assertTrue(otherChannel.isOpen());
+            smallPool.closeIdleHandles();
+            Assert.assertFalse(otherChannel.isOpen());
+        } finally {
+            FSFS.setDefaultMaxIdleFileHandles(defaultMaxIdleHandles);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testRevisionPropertiesCacheIsInvalidatedByOtherInstances() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRevisionPropertiesCacheIsInvalidatedByOtherInstances", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.setCommitMessage("message");
+            commitBuilder.addFile("file");
+            commitBuilder.commit();
+
+            final FSFS reader = new FSFS(repositoryRoot);
+            reader.open();
+            final FSFS writer = new FSFS(repositoryRoot);
+            writer.open();
+            try {
+                final FSCache<Long, SVNProperties> revisionPropertiesCache = reader.getRevisionPropertiesCache();
+                Assert.assertEquals("message", reader.getRevisionProperties(1).getStringValue(SVNRevisionProperty.LOG));
+                Assert.assertEquals("message", reader.getRevisionProperties(1).getStringValue(SVNRevisionProperty.LOG));
+                Assert.assertEquals(1, revisionPropertiesCache.getHitCount());
+
+                final File generationFile = new File(repositoryRoot, "db/" + FSFS.REVPROP_GENERATION_FILE);
+                final long generation = generationFile.isFile() ? Long.parseLong(SVNFileUtil.readFile(generationFile).trim()) : 0;
+                writer.setRevisionProperty(1, SVNRevisionProperty.LOG, SVNPropertyValue.create("changed"));
+                Assert.assertEquals(generation + 2, Long.parseLong(SVNFileUtil.readFile(generationFile).trim()));
+                Assert.assertEquals("changed", reader.getRevisionProperties(1).getStringValue(SVNRevisionProperty.LOG));
+                Assert.assertEquals(1, revisionPropertiesCache.getHitCount());
+
+                final SVNProperties properties = reader.getRevisionProperties(1);
+                properties.put(SVNRevisionProperty.LOG, "modified by caller");
+                Assert.assertEquals("changed", reader.getRevisionProperties(1).getStringValue(SVNRevisionProperty.LOG));
+                Assert.assertEquals(3, revisionPropertiesCache.getHitCount());
+            } finally {
+                writer.close();
+                reader.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testRevisionNodesAreSharedBetweenRoots() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRevisionNodesAreSharedBetweenRoots", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("trunk/directory/file", "contents".getBytes());
+            commitBuilder.commit();
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final FSRevisionRoot firstRoot = fsfs.createRevisionRoot(1);
+                final FSRevisionNode firstNode = firstRoot.getRevisionNode("/trunk/directory/file");
+
+                final FSCache<String, FSRevisionNode> pathCache = fsfs.getRevisionNodesByPathCache();
+                final long hits = pathCache.getHitCount();
+
+                final FSRevisionRoot secondRoot = fsfs.createRevisionRoot(1);
+                final FSRevisionNode secondNode = secondRoot.getRevisionNode("/trunk/directory/file");
+
+                // roots of different sessions get their own copies of the cached node
+                Assert.assertNotSame(firstNode, secondNode);
+                Assert.assertEquals(firstNode.getId(), secondNode.getId());
+                Assert.assertTrue(pathCache.getHitCount() > hits);
+
+                final FSCache<FSID, FSRevisionNode> idCache = fsfs.getRevisionNodesCache();
+                final FSRevisionNode nodeById = fsfs.getRevisionNode(firstNode.getId());
+                final long idHits = idCache.getHitCount();
+                final FSRevisionNode cachedNodeById = fsfs.getRevisionNode(firstNode.getId());
+
+                Assert.assertEquals(idHits + 1, idCache.getHitCount());
+                Assert.assertNotSame(nodeById, cachedNodeById);
+                Assert.assertEquals(nodeById.getId(), cachedNodeById.getId());
+                Assert.assertEquals(nodeById.getFileMD5Checksum(), cachedNodeById.getFileMD5Checksum());
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,288 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.io.fs.FSCommitQueue;
+import org.tmatesoft.svn.core.internal.io.fs.FSCommitter;
+import org.tmatesoft.svn.core.internal.io.fs.FSDeltaConsumer;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSFSRegistry;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.io.fs.FSTransactionInfo;
+import org.tmatesoft.svn.core.internal.io.fs.FSTransactionRoot;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+
+public class FSCommitQueueTest {
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testGroupCommit", options);
+        final boolean groupCommit = FSFS.isDefaultGroupCommit();
+        final boolean syncCommits = FSFS.isDefaultSyncCommits();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final int threadsCount = 8;
+            final int commits = 5;
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            for (int thread = 0; thread < threadsCount; thread++) {
+                commitBuilder.addFile("directory/file" + thread, getContents(1, thread));
+            }
+            commitBuilder.commit();
+
+            FSFS.setDefaultGroupCommit(true);
+            FSFS.setDefaultSyncCommits(true);
+            final FSFS fsfs = FSFSRegistry.acquire(new File(url.getPath()), true);
+            try {
+                final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+                final List<Thread> threads = new ArrayList<Thread>();
+                for (int i = 0; i < threadsCount; i++) {
+                    final int file = i;
+                    threads.add(new Thread() {
+                        public void run() {
+                            try {
+                                for (int commit = 0; commit < commits; commit++) {
+                                    final CommitBuilder commitBuilder = new CommitBuilder(url);
+                                    commitBuilder.changeFile("directory/file" + file, getContents(commit + 2, file));
+                                    commitBuilder.commit();
+                                }
+                            } catch (Throwable th) {
+                                errors.add(th);
+                            }
+                        }
+                    });
+                }
+                for (Thread thread : threads) {
+                    thread.start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                if (!errors.isEmpty()) {
+                    throw new AssertionError(errors.get(0));
+                }
+                Assert.assertEquals(threadsCount * commits, fsfs.getCommitQueue().getCommitsCount());
+                Assert.assertTrue(fsfs.getCommitQueue().getBatchesCount() > 0);
+                Assert.assertTrue(fsfs.getCommitQueue().getBatchesCount() <= threadsCount * commits);
+                Assert.assertEquals(0, fsfs.getCommitQueue().getQueueDepth());
+
+                final FSRevisionRoot root = fsfs.createRevisionRoot(fsfs.getYoungestRevision());
+                for (int file = 0; file < threadsCount; file++) {
+                    final byte[] contents = readContents(root.getFileStreamForPath(new SVNDeltaCombiner(), "directory/file" + file));
+                    Assert.assertArrayEquals(getContents(commits + 1, file), contents);
+                }
+            } finally {
+                FSFSRegistry.release(fsfs);
+            }
+
+            final SVNRepository repository = SVNRepositoryFactory.create(url);
+            try {
+                Assert.assertEquals(1 + threadsCount * commits, repository.getLatestRevision());
+            } finally {
+                repository.closeSession();
+            }
+        } finally {
+            FSFS.setDefaultGroupCommit(groupCommit);
+            FSFS.setDefaultSyncCommits(syncCommits);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testFailureAfterRevisionFileIsWritten() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testFailureAfterRevisionFileIsWritten", options);
+        final boolean groupCommit = FSFS.isDefaultGroupCommit();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("file", getContents(1, 0));
+            commitBuilder.commit();
+
+            FSFS.setDefaultGroupCommit(true);
+            final FSFS fsfs = FSFSRegistry.acquire(new File(url.getPath()), true);
+            try {
+                // the revision properties can not be moved in place, the revision file already is
+                final File revisionPropertiesFile = fsfs.getNewRevisionPropertiesFile(2);
+                Assert.assertTrue(new File(revisionPropertiesFile, "obstacle").mkdirs());
+                try {
+                    final CommitBuilder failingCommitBuilder = new CommitBuilder(url);
+                    failingCommitBuilder.changeFile("file", getContents(2, 0));
+                    failingCommitBuilder.commit();
+                    Assert.fail();
+                } catch (SVNException e) {
+                    // expected
+                }
+                Assert.assertEquals(1, fsfs.getYoungestRevision());
+                Assert.assertEquals(0, fsfs.getCommitQueue().getCommitsCount());
+
+                SVNFileUtil.deleteAll(revisionPropertiesFile, true);
+                final CommitBuilder nextCommitBuilder = new CommitBuilder(url);
+                nextCommitBuilder.changeFile("file", getContents(3, 0));
+                nextCommitBuilder.commit();
+                Assert.assertEquals(2, fsfs.getYoungestRevision());
+                Assert.assertEquals(1, fsfs.getCommitQueue().getCommitsCount());
+
+                final FSRevisionRoot root = fsfs.createRevisionRoot(2);
+                Assert.assertArrayEquals(getContents(3, 0), readContents(root.getFileStreamForPath(new SVNDeltaCombiner(), "file")));
+            } finally {
+                FSFSRegistry.release(fsfs);
+            }
+        } finally {
+            FSFS.setDefaultGroupCommit(groupCommit);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testRuntimeFailureInBatch() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRuntimeFailureInBatch", options);
+        final boolean groupCommit = FSFS.isDefaultGroupCommit();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            FSFS.setDefaultGroupCommit(true);
+            final FSFS fsfs = FSFSRegistry.acquire(new File(url.getPath()), true);
+            try {
+                final FSCommitQueue commitQueue = fsfs.getCommitQueue();
+                final CountDownLatch leaderBlocked = new CountDownLatch(1);
+                final CountDownLatch leaderReleased = new CountDownLatch(1);
+                // representations are collected while the revision is written
+                final Collection<FSRepresentation> blockingRepresentations = new ArrayList<FSRepresentation>() {
+                    public boolean add(FSRepresentation representation) {
+                        leaderBlocked.countDown();
+                        try {
+                            leaderReleased.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        return super.add(representation);
+                    }
+                };
+                final Collection<FSRepresentation> failingRepresentations = new ArrayList<FSRepresentation>() {
+                    public boolean add(FSRepresentation representation) {
+                        throw new IllegalStateException("failure");
+                    }
+                };
+
+                final List<Object> results = Collections.synchronizedList(new ArrayList<Object>());
+                final Thread leader = startCommit(commitQueue, createCommitter(fsfs, "file0"), blockingRepresentations, results);
+                leaderBlocked.await();
+                final Thread failing = startCommit(commitQueue, createCommitter(fsfs, "file1"), failingRepresentations, results);
+                waitForQueueDepth(commitQueue, 1);
+                final Thread waiting = startCommit(commitQueue, createCommitter(fsfs, "file2"), new ArrayList<FSRepresentation>(), results);
+                waitForQueueDepth(commitQueue, 2);
+                leaderReleased.countDown();
+                leader.join();
+                failing.join();
+                waiting.join();
+
+                Assert.assertEquals(3, results.size());
+                Assert.assertTrue(results.contains(Long.valueOf(1)));
+                int failures = 0;
+                for (Object result : results) {
+                    if (result instanceof SVNException) {
+                        failures++;
+                    }
+                }
+                Assert.assertEquals(2, failures);
+                Assert.assertEquals(1, fsfs.getYoungestRevision());
+                Assert.assertEquals(1, commitQueue.getCommitsCount());
+                Assert.assertEquals(0, commitQueue.getQueueDepth());
+            } finally {
+                FSFSRegistry.release(fsfs);
+            }
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("file3");
+            Assert.assertEquals(2, commitBuilder.commit().getNewRevision());
+        } finally {
+            FSFS.setDefaultGroupCommit(groupCommit);
+            sandbox.dispose();
+        }
+    }
+
+    private static FSCommitter createCommitter(FSFS fsfs, String path) throws SVNException {
+        final FSTransactionInfo txn = FSTransactionRoot.beginTransactionForCommit(fsfs.getYoungestRevision(), new SVNProperties(), fsfs);
+        final FSTransactionRoot txnRoot = fsfs.createTransactionRoot(txn);
+        final FSCommitter committer = new FSCommitter(fsfs, txnRoot, txn, null, null);
+        committer.makeFile("/" + path);
+        final FSDeltaConsumer deltaConsumer = new FSDeltaConsumer("/", txnRoot, fsfs, committer, null, null);
+        deltaConsumer.applyTextDelta(path, null);
+        new SVNDeltaGenerator().sendDelta(path, new ByteArrayInputStream(getContents(1, 0)), deltaConsumer, false);
+        deltaConsumer.close();
+        return committer;
+    }
+
+    private static Thread startCommit(final FSCommitQueue commitQueue, final FSCommitter committer,
+                                      final Collection<FSRepresentation> representations, final List<Object> results) {
+        final Thread thread = new Thread() {
+            public void run() {
+                try {
+                    results.add(Long.valueOf(commitQueue.commit(committer, representations, new StringBuffer())));
+                } catch (Throwable th) {
+                    results.add(th);
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private static void waitForQueueDepth(FSCommitQueue commitQueue, int depth) throws InterruptedException {
+        while (commitQueue.getQueueDepth() < depth) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static byte[] getContents(long revision, int file) {
+        final StringBuilder contents = new StringBuilder();
+        for (int line = 0; line < 200; line++) {
+            contents.append("file ").append(file).append(" line ").append(line);
+            if (line % 20 == 0) {
+                contents.append(" changed in r").append(revision);
+            }
+            contents.append('\n');
+        }
+        return contents.toString().getBytes();
+    }
+
+    private static byte[] readContents(InputStream inputStream) throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,222 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSFSRegistry;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepository;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.io.fs.FSTranslateReporter;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSFSRegistryTest {
+
+    @Test
+    public void testInstancesAreShared() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testInstancesAreShared", options);
+        final int idleInstancesCacheSize = FSFSRegistry.getDefaultIdleInstancesCacheSize();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File repositoryRoot = new File(url.getPath());
+
+            final FSFS fsfs = FSFSRegistry.acquire(repositoryRoot, true);
+            try {
+                final FSFS sharedFSFS = FSFSRegistry.acquire(repositoryRoot, true);
+                Assert.assertSame(fsfs, sharedFSFS);
+                FSFSRegistry.release(sharedFSFS);
+
+                final FSFS noHooksFSFS = FSFSRegistry.acquire(repositoryRoot, false);
+                Assert.assertNotSame(fsfs, noHooksFSFS);
+                FSFSRegistry.release(noHooksFSFS);
+            } finally {
+                FSFSRegistry.release(fsfs);
+            }
+
+            FSFSRegistry.setDefaultIdleInstancesCacheSize(0);
+            final FSFS reopenedFSFS = FSFSRegistry.acquire(repositoryRoot, true);
+            FSFSRegistry.release(reopenedFSFS);
+            Assert.assertNotSame(fsfs, reopenedFSFS);
+
+            FSFSRegistry.setDefaultIdleInstancesCacheSize(1);
+            final FSFS idleFSFS = FSFSRegistry.acquire(repositoryRoot, true);
+            idleFSFS.createRevisionRoot(0).getRootRevisionNode();
+            FSFSRegistry.release(idleFSFS);
+            // an idle instance keeps its caches, but no open files
+            Assert.assertNull(idleFSFS.getRepositoryCacheManager());
+            Assert.assertEquals(1, idleFSFS.getRevisionNodesByPathCache().size());
+            final FSFS reusedFSFS = FSFSRegistry.acquire(repositoryRoot, true);
+            Assert.assertSame(idleFSFS, reusedFSFS);
+            Assert.assertNotNull(reusedFSFS.getRepositoryCacheManager());
+            Assert.assertEquals(1, reusedFSFS.getRevisionNodesByPathCache().size());
+            FSFSRegistry.release(reusedFSFS);
+
+            FSFSRegistry.closeIdleInstances();
+            final FSFS closedFSFS = FSFSRegistry.acquire(repositoryRoot, true);
+            FSFSRegistry.release(closedFSFS);
+            Assert.assertNotSame(idleFSFS, closedFSFS);
+        } finally {
+            FSFSRegistry.setDefaultIdleInstancesCacheSize(idleInstancesCacheSize);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testReportReleasesInstance() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testReportReleasesInstance", options);
+        final int idleInstancesCacheSize = FSFSRegistry.getDefaultIdleInstancesCacheSize();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File repositoryRoot = new File(url.getPath());
+            FSFSRegistry.setDefaultIdleInstancesCacheSize(1);
+
+            final FSRepository repository = (FSRepository) SVNRepositoryFactory.create(url);
+            try {
+                try {
+                    repository.beginReport(0, null, null, false, false, false, SVNDepth.EXCLUDE, null);
+                    Assert.fail();
+                } catch (SVNException e) {
+                    Assert.assertEquals(SVNErrorCode.REPOS_BAD_ARGS, e.getErrorMessage().getErrorCode());
+                }
+                assertReleased(repositoryRoot);
+
+                final FSTranslateReporter reporter = repository.beginReport(0, null, null, false, false, false, SVNDepth.INFINITY, null);
+                reporter.setPath("", null, 0, SVNDepth.INFINITY, true);
+                reporter.abortReport();
+                assertReleased(repositoryRoot);
+                Assert.assertEquals(0, repository.getLatestRevision());
+            } finally {
+                repository.closeSession();
+            }
+        } finally {
+            FSFSRegistry.setDefaultIdleInstancesCacheSize(idleInstancesCacheSize);
+            sandbox.dispose();
+        }
+    }
+
+    private static void assertReleased(File repositoryRoot) throws SVNException {
+        final FSFS fsfs = FSFSRegistry.acquire(repositoryRoot, true);
+        FSFSRegistry.release(fsfs);
+        // only unreferenced instances are idle and closed here
+        FSFSRegistry.closeIdleInstances();
+        final FSFS reopenedFSFS = FSFSRegistry.acquire(repositoryRoot, true);
+        FSFSRegistry.release(reopenedFSFS);
+        Assert.assertNotSame(fsfs, reopenedFSFS);
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testConcurrentReads", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final int revisions = 5;
+            final int files = 10;
+            for (int revision = 1; revision <= revisions; revision++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                for (int file = 0; file < files; file++) {
+                    final byte[] contents = getContents(revision, file);
+                    if (revision == 1) {
+                        commitBuilder.addFile("directory/file" + file, contents);
+                    } else {
+                        commitBuilder.changeFile("directory/file" + file, contents);
+                    }
+                }
+                commitBuilder.commit();
+            }
+
+            final FSFS fsfs = FSFSRegistry.acquire(new File(url.getPath()), true);
+            try {
+                final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+                final List<Thread> threads = new ArrayList<Thread>();
+                for (int i = 0; i < 8; i++) {
+                    final int threadIndex = i;
+                    threads.add(new Thread() {
+                        public void run() {
+                            try {
+                                for (int iteration = 0; iteration < 5; iteration++) {
+                                    for (int revision = 1; revision <= revisions; revision++) {
+                                        final FSRevisionRoot root = fsfs.createRevisionRoot((revision + threadIndex) % revisions + 1);
+                                        for (int file = 0; file < files; file++) {
+                                            final byte[] contents = readContents(root.getFileStreamForPath(new SVNDeltaCombiner(), "directory/file" + file));
+                                            Assert.assertArrayEquals(getContents(root.getRevision(), file), contents);
+                                        }
+                                    }
+                                }
+                            } catch (Throwable th) {
+                                errors.add(th);
+                            }
+                        }
+                    });
+                }
+                for (Thread thread : threads) {
+                    thread.start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                if (!errors.isEmpty()) {
+                    throw new AssertionError(errors.get(0));
+                }
+            } finally {
+                FSFSRegistry.release(fsfs);
+            }
+
+            final SVNRepository repository = SVNRepositoryFactory.create(url);
+            try {
+                Assert.assertEquals(revisions, repository.getLatestRevision());
+            } finally {
+                repository.closeSession();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private static byte[] getContents(long revision, int file) {
+        final StringBuilder contents = new StringBuilder();
+        for (int line = 0; line < 200; line++) {
+            contents.append("file ").append(file).append(" line ").append(line);
+            if (line % 20 == 0) {
+                contents.append(" changed in r").append(revision);
+            }
+            contents.append('\n');
+        }
+        return contents.toString().getBytes();
+    }
+
+    private static byte[] readContents(InputStream inputStream) throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
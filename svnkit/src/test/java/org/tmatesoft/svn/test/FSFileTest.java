@@ -1,12 +1,29 @@
 package org.tmatesoft.svn.test;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
 import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.io.fs.FSFile;
+import org.tmatesoft.svn.core.internal.io.fs.FSL2PIndex;
+import org.tmatesoft.svn.core.internal.wc.SVNConfigFile;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Collection;
 
 public class FSFileTest {
 
@@ -83,4 +100,239 @@ public class FSFileTest {
             file.close();
         }
     }
+
+    @Test
+    public void testParseMappedFile() throws Exception {
+        final String content =
+                "K 10\n" +
+                        "svn:author\n" +
+                        "V 8\n" +
+                        "username\n" +
+                        "K 7\n" +
+                        "svn:log\n" +
+                        "V 7\n" +
+                        "Trunk.\n" +
+                        "\n" +
+                        "END";
+
+        final TestOptions options = TestOptions.getInstance();
+
+        FSFile file = null;
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testParseMappedFile", options);
+        try {
+            final File directory = sandbox.createDirectory("directory");
+            final File fsFile = new File(directory, "fsfile");
+            TestUtil.writeFileContentsString(fsFile, content);
+
+            final ByteBuffer mappedData;
+            final FileInputStream inputStream = new FileInputStream(fsFile);
+            try {
+                mappedData = inputStream.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, fsFile.length());
+            } finally {
+                inputStream.close();
+            }
+
+            file = new FSFile(fsFile, mappedData);
+            Assert.assertEquals(content.length(), file.size());
+            final SVNProperties properties = file.readProperties(true, true);
+
+            Assert.assertEquals("Trunk.\n", properties.getStringValue(SVNRevisionProperty.LOG));
+            Assert.assertEquals("username", properties.getStringValue(SVNRevisionProperty.AUTHOR));
+
+            file.seek(content.indexOf("username"));
+            final byte[] buffer = new byte[8];
+            Assert.assertEquals(8, file.read(buffer, 0, buffer.length));
+            Assert.assertEquals("username", new String(buffer));
+
+            file.seek(content.length());
+            Assert.assertEquals(-1, file.read());
+            Assert.assertEquals(-1, file.read(buffer, 0, buffer.length));
+        } finally {
+            if (file != null) {
+                file.close();
+            }
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testReadItemIndex() throws Exception {
+        // r5 has items 1 to 4 on two pages, r6 has item 1 only, item 0 is never used;
+        // page size, revision count and page count differ so that their order in the header matters
+        final long[][] offsets = { { -1, 10, 20, 30, 50 }, { -1, 40 } };
+        final int pageSize = 3;
+
+        final ByteArrayOutputStream pages = new ByteArrayOutputStream();
+        final ByteArrayOutputStream pageTable = new ByteArrayOutputStream();
+        final ByteArrayOutputStream revisionPageCounts = new ByteArrayOutputStream();
+        int pageCount = 0;
+        for (long[] revisionOffsets : offsets) {
+            int revisionPages = 0;
+            for (int first = 0; first < revisionOffsets.length; first += pageSize) {
+                final ByteArrayOutputStream page = new ByteArrayOutputStream();
+                final int entries = Math.min(pageSize, revisionOffsets.length - first);
+                long lastValue = 0;
+                for (int i = first; i < first + entries; i++) {
+                    final long diff = revisionOffsets[i] + 1 - lastValue;
+                    lastValue = revisionOffsets[i] + 1;
+                    writeNumber(page, diff < 0 ? -1 - 2 * diff : 2 * diff);
+                }
+                writeNumber(pageTable, page.size());
+                writeNumber(pageTable, entries);
+                page.writeTo(pages);
+                revisionPages++;
+            }
+            writeNumber(revisionPageCounts, revisionPages);
+            pageCount += revisionPages;
+        }
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        index.write(FSL2PIndex.L2P_INDEX_PREFIX.getBytes("US-ASCII"));
+        writeNumber(index, 5);
+        writeNumber(index, pageSize);
+        writeNumber(index, offsets.length);
+        writeNumber(index, pageCount);
+        revisionPageCounts.writeTo(index);
+        pageTable.writeTo(index);
+        pages.writeTo(index);
+        final byte[] indexBytes = index.toByteArray();
+
+        final ByteArrayOutputStream revisionFile = new ByteArrayOutputStream();
+        revisionFile.write(new byte[100]);
+        revisionFile.write(indexBytes);
+        final String indexChecksum = SVNFileUtil.toHexDigest(MessageDigest.getInstance("MD5").digest(indexBytes));
+        final String footer = 100 + " " + indexChecksum + " " + (100 + indexBytes.length) + " " + indexChecksum;
+        revisionFile.write(footer.getBytes("US-ASCII"));
+        revisionFile.write(footer.length());
+
+        final FSL2PIndex l2pIndex = FSL2PIndex.fromFile(new FSFile(revisionFile.toByteArray()));
+        Assert.assertEquals(5, l2pIndex.getFirstRevision());
+        Assert.assertEquals(2, l2pIndex.getRevisionCount());
+        Assert.assertEquals(10, l2pIndex.getOffset(5, 1));
+        Assert.assertEquals(20, l2pIndex.getOffset(5, 2));
+        Assert.assertEquals(30, l2pIndex.getOffset(5, 3));
+        Assert.assertEquals(50, l2pIndex.getOffset(5, 4));
+        Assert.assertEquals(40, l2pIndex.getOffset(6, 1));
+        assertNoItem(l2pIndex, 5, 0);
+        assertNoItem(l2pIndex, 5, 5);
+        assertNoItem(l2pIndex, 6, 2);
+        assertNoItem(l2pIndex, 7, 1);
+    }
+
+    @Test
+    public void testReadNativeLogicalAddressingRepository() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+        final String svnCommand = options.getSvnCommand();
+        final String svnadminCommand = getSvnadminCommand(svnCommand);
+        Assume.assumeTrue(isVersionAtLeast(SVNFileUtil.execCommand(new String[] {svnadminCommand, "--version", "--quiet"}), 1, 9));
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testReadNativeLogicalAddressingRepository", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            Assert.assertNotNull(SVNFileUtil.execCommand(new String[] {svnadminCommand, "create", "--compatible-version", "1.9",
+                    repositoryRoot.getAbsolutePath()}));
+            final SVNURL url = SVNURL.fromFile(repositoryRoot);
+
+            // small shards and l2p pages, so that packed and multi-page indexes are read
+            final File formatFile = new File(repositoryRoot, "db/format");
+            final String format = SVNFileUtil.readFile(formatFile);
+            Assert.assertTrue(format, format.startsWith("7\n") && format.contains("addressing logical"));
+            SVNFileUtil.setReadonly(formatFile, false);
+            TestUtil.writeFileContentsString(formatFile, format.replaceAll("layout sharded \\d+", "layout sharded 4"));
+            final SVNConfigFile fsfsConfig = new SVNConfigFile(new File(repositoryRoot, "db/" + FSFS.PATH_CONFIG));
+            fsfsConfig.setPropertyValue("io", "l2p-page-size", "2", true);
+
+            final File importDirectory = sandbox.createDirectory("import");
+            TestUtil.writeFileContentsString(new File(importDirectory, "a.txt"), createContents(1));
+            final File subDirectory = new File(importDirectory, "sub");
+            subDirectory.mkdirs();
+            TestUtil.writeFileContentsString(new File(subDirectory, "b.txt"), "b");
+            Assert.assertNotNull(SVNFileUtil.execCommand(new String[] {svnCommand, "import", importDirectory.getAbsolutePath(),
+                    url.appendPath("trunk", false).toString(), "-m", "r1"}));
+
+            final File workingCopyDirectory = sandbox.createDirectory("wc");
+            Assert.assertNotNull(SVNFileUtil.execCommand(new String[] {svnCommand, "checkout", url.toString(), workingCopyDirectory.getAbsolutePath()}));
+            for (int revision = 2; revision <= 6; revision++) {
+                TestUtil.writeFileContentsString(new File(workingCopyDirectory, "trunk/a.txt"), createContents(revision));
+                Assert.assertNotNull(SVNFileUtil.execCommand(new String[] {svnCommand, "commit", "-m", "r" + revision,
+                        workingCopyDirectory.getAbsolutePath()}));
+            }
+
+            assertLogicalAddressingRepositoryContents(url, 6);
+            Assert.assertNotNull(SVNFileUtil.execCommand(new String[] {svnadminCommand, "pack", repositoryRoot.getAbsolutePath()}));
+            Assert.assertTrue(new File(repositoryRoot, "db/revs/0.pack").isDirectory());
+            assertLogicalAddressingRepositoryContents(url, 6);
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private static void assertLogicalAddressingRepositoryContents(SVNURL url, long youngestRevision) throws Exception {
+        final SVNRepository repository = SVNRepositoryFactory.create(url);
+        try {
+            Assert.assertEquals(youngestRevision, repository.getLatestRevision());
+            for (long revision = 1; revision <= youngestRevision; revision++) {
+                final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+                repository.getFile("trunk/a.txt", revision, null, contents);
+                Assert.assertEquals(createContents((int) revision), contents.toString("UTF-8"));
+            }
+            final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            repository.getFile("trunk/sub/b.txt", youngestRevision, null, contents);
+            Assert.assertEquals("b", contents.toString("UTF-8"));
+
+            final Collection<?> logEntries = repository.log(new String[] {""}, null, 1, youngestRevision, true, false);
+            Assert.assertEquals(youngestRevision, logEntries.size());
+            for (Object entry : logEntries) {
+                final SVNLogEntry logEntry = (SVNLogEntry) entry;
+                Assert.assertEquals("r" + logEntry.getRevision(), logEntry.getMessage());
+                final SVNLogEntryPath changedPath = logEntry.getChangedPaths().get("/trunk/a.txt");
+                Assert.assertNotNull(changedPath);
+                Assert.assertEquals(logEntry.getRevision() == 1 ? SVNLogEntryPath.TYPE_ADDED : SVNLogEntryPath.TYPE_MODIFIED, changedPath.getType());
+            }
+        } finally {
+            repository.closeSession();
+        }
+    }
+
+    private static String createContents(int revision) {
+        final StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            contents.append(i == revision ? "changed in r" + revision : "line " + i).append('\n');
+        }
+        return contents.toString();
+    }
+
+    private static String getSvnadminCommand(String svnCommand) {
+        final File svnFile = new File(svnCommand);
+        return svnFile.getParentFile() == null ? "svnadmin" : new File(svnFile.getParentFile(), "svnadmin").getAbsolutePath();
+    }
+
+    private static boolean isVersionAtLeast(String version, int major, int minor) {
+        if (version == null) {
+            return false;
+        }
+        final String[] numbers = version.trim().split("\\.");
+        try {
+            final int actualMajor = Integer.parseInt(numbers[0]);
+            return actualMajor > major || (actualMajor == major && numbers.length > 1 && Integer.parseInt(numbers[1]) >= minor);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static void assertNoItem(FSL2PIndex index, long revision, long itemIndex) {
+        try {
+            index.getOffset(revision, itemIndex);
+            Assert.fail("Item " + itemIndex + " of r" + revision + " is not expected to be in the index");
+        } catch (SVNException e) {
+            //expected
+        }
+    }
+
+    private static void writeNumber(ByteArrayOutputStream stream, long value) {
+        while (value >= 0x80) {
+            stream.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        stream.write((int) value);
+    }
 }
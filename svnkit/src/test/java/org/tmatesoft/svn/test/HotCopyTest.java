@@ -0,0 +1,179 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLock;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.BasicAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSPacker;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+public class HotCopyTest {
+
+    @Test
+    public void testIncrementalHotCopy() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIncrementalHotCopy", options);
+        final SVNClientManager clientManager = SVNClientManager.newInstance();
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            fsfs.writeDBFormat(fsfs.getDBFormat(), 10, true);
+            fsfs.close();
+
+            for (int i = 0; i < 15; i++) {
+                createCommitThatAddsFile(url, "file" + i);
+            }
+            pack(repositoryRoot);
+
+            final SVNAdminClient adminClient = clientManager.getAdminClient();
+            final File copyRoot = new File(sandbox.createDirectory("copies"), "svn.copy");
+            adminClient.doHotCopy(repositoryRoot, copyRoot, true);
+            final File copiedPackFile = new File(copyRoot, "db/revs/0" + FSFS.PACK_EXT + "/" + FSFS.PACK_KIND_PACK);
+            Assert.assertTrue(copiedPackFile.isFile());
+            // packs are never copied again, copying would restore the source timestamp
+            final long copiedPackTimestamp = 1000000000000L;
+            Assert.assertTrue(copiedPackFile.setLastModified(copiedPackTimestamp));
+
+            for (int i = 15; i < 35; i++) {
+                createCommitThatAddsFile(url, "file" + i);
+            }
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            svnRepository.setAuthenticationManager(new BasicAuthenticationManager("user", "password"));
+            try {
+                svnRepository.setRevisionPropertyValue(3, "test", SVNPropertyValue.create("value3"));
+                svnRepository.setRevisionPropertyValue(12, "test", SVNPropertyValue.create("value12"));
+                final Map<String, Long> pathsToRevisions = new HashMap<String, Long>();
+                pathsToRevisions.put("file1", Long.valueOf(35));
+                svnRepository.lock(pathsToRevisions, "locked", false, null);
+            } finally {
+                svnRepository.closeSession();
+            }
+            pack(repositoryRoot);
+
+            adminClient.doHotCopy(repositoryRoot, copyRoot, true);
+
+            Assert.assertEquals(copiedPackTimestamp, copiedPackFile.lastModified());
+            Assert.assertFalse(new File(copyRoot, "db/revs/1").exists());
+            Assert.assertTrue(new File(copyRoot, "db/revs/2" + FSFS.PACK_EXT).isDirectory());
+
+            final SVNRepository copyRepository = SVNRepositoryFactory.create(SVNURL.fromFile(copyRoot));
+            try {
+                Assert.assertEquals(35, copyRepository.getLatestRevision());
+                Assert.assertEquals("value3", SVNPropertyValue.getPropertyAsString(copyRepository.getRevisionPropertyValue(3, "test")));
+                Assert.assertEquals("value12", SVNPropertyValue.getPropertyAsString(copyRepository.getRevisionPropertyValue(12, "test")));
+                final SVNLock lock = copyRepository.getLock("file1");
+                Assert.assertNotNull(lock);
+                Assert.assertEquals("locked", lock.getComment());
+            } finally {
+                copyRepository.closeSession();
+            }
+            Assert.assertEquals(dump(adminClient, repositoryRoot), dump(adminClient, copyRoot));
+        } finally {
+            clientManager.dispose();
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testIncrementalHotCopyOfSqlJetLockStore() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIncrementalHotCopyOfSqlJetLockStore", options);
+        final SVNClientManager clientManager = SVNClientManager.newInstance();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File repositoryRoot = new File(url.getPath());
+            createCommitThatAddsFile(url, "file1");
+            createCommitThatAddsFile(url, "file2");
+
+            setLockStore(repositoryRoot, "sqlite");
+            lock(url, "file1");
+            Assert.assertTrue(new File(repositoryRoot, "db/locks.db").isFile());
+
+            final SVNAdminClient adminClient = clientManager.getAdminClient();
+            final File copyRoot = new File(sandbox.createDirectory("copies"), "svn.copy");
+            adminClient.doHotCopy(repositoryRoot, copyRoot, true);
+            final File copiedLocksDBFile = new File(copyRoot, "db/locks.db");
+            Assert.assertTrue(copiedLocksDBFile.isFile());
+            Assert.assertNotNull(getLock(copyRoot, "file1"));
+
+            setLockStore(repositoryRoot, "digest");
+            lock(url, "file2");
+            adminClient.doHotCopy(repositoryRoot, copyRoot, true);
+            Assert.assertFalse(copiedLocksDBFile.exists());
+            Assert.assertNotNull(getLock(copyRoot, "file1"));
+            Assert.assertNotNull(getLock(copyRoot, "file2"));
+        } finally {
+            clientManager.dispose();
+            sandbox.dispose();
+        }
+    }
+
+    private static void setLockStore(File repositoryRoot, String lockStore) throws SVNException {
+        TestUtil.writeFileContentsString(new File(repositoryRoot, "db/fsfs.conf"), "[locks]\nlock-store = " + lockStore + "\n");
+    }
+
+    private static void lock(SVNURL url, String path) throws SVNException {
+        final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+        svnRepository.setAuthenticationManager(new BasicAuthenticationManager("user", "password"));
+        try {
+            final Map<String, Long> pathsToRevisions = new HashMap<String, Long>();
+            pathsToRevisions.put(path, Long.valueOf(-1));
+            svnRepository.lock(pathsToRevisions, null, false, null);
+        } finally {
+            svnRepository.closeSession();
+        }
+    }
+
+    private static SVNLock getLock(File repositoryRoot, String path) throws SVNException {
+        final SVNRepository svnRepository = SVNRepositoryFactory.create(SVNURL.fromFile(repositoryRoot));
+        try {
+            return svnRepository.getLock(path);
+        } finally {
+            svnRepository.closeSession();
+        }
+    }
+
+    private static void pack(File repositoryRoot) throws SVNException {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        try {
+            new FSPacker(null).pack(fsfs);
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private static String dump(SVNAdminClient adminClient, File repositoryRoot) throws Exception {
+        final ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        adminClient.doDump(repositoryRoot, dump, SVNRevision.create(0), SVNRevision.HEAD, false, false);
+        return dump.toString("UTF-8");
+    }
+
+    private void createCommitThatAddsFile(SVNURL url, String filename) throws SVNException {
+        final CommitBuilder commitBuilder = new CommitBuilder(url);
+        commitBuilder.addFile(filename);
+        commitBuilder.commit();
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -3,6 +3,8 @@ package org.tmatesoft.svn.test;
 import org.junit.Assert;
 import org.junit.Test;
 import org.tmatesoft.svn.core.*;
+import org.tmatesoft.svn.core.internal.io.fs.FSChangedPathsIndex;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.wc2.SvnWcGeneration;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
@@ -16,6 +18,7 @@ import org.tmatesoft.svn.core.wc2.SvnTarget;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -106,6 +109,145 @@ public class LogTest {
         }
     }
 
+    @Test
+    public void testLogWithChangedPathsIndex() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testLogWithChangedPathsIndex", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("trunk/dir/file");
+            commitBuilder1.addFile("trunk/other");
+            commitBuilder1.addDirectory("branches");
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.changeFile("trunk/dir/file", "contents2".getBytes());
+            commitBuilder2.commit();
+
+            final CommitBuilder commitBuilder3 = new CommitBuilder(url);
+            commitBuilder3.addDirectoryByCopying("branches/b", "trunk");
+            commitBuilder3.commit();
+
+            final CommitBuilder commitBuilder4 = new CommitBuilder(url);
+            commitBuilder4.changeFile("branches/b/dir/file", "contents4".getBytes());
+            commitBuilder4.commit();
+
+            final CommitBuilder commitBuilder5 = new CommitBuilder(url);
+            commitBuilder5.delete("trunk/other");
+            commitBuilder5.changeFile("trunk/dir/file", "contents5".getBytes());
+            commitBuilder5.commit();
+
+            final CommitBuilder commitBuilder6 = new CommitBuilder(url);
+            commitBuilder6.replaceDirectoryByCopying("branches/b/dir", "trunk/dir", 5);
+            commitBuilder6.commit();
+
+            final CommitBuilder commitBuilder7 = new CommitBuilder(url);
+            commitBuilder7.addFile("trunk/other");
+            commitBuilder7.changeFile("branches/b/dir/file", "contents7".getBytes());
+            commitBuilder7.commit();
+
+            final CommitBuilder commitBuilder8 = new CommitBuilder(url);
+            commitBuilder8.addFileByCopying("trunk/copied", "branches/b/dir/file");
+            commitBuilder8.delete("branches/b");
+            commitBuilder8.commit();
+
+            final String[][] targets = {
+                    {"", "trunk", "trunk/dir/file", "trunk/copied", "trunk/other"},
+                    {"branches/b", "branches/b/dir", "branches/b/dir/file", "trunk/dir"},
+            };
+            final long[][] deletedRevisionQueries = {{1, 8}, {4, 8}, {6, 8}, {1, 4}};
+            final String[] deletedPaths = {"trunk/other", "branches/b/dir/file", "trunk/dir/file"};
+
+            final List<String> expectedLogs = collectLogs(url, targets);
+            final List<Long> expectedDeletedRevisions = collectDeletedRevisions(url, deletedPaths, deletedRevisionQueries);
+            Assert.assertEquals(Long.valueOf(5), expectedDeletedRevisions.get(0));
+
+            final SVNClientManager clientManager = SVNClientManager.newInstance();
+            try {
+                clientManager.getAdminClient().doBuildChangedPathsIndex(new File(url.getPath()));
+            } finally {
+                clientManager.dispose();
+            }
+            final File indexFile = new File(url.getPath(), "db/" + FSChangedPathsIndex.CHANGED_PATHS_INDEX_DB);
+            Assert.assertTrue(indexFile.isFile());
+
+            Assert.assertEquals(expectedLogs, collectLogs(url, targets));
+            Assert.assertEquals(expectedDeletedRevisions, collectDeletedRevisions(url, deletedPaths, deletedRevisionQueries));
+
+            final CommitBuilder commitBuilder9 = new CommitBuilder(url);
+            commitBuilder9.changeFile("trunk/copied", "contents9".getBytes());
+            commitBuilder9.commit();
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                Assert.assertNotNull(fsfs.getChangedPathsIndex(9));
+            } finally {
+                fsfs.close();
+            }
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                final Collection logEntries = svnRepository.log(new String[] {"trunk/copied"}, null, 9, 0, false, false);
+                Assert.assertEquals("[9, 8, 7, 6, 5, 2, 1]", getRevisions(logEntries).toString());
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private List<String> collectLogs(SVNURL url, String[][] targets) throws SVNException {
+        final List<String> logs = new ArrayList<String>();
+        final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+        try {
+            for (int i = 0; i < targets.length; i++) {
+                final long end = i == 0 ? 8 : 7;
+                for (int j = 0; j < targets[i].length; j++) {
+                    final String path = targets[i][j];
+                    for (int k = 0; k < 2; k++) {
+                        final boolean strictNode = k == 1;
+                        logs.add(path + "@" + end + (strictNode ? " strict " : " ") +
+                                getRevisions(svnRepository.log(new String[] {path}, null, end, 0, false, strictNode)));
+                        logs.add(path + "@" + end + (strictNode ? " strict " : " ") + "3:" + end + " " +
+                                getRevisions(svnRepository.log(new String[] {path}, null, 3, end, false, strictNode)));
+                    }
+                }
+                logs.add(Arrays.asList(targets[i]) + "@" + end + " " +
+                        getRevisions(svnRepository.log(targets[i], null, end, 1, false, false)));
+            }
+        } finally {
+            svnRepository.closeSession();
+        }
+        return logs;
+    }
+
+    private List<Long> collectDeletedRevisions(SVNURL url, String[] paths, long[][] queries) throws SVNException {
+        final List<Long> deletedRevisions = new ArrayList<Long>();
+        final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+        try {
+            for (int i = 0; i < paths.length; i++) {
+                for (int j = 0; j < queries.length; j++) {
+                    deletedRevisions.add(svnRepository.getDeletedRevision(paths[i], queries[j][0], queries[j][1]));
+                }
+            }
+        } finally {
+            svnRepository.closeSession();
+        }
+        return deletedRevisions;
+    }
+
+    private List<Long> getRevisions(Collection logEntries) {
+        final List<Long> revisions = new ArrayList<Long>();
+        for (Object logEntry : logEntries) {
+            revisions.add(((SVNLogEntry) logEntry).getRevision());
+        }
+        return revisions;
+    }
+
     private String getTestName() {
         return getClass().getSimpleName();
     }
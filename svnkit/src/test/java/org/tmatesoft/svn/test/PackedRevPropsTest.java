@@ -4,6 +4,7 @@ import org.junit.Assert;
 import org.junit.Assume;
 import org.junit.Test;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
 import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNURL;
@@ -15,8 +16,12 @@ import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNEvent;
 import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.admin.ISVNAdminEventHandler;
 import org.tmatesoft.svn.core.wc.admin.ISVNChangeEntryHandler;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEventAction;
 import org.tmatesoft.svn.core.wc.admin.SVNChangeEntry;
 import org.tmatesoft.svn.core.wc.admin.SVNLookClient;
 import org.tmatesoft.svn.core.wc2.SvnGetProperties;
@@ -24,6 +29,8 @@ import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
 import org.tmatesoft.svn.core.wc2.SvnTarget;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 public class PackedRevPropsTest {
 
@@ -109,6 +116,76 @@ public class PackedRevPropsTest {
         }
     }
 
+    @Test
+    public void testParallelPacking() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testParallelPacking", options);
+        final int packThreads = FSFS.getDefaultPackThreads();
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+
+            updateMaxFilesPerDirectory(repositoryRoot);
+
+            for (int i = 0; i < 55; i++) {
+                createCommitThatAddsFile(url, "file" + i);
+            }
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                for (int i = 0; i <= 55; i++) {
+                    svnRepository.setRevisionPropertyValue(i, "test" + i, SVNPropertyValue.create("value" + i));
+                }
+                FSFS.setDefaultPackThreads(3);
+                final FSFS fsfs = new FSFS(repositoryRoot);
+                fsfs.open();
+                final List<String> events = new ArrayList<String>();
+                try {
+                    new FSPacker(new ISVNAdminEventHandler() {
+                        public void handleAdminEvent(SVNAdminEvent event, double progress) {
+                            events.add(event.getAction() + " " + event.getShard());
+                        }
+
+                        public void handleEvent(SVNEvent event, double progress) {
+                        }
+
+                        public void checkCancelled() {
+                        }
+                    }).pack(fsfs);
+                    Assert.assertEquals(50, fsfs.getMinUnpackedRev());
+                    for (int shard = 0; shard < 5; shard++) {
+                        Assert.assertTrue(new File(fsfs.getDBRevsDir(), shard + FSFS.PACK_EXT + "/" + FSFS.PACK_KIND_PACK).isFile());
+                        Assert.assertFalse(new File(fsfs.getDBRevsDir(), String.valueOf(shard)).exists());
+                    }
+                } finally {
+                    fsfs.close();
+                }
+                // events are not interleaved, as with sequential packing
+                final List<String> expectedEvents = new ArrayList<String>();
+                for (int shard = 0; shard < 5; shard++) {
+                    expectedEvents.add(SVNAdminEventAction.PACK_START + " " + shard);
+                    expectedEvents.add(SVNAdminEventAction.PACK_START + " " + shard);
+                    expectedEvents.add(SVNAdminEventAction.PACK_END + " " + shard);
+                }
+                Assert.assertEquals(expectedEvents, events);
+
+                for (int i = 0; i <= 55; i++) {
+                    final SVNPropertyValue propertyValue = svnRepository.getRevisionPropertyValue(i, "test" + i);
+                    Assert.assertEquals("value" + i, SVNPropertyValue.getPropertyAsString(propertyValue));
+                    if (i > 0) {
+                        Assert.assertEquals(SVNNodeKind.FILE, svnRepository.checkPath("file" + (i - 1), i));
+                    }
+                }
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            FSFS.setDefaultPackThreads(packThreads);
+            sandbox.dispose();
+        }
+    }
+
     @Test
     public void testDeltaSelfRepresentationHeader() throws Exception {
         //SVNKIT-504
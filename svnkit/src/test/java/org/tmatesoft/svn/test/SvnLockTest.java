@@ -10,6 +10,7 @@ import junit.framework.Assert;
 import org.junit.Test;
 import org.tmatesoft.svn.core.*;
 import org.tmatesoft.svn.core.auth.BasicAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.ISVNEditor;
 import org.tmatesoft.svn.core.io.SVNRepository;
@@ -153,6 +154,140 @@ public class SvnLockTest {
         }
     }
 
+    @Test
+    public void testSqlJetLockStore() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testSqlJetLockStore", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File repositoryRoot = new File(url.getPath());
+            final File locksDBFile = new File(repositoryRoot, "db/locks.db");
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("directory/file1");
+            commitBuilder.addFile("directory/file2");
+            commitBuilder.addFile("directory0/file");
+            commitBuilder.addFile("file");
+            commitBuilder.commit();
+
+            lock(url, "file");
+            Assert.assertFalse(locksDBFile.exists());
+
+            setLockStore(repositoryRoot, "sqlite");
+            lock(url, "directory/file1");
+            lock(url, "directory0/file");
+            Assert.assertTrue(locksDBFile.isFile());
+            Assert.assertEquals(1, getLocks(url, "directory").length);
+            Assert.assertEquals("/directory/file1", getLocks(url, "directory")[0].getPath());
+            Assert.assertEquals(1, getLocks(url, "directory/file1").length);
+            Assert.assertEquals(3, getLocks(url, "").length);
+
+            final SVNRepository repository = SVNRepositoryFactory.create(url);
+            try {
+                repository.setAuthenticationManager(new BasicAuthenticationManager("user", "password"));
+                final SVNLock lock = repository.getLock("directory/file1");
+                Assert.assertNotNull(lock);
+                Assert.assertEquals("user", lock.getOwner());
+                Assert.assertNotNull(repository.getLock("file"));
+
+                final Map<String, String> pathsToTokens = new HashMap<String, String>();
+                pathsToTokens.put("directory/file1", lock.getID());
+                repository.unlock(pathsToTokens, false, null);
+                Assert.assertNull(repository.getLock("directory/file1"));
+            } finally {
+                repository.closeSession();
+            }
+            Assert.assertEquals(0, getLocks(url, "directory").length);
+
+            setLockStore(repositoryRoot, "digest");
+            lock(url, "directory/file2");
+            Assert.assertFalse(locksDBFile.exists());
+            Assert.assertEquals(3, getLocks(url, "").length);
+            Assert.assertEquals(1, getLocks(url, "directory0").length);
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testLockStoreFollowsConfigurationOfOtherInstances() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testLockStoreFollowsConfigurationOfOtherInstances", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File repositoryRoot = new File(url.getPath());
+            final File locksDBFile = new File(repositoryRoot, "db/locks.db");
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("file1");
+            commitBuilder.addFile("file2");
+            commitBuilder.addFile("file3");
+            commitBuilder.commit();
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                setLockStore(repositoryRoot, "sqlite");
+                lock(url, "file1");
+                Assert.assertTrue(locksDBFile.isFile());
+
+                // opened before the configuration change, but must not move the locks back
+                fsfs.lockPath("/file2", null, "user", null, null, 1, false, false);
+                Assert.assertTrue(locksDBFile.isFile());
+                Assert.assertEquals(2, getLocks(url, "").length);
+                Assert.assertNotNull(fsfs.getLockHelper("/file1", false));
+
+                setLockStore(repositoryRoot, "digest");
+                lock(url, "file3");
+                Assert.assertFalse(locksDBFile.exists());
+                final SVNRepository repository = SVNRepositoryFactory.create(url);
+                try {
+                    repository.setAuthenticationManager(new BasicAuthenticationManager("user", "password"));
+                    final Map<String, String> pathsToTokens = new HashMap<String, String>();
+                    pathsToTokens.put("file1", null);
+                    repository.unlock(pathsToTokens, true, null);
+                } finally {
+                    repository.closeSession();
+                }
+                // the handle to the removed locks.db must not be used anymore
+                Assert.assertNull(fsfs.getLockHelper("/file1", false));
+                Assert.assertNotNull(fsfs.getLockHelper("/file2", false));
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private void setLockStore(File repositoryRoot, String lockStore) throws SVNException {
+        final File configFile = new File(repositoryRoot, "db/fsfs.conf");
+        TestUtil.writeFileContentsString(configFile, "[locks]\nlock-store = " + lockStore + "\n");
+    }
+
+    private void lock(SVNURL url, String path) throws SVNException {
+        final SVNRepository repository = SVNRepositoryFactory.create(url);
+        try {
+            repository.setAuthenticationManager(new BasicAuthenticationManager("user", "password"));
+            final Map<String, Long> pathsToRevisions = new HashMap<String, Long>();
+            pathsToRevisions.put(path, -1l);
+            repository.lock(pathsToRevisions, null, false, null);
+        } finally {
+            repository.closeSession();
+        }
+    }
+
+    private SVNLock[] getLocks(SVNURL url, String path) throws SVNException {
+        final SVNRepository repository = SVNRepositoryFactory.create(url);
+        try {
+            return repository.getLocks(path);
+        } finally {
+            repository.closeSession();
+        }
+    }
+
     private String getTestName() {
         return getClass().getSimpleName();
     }